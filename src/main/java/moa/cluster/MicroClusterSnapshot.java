@@ -0,0 +1,137 @@
+/**
+ * [MicroClusterSnapshot.java] for Subspace MOA
+ *
+ * Immutable copy of a micro-cluster at one point of the training: the cluster
+ * feature (N, LS, SS) and the center, radius and weight as the micro-cluster
+ * reported them then, plus its timestamps if it is a TimestampedCluster.
+ * Inclusion is tested against that sphere, as the micro-clusters of this
+ * package do. Built by AbstractSubspaceClusterer.takeSnapshot(); the arrays
+ * are owned by the snapshot and must not be modified by readers.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.cluster;
+
+import weka.core.Instance;
+
+public final class MicroClusterSnapshot extends CFCluster {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long epoch;
+	private final double[] center;
+	private final double radius;
+	private final double weight;
+	private final long creationTime;		// -1 if unknown
+	private final long lastEditTimestamp;	// -1 if unknown
+
+	/**
+	 * @param mc - live micro-cluster, only read
+	 * @param epoch - number of the clusterer snapshot
+	 */
+	public MicroClusterSnapshot(CFCluster mc, long epoch) {
+		super(mc);		// Copies N, LS and SS
+		this.epoch = epoch;
+		this.center = mc.getCenter();
+		this.radius = mc.getRadius();
+		this.weight = mc.getWeight();
+		if (mc instanceof TimestampedCluster) {
+			this.creationTime = ((TimestampedCluster) mc).getCreationTime();
+			this.lastEditTimestamp = ((TimestampedCluster) mc).getLastEditTimestamp();
+		} else {
+			this.creationTime = -1;
+			this.lastEditTimestamp = -1;
+		}
+		super.setCenter(center);
+		super.setRadius(radius);
+		super.setWeight(weight);
+		super.setId(mc.getId());
+		if (mc.isGroundTruth()) {
+			super.setGroundTruth(mc.getGroundTruth());
+		}
+	}
+
+	/**
+	 * Snapshot of every micro-cluster of a micro-clustering (CFClusters only).
+	 * 
+	 * @param microClustering - live micro-clustering, only read
+	 * @param epoch - number of the clusterer snapshot
+	 */
+	public static Clustering copyOf(Clustering microClustering, long epoch) {
+		Clustering copy = new Clustering();
+		for (Cluster mc : microClustering.getClustering()) {
+			if (!(mc instanceof CFCluster)) {
+				throw new RuntimeException("MicroClusterSnapshot: cannot copy a micro-cluster of type "
+						+ mc.getClass().getSimpleName());
+			}
+			copy.add(new MicroClusterSnapshot((CFCluster) mc, epoch));
+		}
+		return copy;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	public long getLastEditTimestamp() {
+		return lastEditTimestamp;
+	}
+
+	@Override
+	public double[] getCenter() {
+		return center.clone();
+	}
+
+	@Override
+	public double getRadius() {
+		return radius;
+	}
+
+	@Override
+	public double getWeight() {
+		return weight;
+	}
+
+	@Override
+	public double getInclusionProbability(Instance instance) {
+		return getCenterDistance(instance) <= radius ? 1.0 : 0.0;
+	}
+
+	@Override
+	public CFCluster getCF() {
+		return this;
+	}
+
+
+	/** Immutable **/
+
+	@Override
+	public void add(CFCluster cluster) {
+		throw new UnsupportedOperationException("MicroClusterSnapshot is immutable");
+	}
+
+	@Override
+	public void setN(double N) {
+		throw new UnsupportedOperationException("MicroClusterSnapshot is immutable");
+	}
+
+	@Override
+	public void setCenter(double[] center) {
+		throw new UnsupportedOperationException("MicroClusterSnapshot is immutable");
+	}
+
+	@Override
+	public void setRadius(double radius) {
+		throw new UnsupportedOperationException("MicroClusterSnapshot is immutable");
+	}
+
+	@Override
+	public void setWeight(double weight) {
+		throw new UnsupportedOperationException("MicroClusterSnapshot is immutable");
+	}
+}
@@ -103,6 +103,19 @@ public class SubspaceClustering extends AbstractMOAObject {
     }
     
     
+    /**
+     * Ground truth subspace clustering with precomputed helpers (see SubspaceGroundTruth).
+     */
+    SubspaceClustering(AutoExpandVector<Cluster> clusters, HashMap<Double, Integer> labelMap,
+    		HashMap<Integer, boolean[]> classSubspaces, List<Double> classLabelList, boolean hasNoise) {
+    	this.clusters = clusters;
+    	this.labelMap = labelMap;
+    	this.classSubspaces = classSubspaces;
+    	this.classLabelList = classLabelList;
+    	this.hasNoise = hasNoise;
+    }
+    
+    
     /** Roll-back to [Clustering] object. **/
     public Clustering toClustering() {
     	ArrayList<Cluster> convertedClusters = new ArrayList<Cluster>();
@@ -0,0 +1,217 @@
+/**
+ * [SubspaceGroundTruth.java] for Subspace MOA
+ *
+ * Ground truth subspace clustering of a sliding window, maintained incrementally.
+ *
+ * Points enter with addPoint() and leave with removePoint() (oldest first, as in
+ * SubspaceDataPointWindow). For each class, the members, the subspace and the
+ * ground truth cluster are kept; a cluster is only rebuilt in getClustering()
+ * if its members changed since the last call.
+ *
+ * The rebuild cannot be replaced by per-class LS/SS/count statistics: within
+ * its subspace a ground truth cluster is the minimum enclosing ball (Miniball)
+ * of the members, which depends on the extreme members and can shrink
+ * arbitrarily when one of them leaves. Sums only give the mean and variance.
+ *
+ * The result is the same as new SubspaceClustering(points) on the window:
+ * classes are ordered by their oldest member and the subspace of a class is
+ * taken from that member.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import moa.core.AutoExpandVector;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+
+public class SubspaceGroundTruth {
+
+	private HashMap<Double, GTClass> classes = new HashMap<Double, GTClass>();
+	private IdentityHashMap<SubspaceDataPoint, Long> sequence = new IdentityHashMap<SubspaceDataPoint, Long>();
+	private long nextSequence = 0;
+
+	private double noiseLabel;
+	private int numPoints = 0;
+	private int numPointsWithNoise = 0;		// Points with at least one noise dimension
+
+	private boolean debug = false;
+
+
+	/** Per-class state **/
+	private static class GTClass {
+		double label;
+		LinkedList<SubspaceDataPoint> members = new LinkedList<SubspaceDataPoint>();	// Window order
+		SubspaceDataPoint representative;		// Oldest member labeled with the class in some dimension
+		long representativeSequence;
+		boolean[] subspace;
+		SubspaceSphereCluster cluster;			// null if members changed
+
+		GTClass(double label) {
+			this.label = label;
+		}
+	}
+
+
+	public void addPoint(SubspaceDataPoint point) {
+		if (numPoints == 0) {
+			noiseLabel = point.getNoiseLabel();
+		}
+		numPoints++;
+		sequence.put(point, nextSequence);
+
+		if (point.getClassLabelSet().contains(noiseLabel)) {
+			numPointsWithNoise++;
+		}
+
+		double label = point.classValue();
+		if (label == noiseLabel) {
+			return;
+		}
+
+		GTClass gtClass = classes.get(label);
+		if (gtClass == null) {
+			gtClass = new GTClass(label);
+			classes.put(label, gtClass);
+		}
+		gtClass.members.addLast(point);
+		gtClass.cluster = null;
+		if (gtClass.representative == null && point.getClassLabelSet().contains(label)) {
+			setRepresentative(gtClass, point, nextSequence);
+		}
+
+		nextSequence++;
+	}
+
+	public void removePoint(SubspaceDataPoint point) {
+		Long removed = sequence.remove(point);
+		if (removed == null) {
+			return;
+		}
+		numPoints--;
+
+		if (point.getClassLabelSet().contains(noiseLabel)) {
+			numPointsWithNoise--;
+		}
+
+		double label = point.classValue();
+		if (label == noiseLabel) {
+			return;
+		}
+
+		GTClass gtClass = classes.get(label);
+		if (gtClass.members.getFirst() == point) {
+			gtClass.members.removeFirst();
+		} else {
+			gtClass.members.remove(point);
+		}
+
+		if (gtClass.members.isEmpty()) {
+			classes.remove(label);
+			return;
+		}
+
+		gtClass.cluster = null;
+		if (gtClass.representative == point) {
+			gtClass.representative = null;
+			gtClass.subspace = null;
+			for (SubspaceDataPoint member : gtClass.members) {
+				if (member.getClassLabelSet().contains(label)) {
+					setRepresentative(gtClass, member, sequence.get(member));
+					break;
+				}
+			}
+		}
+	}
+
+	private void setRepresentative(GTClass gtClass, SubspaceDataPoint point, long seq) {
+		gtClass.representative = point;
+		gtClass.representativeSequence = seq;
+		gtClass.subspace = point.getSubspace(gtClass.label);
+	}
+
+	public int size() {
+		return numPoints;
+	}
+
+	public void clear() {
+		classes.clear();
+		sequence.clear();
+		numPoints = 0;
+		numPointsWithNoise = 0;
+	}
+
+
+	/**
+	 * Ground truth clustering of the current window.
+	 * Only the clusters of classes whose members changed are rebuilt.
+	 *
+	 * @return
+	 */
+	public SubspaceClustering getClustering() {
+		List<GTClass> ordered = new ArrayList<GTClass>(classes.size());
+		for (GTClass gtClass : classes.values()) {
+			if (gtClass.representative != null) {
+				ordered.add(gtClass);
+			} else if (debug) {
+				System.out.println("SubspaceGroundTruth: class " + gtClass.label + " is not labeled in any dimension of its points");
+			}
+		}
+		Collections.sort(ordered, new Comparator<GTClass>() {
+			public int compare(GTClass c1, GTClass c2) {
+				return c1.representativeSequence < c2.representativeSequence ? -1
+						: (c1.representativeSequence == c2.representativeSequence ? 0 : 1);
+			}
+		});
+
+		AutoExpandVector<Cluster> clusters = new AutoExpandVector<Cluster>();
+		HashMap<Double, Integer> labelMap = new HashMap<Double, Integer>();
+		HashMap<Integer, boolean[]> classSubspaces = new HashMap<Integer, boolean[]>();
+		List<Double> classLabelList = new ArrayList<Double>();
+
+		int rebuilt = 0;
+		for (int i = 0; i < ordered.size(); i++) {
+			GTClass gtClass = ordered.get(i);
+			if (gtClass.cluster == null) {
+				SubspaceSphereCluster s = new SubspaceSphereCluster(gtClass.members, gtClass.subspace);
+				s.setId(gtClass.label);
+				s.setGroundTruth(gtClass.label);
+				gtClass.cluster = s;
+				rebuilt++;
+			}
+			clusters.add(gtClass.cluster);
+			labelMap.put(gtClass.label, i);
+			classSubspaces.put(i, gtClass.subspace);
+			classLabelList.add(gtClass.label);
+		}
+
+		boolean hasNoise = numPointsWithNoise > 0;
+		if (hasNoise) {
+			int workcluster = ordered.size();
+			labelMap.put(noiseLabel, workcluster);
+			boolean[] noiseSpace = new boolean[anyPoint().numAttributes() - 1];
+			for (int j = 0; j < noiseSpace.length; j++)
+				noiseSpace[j] = true;
+			classSubspaces.put(workcluster, noiseSpace);
+			classLabelList.add(noiseLabel);
+		}
+
+		if (debug) System.out.println("SubspaceGroundTruth: " + rebuilt + " of " + ordered.size() + " clusters rebuilt");
+
+		return new SubspaceClustering(clusters, labelMap, classSubspaces, classLabelList, hasNoise);
+	}
+
+	private SubspaceDataPoint anyPoint() {
+		Iterator<SubspaceDataPoint> it = sequence.keySet().iterator();
+		return it.next();
+	}
+}
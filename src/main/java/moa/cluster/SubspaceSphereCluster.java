@@ -32,6 +32,14 @@ public class SubspaceSphereCluster extends Cluster {
 	private boolean[] adjustedSubspace;
 	private int adjustedSubspaceSize;
 	
+	// Packed indices of the relevant dimensions (rebuilt lazily after subspace changes)
+	private transient int[] relevantDimIndices;
+	private transient int[] adjustedRelevantDimIndices;
+	
+	// Scratch arrays of sample(Random, double[])
+	private transient double[] sampleSin;
+	private transient double[] sampleCos;
+	
 	/* Constructors */ 
 	
 	public SubspaceSphereCluster() {
@@ -313,13 +321,63 @@ public class SubspaceSphereCluster extends Cluster {
 	public double getInclusionProbability(Instance instance) {
 		if (subspaceSize == 0) {		// Dead cluster
 			return 0.0;
-		} else if (getCenterDistance(instance) <= getRadius()) {
+		} else if (getSquaredCenterDistance(instance) <= radius * radius) {
 			return 1.0;
 		} else {
 			return 0.0;
 		}
 	}
 	
+	/**
+	 * Same as getInclusionProbability(Instance), on raw attribute values.
+	 * 
+	 * @param point - attribute values (at least fullspace size long)
+	 * @return 1.0 if inside, 0.0 otherwise
+	 */
+	public double getInclusionProbability(double[] point) {
+		if (subspaceSize == 0) {		// Dead cluster
+			return 0.0;
+		} else if (getSquaredCenterDistance(point) <= radius * radius) {
+			return 1.0;
+		} else {
+			return 0.0;
+		}
+	}
+	
+	/**
+	 * Batch inclusion test over a point matrix (one point per row).
+	 * 
+	 * @param points - attribute values of the points
+	 * @param result - filled with the inclusion probability of each point
+	 * @return number of points included
+	 */
+	public int getInclusionProbabilities(double[][] points, double[] result) {
+		int numIncluded = 0;
+		if (subspaceSize == 0) {		// Dead cluster
+			for (int p = 0; p < points.length; p++)
+				result[p] = 0.0;
+			return 0;
+		}
+		
+		int[] dims = getRelevantDimIndices();
+		double radiusSq = radius * radius;
+		for (int p = 0; p < points.length; p++) {
+			double[] point = points[p];
+			double distance = 0.0;
+			for (int k = 0; k < dims.length; k++) {
+				double d = center[dims[k]] - point[dims[k]];
+				distance += d * d;
+			}
+			if (distance <= radiusSq) {
+				result[p] = 1.0;
+				numIncluded++;
+			} else {
+				result[p] = 0.0;
+			}
+		}
+		return numIncluded;
+	}
+	
 	/**
 	 * Samples this cluster by returning a point from inside it.
 	 * 
@@ -327,11 +385,34 @@ public class SubspaceSphereCluster extends Cluster {
 	 * @return a point that lies inside this cluster
 	 */
 	public Instance sample(Random random) {
+		final int fullspaceSize = this.center.length;
+		double res[] = new double[fullspaceSize + 1];	// +1 for generator label
+		sample(random, res);
+		
+		// Generator label (representing class label)
+		res[fullspaceSize] = getId();
+		
+		return new DenseInstance(1.0, res);
+	}
+	
+	/**
+	 * Same as sample(Random), but writes the point into a given buffer.
+	 * Uses the same random numbers in the same order, so both give the same points.
+	 * Only the first fullspace size values of 'res' are written; nothing is allocated
+	 * once the scratch arrays have grown to the subspace size.
+	 * 
+	 * @param random - a random number source
+	 * @param res - buffer of at least fullspace size
+	 * @return res
+	 */
+	public double[] sample(Random random, double[] res) {
 		// Create sample in hypersphere coordinates
-		double[] center = getCenter();
-
-		final double sin[] = new double[this.subspaceSize - 1];
-		final double cos[] = new double[this.subspaceSize - 1];
+		if (sampleSin == null || sampleSin.length < this.subspaceSize - 1) {
+			sampleSin = new double[Math.max(0, this.subspaceSize - 1)];
+			sampleCos = new double[Math.max(0, this.subspaceSize - 1)];
+		}
+		final double sin[] = sampleSin;
+		final double cos[] = sampleCos;
 		final double length = random.nextDouble() * getRadius();
 
 		double lastValue = 1.0;
@@ -343,9 +424,6 @@ public class SubspaceSphereCluster extends Cluster {
 		}
 
 		// Calculate cartesian coordinates
-		final int fullspaceSize = this.center.length;
-		double res[] = new double[fullspaceSize + 1];	// +1 for generator label
-
 		int j = 0;
 		for (int i = 0; i < this.center.length; i++) {
 			if (subspace[i]) {	// Relevant dimensions
@@ -365,10 +443,7 @@ public class SubspaceSphereCluster extends Cluster {
 			}
 		}
 		
-		// Generator label (representing class label)
-		res[fullspaceSize] = getId();
-		
-		return new DenseInstance(1.0, res);
+		return res;
 	}
 	
 	
@@ -381,16 +456,37 @@ public class SubspaceSphereCluster extends Cluster {
 	 * @return distance from the center
 	 */
 	public double getCenterDistance(Instance instance) {
+		return Math.sqrt(getSquaredCenterDistance(instance));
+	}
+	
+	/**
+	 * Euclidean distance from the center defined in subspace, on raw attribute values.
+	 * 
+	 * @param point - attribute values (at least fullspace size long)
+	 * @return distance from the center
+	 */
+	public double getCenterDistance(double[] point) {
+		return Math.sqrt(getSquaredCenterDistance(point));
+	}
+	
+	private double getSquaredCenterDistance(Instance instance) {
+		int[] dims = getRelevantDimIndices();
 		double distance = 0.0;
-		double[] center = getCenter();
-		
-		for (int i = 0; i < subspace.length; i++) {
-			if (subspace[i]) {
-				double d = center[i] - instance.value(i);
-				distance += d * d;
-			}
+		for (int k = 0; k < dims.length; k++) {
+			double d = center[dims[k]] - instance.value(dims[k]);
+			distance += d * d;
 		}
-		return Math.sqrt(distance);
+		return distance;
+	}
+	
+	private double getSquaredCenterDistance(double[] point) {
+		int[] dims = getRelevantDimIndices();
+		double distance = 0.0;
+		for (int k = 0; k < dims.length; k++) {
+			double d = center[dims[k]] - point[dims[k]];
+			distance += d * d;
+		}
+		return distance;
 	}
 
 	/**
@@ -437,13 +533,12 @@ public class SubspaceSphereCluster extends Cluster {
 	 * @return distance between two vectors
 	 */
 	private double distance(double[] v1, double[] v2){
+		int[] dims = getRelevantDimIndices();
 		double distance = 0.0;
 		
-		for (int i = 0; i < subspace.length; i++) {
-			if (subspace[i]) {
-				double d = v1[i] - v2[i];
-				distance += d * d;
-			}
+		for (int k = 0; k < dims.length; k++) {
+			double d = v1[dims[k]] - v2[dims[k]];
+			distance += d * d;
 		}
 		return Math.sqrt(distance);
 	}
@@ -506,6 +601,15 @@ public class SubspaceSphereCluster extends Cluster {
 		this.center = center;
 	}
 	
+	/**
+	 * The center itself (not a copy). Must not be modified by the caller.
+	 * 
+	 * @return center
+	 */
+	public double[] getCenterRef() {
+		return center;
+	}
+	
 	public int getFullspaceSize() {
 		return this.subspace.length;
 	}
@@ -530,6 +634,19 @@ public class SubspaceSphereCluster extends Cluster {
 		return relevantDims;
 	}
 	
+	/**
+	 * Indices of the relevant dimensions, in ascending order.
+	 * The array is shared and must not be modified by the caller.
+	 * 
+	 * @return packed relevant dimensions
+	 */
+	public int[] getRelevantDimIndices() {
+		if (relevantDimIndices == null) {
+			relevantDimIndices = packDimIndices(subspace);
+		}
+		return relevantDimIndices;
+	}
+	
 	public boolean isRelevant(int dim) {
 		return this.subspace[dim];
 	}
@@ -562,6 +679,21 @@ public class SubspaceSphereCluster extends Cluster {
 		}
 		setAdjustedSubspace(subspace);
 	}
+	
+	private static int[] packDimIndices(boolean[] space) {
+		int size = 0;
+		for (int j = 0; j < space.length; j++) {
+			if (space[j])
+				size++;
+		}
+		int[] indices = new int[size];
+		int k = 0;
+		for (int j = 0; j < space.length; j++) {
+			if (space[j])
+				indices[k++] = j;
+		}
+		return indices;
+	}
 
 	public double getRadius() {
 		return radius;
@@ -605,6 +737,19 @@ public class SubspaceSphereCluster extends Cluster {
 		return adjustedSubspaceSize;
 	}
 	
+	/**
+	 * Indices of the adjusted relevant dimensions, in ascending order.
+	 * The array is shared and must not be modified by the caller.
+	 * 
+	 * @return packed adjusted relevant dimensions
+	 */
+	public int[] getAdjustedRelevantDimIndices() {
+		if (adjustedRelevantDimIndices == null) {
+			adjustedRelevantDimIndices = packDimIndices(adjustedSubspace);
+		}
+		return adjustedRelevantDimIndices;
+	}
+	
 	public List<Integer> getAdjustedRelevantDims() {
 		if (debug) System.out.println("Full space size = " + adjustedSubspace.length);
 		List<Integer> relevantDims = new ArrayList<Integer>();
@@ -640,6 +785,9 @@ public class SubspaceSphereCluster extends Cluster {
 			if (adjustedSubspace[j])
 				this.adjustedSubspaceSize++;
 		}
+		// Subspace and adjusted subspace may share one array
+		relevantDimIndices = null;
+		adjustedRelevantDimIndices = null;
 	}
 	
 	public void setAdjustedRelevantDim(int dim, boolean relevant) {
@@ -648,6 +796,8 @@ public class SubspaceSphereCluster extends Cluster {
 			if (relevant) adjustedSubspaceSize++;
 			else adjustedSubspaceSize--;
 		}
+		relevantDimIndices = null;
+		adjustedRelevantDimIndices = null;
 	}
 	
 	public double getLeftBoundary(int dim) {
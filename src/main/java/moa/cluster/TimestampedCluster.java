@@ -0,0 +1,22 @@
+/**
+ * [TimestampedCluster.java] for Subspace MOA
+ *
+ * Micro-cluster that knows when it was created and last updated
+ * (copied into a MicroClusterSnapshot, used by MicroClusterBudget).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.cluster;
+
+public interface TimestampedCluster {
+
+	public long getCreationTime();
+
+	public long getLastEditTimestamp();
+
+	/**
+	 * Weight at getLastEditTimestamp(), before any later decay.
+	 */
+	public double getWeightAtLastEdit();
+}
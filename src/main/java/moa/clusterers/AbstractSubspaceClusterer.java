@@ -9,11 +9,23 @@
 
 package moa.clusterers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
 import moa.cluster.Clustering;
+import moa.cluster.MicroClusterSnapshot;
 import moa.cluster.SubspaceClustering;
 import moa.core.InstancesHeader;
 import moa.core.Measurement;
@@ -41,16 +53,29 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
 
 	protected double trainingWeightSeenByModel = 0.0;
 
+	/* Stream instances behind the model, set by the caller; kept in checkpoints */
+	protected long streamPosition = 0;
+
 	protected int randomSeed = 1;
 
 	protected IntOption randomSeedOption;
 
     public FlagOption evaluateMicroClusteringOption;
 
+    public FlagOption exactModelSizeOption = new FlagOption("exactModelSize", 'Z',
+            "Measure the model size by walking the whole model (needs the sizeofag agent, slow) instead of estimating it");
+
     protected Random clustererRandom;
 
     protected SubspaceClustering clustering;
     
+    /* Receivers of publishMetrics() */
+    private transient ArrayList<SubspaceClustererMetricsListener> metricsListeners;
+    
+    /* Latest snapshot, published for other threads */
+    private transient volatile SubspaceClustererSnapshot snapshot;
+    private transient long snapshotEpoch = 0;
+    
 	public AbstractSubspaceClusterer() {
 		if (isRandomizable()) {
 			this.randomSeedOption = new IntOption("randomSeed", 'r',
@@ -112,6 +137,7 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
 
 	public void resetLearning() {
 		this.trainingWeightSeenByModel = 0.0;
+		this.streamPosition = 0;
 		if (isRandomizable()) {
 			this.clustererRandom = new Random(this.randomSeed);
 		}
@@ -129,8 +155,14 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
 		List<Measurement> measurementList = new LinkedList<Measurement>();
 		measurementList.add(new Measurement("model training instances",
 				trainingWeightSeenByModel()));
-		measurementList.add(new Measurement("model serialized size (bytes)",
-				measureByteSize()));
+		long sizeEstimate = exactModelSizeOption.isSet() ? -1 : estimateByteSize();
+		if (sizeEstimate < 0) {
+			measurementList.add(new Measurement("model serialized size (bytes)",
+					measureByteSize()));
+		} else {
+			measurementList.add(new Measurement("model size estimate (bytes)",
+					sizeEstimate));
+		}
 		Measurement[] modelMeasurements = getModelMeasurementsImpl();
 		if (modelMeasurements != null) {
 			for (Measurement measurement : modelMeasurements) {
@@ -172,6 +204,16 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
 		}
 	}
 
+	/**
+	 * Heap size of the model computed from its sizes (number of micro-clusters,
+	 * dimensionality, neighbourhoods), see ObjectSizeEstimate. Cheap enough for
+	 * every evaluation. Returns -1 for clusterers without an estimate, which
+	 * report the "model serialized size" as before.
+	 */
+	public long estimateByteSize() {
+		return -1;
+	}
+
 	public SubspaceClusterer[] getSubClusterers() {
 		return null;
 	}
@@ -291,7 +333,178 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
         return false;
     }
     
+    /**
+     * Micro-clusters of the model. These are the live objects, changed by further
+     * training; other threads read an immutable copy from takeSnapshot().
+     */
     public Clustering getMicroClusteringResult(){
         return null;
     }
+    
+    /**
+     * Copy the current micro- and (optionally) macro-clustering into a snapshot and
+     * publish it for getSnapshot(). Call from the thread that trains the clusterer;
+     * the copies are made once here instead of on every read.
+     * 
+     * The micro-clusters are copied into MicroClusterSnapshots (cluster features,
+     * center, radius, weight and timestamps). The macro-clustering of a one-stop
+     * clusterer is computed here on the live model and deep copied, since its
+     * clusters may refer to live micro-clusters of clusterer-specific types.
+     * 
+     * @param withMicroClustering - copy getMicroClusteringResult()
+     * @param withClustering - compute and copy getClusteringResult()
+     * @return the new snapshot
+     */
+    public SubspaceClustererSnapshot takeSnapshot(boolean withMicroClustering, boolean withClustering) {
+    	long epoch = ++snapshotEpoch;
+    	Clustering microClustering = null;
+    	if (withMicroClustering && implementsMicroClusterer()) {
+    		microClustering = copyMicroClustering(epoch);
+    	}
+    	SubspaceClustering macroClustering = null;
+    	if (withClustering) {
+    		macroClustering = getClusteringResult();
+    		if (macroClustering != null) {
+    			macroClustering = (SubspaceClustering) macroClustering.copy();
+    		}
+    	}
+    	SubspaceClustererSnapshot s = new SubspaceClustererSnapshot(epoch,
+    			trainingWeightSeenByModel, microClustering, macroClustering);
+    	snapshot = s;
+    	return s;
+    }
+    
+    /**
+     * Latest snapshot of takeSnapshot(); safe to call from any thread.
+     * 
+     * @return snapshot, or null if none was taken
+     */
+    public SubspaceClustererSnapshot getSnapshot() {
+    	return snapshot;
+    }
+    
+    /**
+     * Immutable copy of getMicroClusteringResult() that shares nothing with the model:
+     * one MicroClusterSnapshot per micro-cluster (CFClusters only).
+     * 
+     * @param epoch - number of the snapshot
+     * @return copy, or null if there is no micro-clustering
+     */
+    protected Clustering copyMicroClustering(long epoch) {
+    	Clustering microClustering = getMicroClusteringResult();
+    	return microClustering == null ? null : MicroClusterSnapshot.copyOf(microClustering, epoch);
+    }
+    
+    
+    /** Metrics **/
+    
+    public void addMetricsListener(SubspaceClustererMetricsListener listener) {
+    	if (metricsListeners == null) {
+    		metricsListeners = new ArrayList<SubspaceClustererMetricsListener>();
+    	}
+    	metricsListeners.add(listener);
+    }
+    
+    public void removeMetricsListener(SubspaceClustererMetricsListener listener) {
+    	if (metricsListeners != null) {
+    		metricsListeners.remove(listener);
+    	}
+    }
+    
+    protected boolean hasMetricsListeners() {
+    	return metricsListeners != null && !metricsListeners.isEmpty();
+    }
+    
+    /**
+     * Send getModelMeasurements() to the listeners. Clusterers call this once per
+     * time unit of the stream; nothing is computed without listeners.
+     */
+    protected void publishMetrics() {
+    	if (!hasMetricsListeners()) {
+    		return;
+    	}
+    	Measurement[] measurements = getModelMeasurements();
+    	for (SubspaceClustererMetricsListener listener : metricsListeners) {
+    		listener.metricsUpdated(this, measurements);
+    	}
+    }    
+    
+    /** Checkpoints **/
+    
+    /**
+     * @return true if the clusterer implements writeCheckpoint() and readCheckpoint()
+     */
+    public boolean supportsCheckpoints() {
+    	return false;
+    }
+    
+    /**
+     * Number of stream instances the caller has processed with this model, to
+     * continue the stream after a checkpoint. Callers that train through
+     * trainOnInstanceImpl() do not change trainingWeightSeenByModel, so it is
+     * counted separately.
+     */
+    public long getStreamPosition() {
+    	return streamPosition;
+    }
+    
+    public void setStreamPosition(long streamPosition) {
+    	this.streamPosition = streamPosition;
+    }
+    
+    /**
+     * Write the model as a binary checkpoint (see SubspaceClustererCheckpoint).
+     */
+    public void saveCheckpoint(OutputStream out) throws IOException {
+    	SubspaceClustererCheckpoint.write(this, new DataOutputStream(out));
+    }
+    
+    /**
+     * Write the model as a binary checkpoint file. The file is replaced only after
+     * the checkpoint was written completely.
+     */
+    public void saveCheckpoint(File file) throws IOException {
+    	File tmp = new File(file.getPath() + ".tmp");
+    	OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+    	try {
+    		saveCheckpoint(out);
+    	} finally {
+    		out.close();
+    	}
+    	if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+    		throw new IOException("AbstractSubspaceClusterer: cannot replace checkpoint " + file);
+    	}
+    }
+    
+    /**
+     * Create a clusterer from a checkpoint of saveCheckpoint(); training can continue
+     * where it was saved.
+     */
+    public static AbstractSubspaceClusterer loadCheckpoint(InputStream in) throws IOException {
+    	return SubspaceClustererCheckpoint.read(new DataInputStream(in));
+    }
+    
+    public static AbstractSubspaceClusterer loadCheckpoint(File file) throws IOException {
+    	InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    	try {
+    		return loadCheckpoint(in);
+    	} finally {
+    		in.close();
+    	}
+    }
+    
+    /**
+     * Write the model block: the sufficient statistics to continue training.
+     * Options need not be written, the clusterer is recreated with them.
+     */
+    protected void writeCheckpoint(DataOutputStream out) throws IOException {
+    	throw new UnsupportedOperationException(getClass().getName() + " does not support checkpoints");
+    }
+    
+    /**
+     * Read the model block of writeCheckpoint(), into a clusterer fresh from prepareForUse().
+     */
+    protected void readCheckpoint(DataInputStream in) throws IOException {
+    	throw new UnsupportedOperationException(getClass().getName() + " does not support checkpoints");
+    }
 }
@@ -0,0 +1,114 @@
+/**
+ * [MicroClusterBudget.java] for Subspace MOA
+ *
+ * Budget on the number of potential plus outlier microclusters, shared by the
+ * DenStream variants, HDDStream and PreDeConStream: beyond it, the lowest-weight
+ * outlier microclusters are evicted. The outliers are kept in an IndexedMinHeap
+ * by log2(weight at the last edit) + lambda * (last edit time). This key does not
+ * change while the weight only decays, so only edits reorder the heap.
+ *
+ * The budget counts microclusters, not bytes: their size varies with the
+ * clusterer (e.g. the neighbourhood lists of PreDeConStream).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import moa.cluster.TimestampedCluster;
+import moa.core.IndexedMinHeap;
+import moa.core.Measurement;
+import moa.options.IntOption;
+
+public class MicroClusterBudget<T extends TimestampedCluster> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int maxMicroClusters;		// 0 = no budget
+	private final double lambda;
+	private final IndexedMinHeap<T> outliers = new IndexedMinHeap<T>();
+	private long numEvicted;
+
+	/**
+	 * The option of the clusterers that have a budget.
+	 */
+	public static IntOption newMaxMicroClustersOption() {
+		return new IntOption("maxMicroClusters", 'B',
+				"Budget on the number of potential and outlier microclusters; the lowest-weight "
+				+ "outlier microclusters are evicted beyond it (0 = no budget).", 0, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxMicroClusters - 0 = no budget, nothing is tracked
+	 * @param lambda - decay rate of the microcluster weights
+	 */
+	public MicroClusterBudget(int maxMicroClusters, double lambda) {
+		this.maxMicroClusters = maxMicroClusters;
+		this.lambda = lambda;
+	}
+
+	public boolean isEnabled() {
+		return maxMicroClusters > 0;
+	}
+
+	/**
+	 * Outlier microcluster created or updated (or degraded from potential).
+	 */
+	public void outlierChanged(T mc) {
+		if (maxMicroClusters > 0) {
+			outliers.put(mc, evictionKey(mc));
+		}
+	}
+
+	/**
+	 * Outlier microcluster promoted or removed.
+	 */
+	public void outlierRemoved(T mc) {
+		if (maxMicroClusters > 0) {
+			outliers.remove(mc);
+		}
+	}
+
+	/**
+	 * Evict the lowest-weight outlier microclusters until the budget is met.
+	 * 
+	 * @param numPotential - number of potential microclusters
+	 * @param outlier - the outlier microclusters, evicted ones are removed from it
+	 */
+	public void enforce(int numPotential, Collection<? super T> outlier) {
+		if (maxMicroClusters <= 0) {
+			return;
+		}
+		while (numPotential + outlier.size() > maxMicroClusters && outliers.size() > 0) {
+			outlier.remove(outliers.poll());
+			numEvicted++;
+		}
+	}
+
+	/**
+	 * Index all outlier microclusters again, e.g. after loading a checkpoint.
+	 * 
+	 * @param outlier - the outlier microclusters, all of class 'type'
+	 */
+	public void rebuild(Iterable<?> outlier, Class<T> type) {
+		outliers.clear();
+		for (Object mc : outlier) {
+			outlierChanged(type.cast(mc));
+		}
+	}
+
+	public long getNumEvicted() {
+		return numEvicted;
+	}
+
+	public Measurement getMeasurement() {
+		return new Measurement("evicted microclusters", numEvicted);
+	}
+
+	private double evictionKey(T mc) {
+		return Math.log(mc.getWeightAtLastEdit()) / Math.log(2) + lambda * mc.getLastEditTimestamp();
+	}
+}
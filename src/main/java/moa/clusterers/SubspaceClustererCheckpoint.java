@@ -0,0 +1,144 @@
+/**
+ * [SubspaceClustererCheckpoint.java] for Subspace MOA
+ *
+ * Binary checkpoint of a subspace clusterer, written and read with
+ * AbstractSubspaceClusterer.saveCheckpoint() and loadCheckpoint().
+ *
+ * Instead of the serialized object graph, a checkpoint holds only what is needed
+ * to continue training:
+ *   int     magic ("SMCP")
+ *   int     format version
+ *   UTF     CLI creation string of the clusterer (class and options)
+ *   double  training weight seen by the model
+ *   long    stream position (instances processed by the caller)
+ *   ...     model block of the clusterer (writeCheckpoint()/readCheckpoint()):
+ *           CF vectors, weights, timestamps, offline cluster assignments
+ *   int     magic again, to detect truncated files
+ *
+ * The helpers below write the parts shared by the clusterers. Derived values
+ * (centers, radii, preference vectors) are recomputed after loading.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import moa.cluster.CFCluster;
+import moa.options.ClassOption;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+public final class SubspaceClustererCheckpoint {
+
+	public static final int MAGIC = 0x534d4350;
+
+	/** Increase when the model block of any clusterer changes */
+	public static final int VERSION = 2;
+
+	private SubspaceClustererCheckpoint() {
+	}
+
+	static void write(AbstractSubspaceClusterer clusterer, DataOutputStream out) throws IOException {
+		if (!clusterer.supportsCheckpoints()) {
+			throw new UnsupportedOperationException(clusterer.getClass().getName() + " does not support checkpoints");
+		}
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(clusterer.getCLICreationString(SubspaceClusterer.class));
+		out.writeDouble(clusterer.trainingWeightSeenByModel);
+		out.writeLong(clusterer.streamPosition);
+		clusterer.writeCheckpoint(out);
+		out.writeInt(MAGIC);
+		out.flush();
+	}
+
+	static AbstractSubspaceClusterer read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("SubspaceClustererCheckpoint: not a checkpoint");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("SubspaceClustererCheckpoint: unsupported version " + version);
+		}
+		String cli = in.readUTF();
+
+		AbstractSubspaceClusterer clusterer;
+		try {
+			clusterer = (AbstractSubspaceClusterer) ClassOption.cliStringToObject(cli, SubspaceClusterer.class, null);
+		} catch (Exception e) {
+			throw new IOException("SubspaceClustererCheckpoint: cannot create clusterer " + cli, e);
+		}
+		clusterer.prepareForUse();		// Fresh model with the options of the checkpoint
+		clusterer.trainingWeightSeenByModel = in.readDouble();
+		clusterer.streamPosition = in.readLong();
+		clusterer.readCheckpoint(in);
+
+		if (in.readInt() != MAGIC) {
+			throw new IOException("SubspaceClustererCheckpoint: corrupt or truncated checkpoint");
+		}
+		return clusterer;
+	}
+
+
+	/** Helpers for the model blocks **/
+
+	public static void writeDoubles(DataOutput out, double[] values) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (int i = 0; i < values.length; i++) {
+			out.writeDouble(values[i]);
+		}
+	}
+
+	public static double[] readDoubles(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	/**
+	 * N, LS and SS of a cluster feature.
+	 */
+	public static void writeCF(DataOutput out, CFCluster cf) throws IOException {
+		out.writeDouble(cf.getN());
+		writeDoubles(out, cf.LS);
+		writeDoubles(out, cf.SS);
+	}
+
+	/**
+	 * Overwrite N, LS and SS of 'cf' with those of writeCF().
+	 */
+	public static void readCF(DataInput in, CFCluster cf) throws IOException {
+		cf.setN(in.readDouble());
+		cf.LS = readDoubles(in);
+		cf.SS = readDoubles(in);
+	}
+
+	/**
+	 * Weight and values of a (buffered) instance; the header is not stored.
+	 */
+	public static void writeInstance(DataOutput out, Instance inst) throws IOException {
+		out.writeDouble(inst.weight());
+		writeDoubles(out, inst.toDoubleArray());
+	}
+
+	public static Instance readInstance(DataInput in) throws IOException {
+		double weight = in.readDouble();
+		return new DenseInstance(weight, readDoubles(in));
+	}
+}
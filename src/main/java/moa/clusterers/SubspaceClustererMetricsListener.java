@@ -0,0 +1,23 @@
+/**
+ * [SubspaceClustererMetricsListener.java] for Subspace MOA
+ *
+ * Receives the runtime measurements of a subspace clusterer (see
+ * AbstractSubspaceClusterer.addMetricsListener()), e.g. to export them to a
+ * monitoring system. Called on the thread that trains the clusterer, so it
+ * should return quickly.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import moa.core.Measurement;
+
+public interface SubspaceClustererMetricsListener {
+
+	/**
+	 * @param clusterer - clusterer that published the measurements
+	 * @param measurements - getModelMeasurements() of the clusterer
+	 */
+	public void metricsUpdated(AbstractSubspaceClusterer clusterer, Measurement[] measurements);
+}
@@ -0,0 +1,65 @@
+/**
+ * [SubspaceClustererSnapshot.java] for Subspace MOA
+ *
+ * State of a subspace clusterer at one point of its training, taken with
+ * AbstractSubspaceClusterer.takeSnapshot(). The clusterings are copies that the
+ * clusterer never touches again, so a snapshot can be read from any thread while
+ * training continues. The micro-clustering consists of immutable
+ * MicroClusterSnapshots of the same epoch; readers must not modify the
+ * (macro) clustering either.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.Serializable;
+
+import moa.cluster.Clustering;
+import moa.cluster.SubspaceClustering;
+
+public final class SubspaceClustererSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long epoch;
+	private final double trainingWeight;
+	private final Clustering microClustering;
+	private final SubspaceClustering clustering;
+
+	public SubspaceClustererSnapshot(long epoch, double trainingWeight,
+			Clustering microClustering, SubspaceClustering clustering) {
+		this.epoch = epoch;
+		this.trainingWeight = trainingWeight;
+		this.microClustering = microClustering;
+		this.clustering = clustering;
+	}
+
+	/**
+	 * @return number of the snapshot; increases with every snapshot of the clusterer
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return training weight seen by the clusterer when the snapshot was taken
+	 */
+	public double getTrainingWeight() {
+		return trainingWeight;
+	}
+
+	/**
+	 * @return micro-clustering, or null if the clusterer has none
+	 */
+	public Clustering getMicroClustering() {
+		return microClustering;
+	}
+
+	/**
+	 * @return (macro) clustering, or null if not taken or not yet available
+	 */
+	public SubspaceClustering getClustering() {
+		return clustering;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * [ClosestKernelPairs.java] for Subspace MOA
+ *
+ * Nearest neighbour of every kernel center, kept up to date between merges of
+ * CluStream, so the closest two kernels do not need a full pairwise search each time.
+ *
+ * Kernels that changed (insert, replacement, merge) are only marked; on the next
+ * closestPair() their centers are read again, their neighbours searched, and
+ * kernels that had one of them as neighbour are searched again. If more than a
+ * quarter of the kernels changed, all pairs are recomputed instead.
+ *
+ * The result is the pair of the full search in Clustream: minimum distance, ties
+ * broken by the lower first and then the lower second index.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+class ClosestKernelPairs {
+
+	private final ClustreamKernel[] kernels;
+	private final double[][] centers;
+	private final int[] neighbour;
+	private final double[] neighbourDistance;
+
+	private final boolean[] changed;
+	private final int[] changedList;
+	private int numChanged;
+	private boolean allChanged = true;
+
+	private final boolean[] search;		// Scratch: neighbour has to be searched again
+
+
+	ClosestKernelPairs(ClustreamKernel[] kernels) {
+		int m = kernels.length;
+		this.kernels = kernels;
+		this.centers = new double[m][];
+		this.neighbour = new int[m];
+		this.neighbourDistance = new double[m];
+		this.changed = new boolean[m];
+		this.changedList = new int[m];
+		this.search = new boolean[m];
+	}
+
+	/**
+	 * Kernel i was updated or replaced.
+	 */
+	void changed(int i) {
+		if (!allChanged && !changed[i]) {
+			changed[i] = true;
+			changedList[numChanged++] = i;
+			if (numChanged * 4 > kernels.length) {
+				allChanged = true;
+			}
+		}
+	}
+
+	/**
+	 * All kernels were updated or replaced.
+	 */
+	void changedAll() {
+		allChanged = true;
+	}
+
+	/**
+	 * @return indices {a, b}, a < b, of the closest two kernels
+	 */
+	int[] closestPair() {
+		int m = kernels.length;
+		if (m < 2) {
+			return new int[] {0, 0};
+		}
+		update();
+
+		int a = 0;
+		double minDistance = Double.MAX_VALUE;
+		for (int i = 0; i < m; i++) {
+			if (neighbourDistance[i] < minDistance) {
+				minDistance = neighbourDistance[i];
+				a = i;
+			}
+		}
+		// The first index of a closest pair has no closer or equally close lower neighbour
+		return new int[] {a, neighbour[a]};
+	}
+
+	private void update() {
+		int m = kernels.length;
+		if (allChanged) {
+			for (int i = 0; i < m; i++) {
+				centers[i] = kernels[i].getCenterRef();
+				neighbour[i] = -1;
+				neighbourDistance[i] = Double.MAX_VALUE;
+			}
+			for (int i = 0; i < m; i++) {
+				for (int j = i + 1; j < m; j++) {
+					double d = distance(centers[i], centers[j]);
+					offer(i, j, d);
+					offer(j, i, d);
+				}
+			}
+		} else if (numChanged > 0) {
+			for (int k = 0; k < numChanged; k++) {
+				int c = changedList[k];
+				centers[c] = kernels[c].getCenterRef();
+			}
+			for (int i = 0; i < m; i++) {
+				search[i] = !changed[i] && changed[neighbour[i]];
+			}
+			for (int k = 0; k < numChanged; k++) {
+				int c = changedList[k];
+				searchNeighbour(c);
+				for (int j = 0; j < m; j++) {
+					if (!changed[j] && !search[j]) {
+						offer(j, c, distance(centers[j], centers[c]));
+					}
+				}
+			}
+			for (int i = 0; i < m; i++) {
+				if (search[i]) {
+					searchNeighbour(i);
+				}
+			}
+		}
+
+		for (int k = 0; k < numChanged; k++) {
+			changed[changedList[k]] = false;
+		}
+		numChanged = 0;
+		allChanged = false;
+	}
+
+	private void searchNeighbour(int i) {
+		neighbour[i] = -1;
+		neighbourDistance[i] = Double.MAX_VALUE;
+		for (int j = 0; j < kernels.length; j++) {
+			if (j != i) {
+				offer(i, j, distance(centers[i], centers[j]));
+			}
+		}
+	}
+
+	/**
+	 * Candidate j as neighbour of i; the lower index wins ties.
+	 */
+	private void offer(int i, int j, double d) {
+		if (d < neighbourDistance[i] || (d == neighbourDistance[i] && j < neighbour[i]) || neighbour[i] < 0) {
+			neighbour[i] = j;
+			neighbourDistance[i] = d;
+		}
+	}
+
+	private static double distance(double[] pointA, double[] pointB) {
+		double distance = 0.0;
+		for (int i = 0; i < pointA.length; i++) {
+			double d = pointA[i] - pointB[i];
+			distance += d * d;
+		}
+		return Math.sqrt(distance);
+	}
+}
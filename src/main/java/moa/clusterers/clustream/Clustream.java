@@ -12,8 +12,7 @@
 
 package moa.clusterers.clustream;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import moa.cluster.Cluster;
@@ -48,10 +47,13 @@ public class Clustream extends AbstractClusterer {
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
 	private boolean initialized;
-	private List<ClustreamKernel> buffer; // Buffer for initialization with kNN
+	private ClustreamKernel[] buffer; // Buffer for initialization with kNN
+	private int bufferCount;
 	private int bufferSize;
 	private double t;
 	private int m;
+	private transient ClosestKernelPairs closestPairs;	// Created on the first merge
+	private transient KernelExpiryQueue expiryQueue;		// Created on the first forgetting
 	private int streamSpeed;
 	
 	private boolean debug = false;
@@ -65,8 +67,11 @@ public class Clustream extends AbstractClusterer {
 		this.kernels = new ClustreamKernel[maxNumKernelsOption.getValue()];
 		this.timeWindow = timeWindowOption.getValue();
 		this.initialized = false;
-		this.buffer = new LinkedList<ClustreamKernel>();
 		this.bufferSize = maxNumKernelsOption.getValue();
+		this.buffer = new ClustreamKernel[bufferSize];
+		this.bufferCount = 0;
+		this.closestPairs = null;
+		this.expiryQueue = null;
 		t = kernelRadiFactorOption.getValue();
 		m = maxNumKernelsOption.getValue();
 		streamSpeed = streamSpeedOption.getValue();
@@ -84,8 +89,8 @@ public class Clustream extends AbstractClusterer {
 		
 		// 0. Initialize
 		if ( !initialized ) {
-			if ( buffer.size() < bufferSize ) {
-				buffer.add( new ClustreamKernel(instance,dim, timestamp, t, m) );
+			if ( bufferCount < bufferSize ) {
+				buffer[bufferCount++] = new ClustreamKernel(instance,dim, timestamp, t, m);
 				return;
 			}
 
@@ -93,18 +98,17 @@ public class Clustream extends AbstractClusterer {
 			//System.err.println("k="+k+" bufferSize="+bufferSize);
 			assert (k <= bufferSize);
 
-			ClustreamKernel[] centers = new ClustreamKernel[k];
-			for ( int i = 0; i < k; i++ ) {
-				centers[i] = buffer.get( i ); // TODO: make random!
-			}
-			Clustering kmeans_clustering = kMeans(k, centers, buffer);
-//			Clustering kmeans_clustering = kMeans(k, buffer);
+			// With as many kernels as points, every point is its own cluster
+			Clustering kmeans_clustering = (k >= bufferCount)
+					? new Clustering( buffer )
+					: kMeans( k, Arrays.asList( buffer ) );
 
 			for ( int i = 0; i < kmeans_clustering.size(); i++ ) {
-				kernels[i] = new ClustreamKernel( new DenseInstance(1.0,centers[i].getCenter()), dim, timestamp, t, m );
+				kernels[i] = new ClustreamKernel( new DenseInstance(1.0,kmeans_clustering.get(i).getCenter()), dim, timestamp, t, m );
 			}
 
-			buffer.clear();
+			buffer = null;
+			bufferCount = 0;
 			initialized = true;
 			return;
 		}
@@ -112,12 +116,15 @@ public class Clustream extends AbstractClusterer {
 
 		// 1. Determine closest kernel
 		ClustreamKernel closestKernel = null;
+		int closestIndex = -1;
 		double minDistance = Double.MAX_VALUE;
+		double[] point = instance.toDoubleArray();
 		for ( int i = 0; i < kernels.length; i++ ) {
 			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter() );
+			double distance = kernels[i].distanceToPoint( point );
 			if ( distance < minDistance ) {
 				closestKernel = kernels[i];
+				closestIndex = i;
 				minDistance = distance;
 			}
 		}
@@ -128,13 +135,13 @@ public class Clustream extends AbstractClusterer {
 			// Special case: estimate radius by determining the distance to the
 			// next closest cluster
 			radius = Double.MAX_VALUE;
-			double[] center = closestKernel.getCenter();
+			double[] center = closestKernel.getCenterRef();
 			for ( int i = 0; i < kernels.length; i++ ) {
 				if ( kernels[i] == closestKernel ) {
 					continue;
 				}
 
-				double distance = distance(kernels[i].getCenter(), center );
+				double distance = kernels[i].distanceToPoint( center );
 				radius = Math.min( distance, radius );
 			}
 		} else {
@@ -144,6 +151,7 @@ public class Clustream extends AbstractClusterer {
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged( closestIndex );
 			return;
 		}
 
@@ -151,33 +159,38 @@ public class Clustream extends AbstractClusterer {
 		// some space to insert a new kernel
 		long threshold = timestamp - timeWindow; // Kernels before this can be forgotten
 
-		// 3.1 Try to forget old kernels
-		for ( int i = 0; i < kernels.length; i++ ) {
-			if ( kernels[i].getRelevanceStamp() < threshold ) {
-				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
-				return;
-			}
+		// 3.1 Try to forget old kernels (first one with an expired relevance stamp)
+		if ( expiryQueue == null ) {
+			expiryQueue = new KernelExpiryQueue( kernels );
+		}
+		int expired = expiryQueue.firstExpired( threshold );
+		if ( expired >= 0 ) {
+			kernels[expired] = new ClustreamKernel( instance, dim, timestamp, t, m );
+			kernelChanged( expired );
+			return;
 		}
 
-		// 3.2 Merge closest two kernels
-		int closestA = 0;
-		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			double[] centerA = kernels[i].getCenter();
-			for ( int j = i + 1; j < kernels.length; j++ ) {
-				double dist = distance( centerA, kernels[j].getCenter() );
-				if ( dist < minDistance ) {
-					minDistance = dist;
-					closestA = i;
-					closestB = j;
-				}
-			}
+		// 3.2 Merge closest two kernels (neighbours are maintained incrementally)
+		if ( closestPairs == null ) {
+			closestPairs = new ClosestKernelPairs( kernels );
 		}
+		int[] closest = closestPairs.closestPair();
+		int closestA = closest[0];
+		int closestB = closest[1];
 		assert (closestA != closestB);
 
 		kernels[closestA].add( kernels[closestB] );
 		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged( closestA );
+		kernelChanged( closestB );
+	}
+
+	/**
+	 * Kernel i was updated or replaced: refresh its neighbours and relevance stamp lazily.
+	 */
+	private void kernelChanged( int i ) {
+		if ( closestPairs != null ) closestPairs.changed( i );
+		if ( expiryQueue != null ) expiryQueue.changed( i );
 	}
 
 	@Override
@@ -231,94 +244,66 @@ public class Clustream extends AbstractClusterer {
 	//        return clustering;
 	//    }
 
+	/**
+	 * k-means with k-means++ initialization (seeded, deterministic).
+	 */
 	public static Clustering kMeans( int k, List<? extends Cluster> data ) {
-		Random random = new Random(0);
-		Cluster[] centers = new Cluster[k];
-		for (int i = 0; i < centers.length; i++) {
-			int rid = random.nextInt(k);
-			centers[i] = new SphereCluster(data.get(rid).getCenter(),0);
+		k = Math.min( k, data.size() );
+		double[][] points = new double[data.size()][];
+		double[] weights = new double[points.length];
+		for ( int i = 0; i < points.length; i++ ) {
+			points[i] = data.get( i ).getCenter();
+			weights[i] = 1.0;
 		}
-		Clustering clustering = kMeans(k, centers, data);
-		return clustering;
+		double[][] centers = new double[k][];
+		WeightedKMeans.seed( points, weights, centers, 0, new Random(0) );
+		return kMeans( centers, points, weights );
 	}
 
-
-
-
-
+	/**
+	 * k-means from the given centers, until convergence (at most 100 iterations).
+	 */
 	public static Clustering kMeans( int k, Cluster[] centers, List<? extends Cluster> data ) {
 		assert (centers.length == k);
 		assert (k > 0);
 
-		int dimensions = centers[0].getCenter().length;
-
-		ArrayList<ArrayList<Cluster>> clustering = new ArrayList<ArrayList<Cluster>>();
-		for ( int i = 0; i < k; i++ ) {
-			clustering.add( new ArrayList<Cluster>() );
+		double[][] points = new double[data.size()][];
+		double[] weights = new double[points.length];
+		for ( int i = 0; i < points.length; i++ ) {
+			points[i] = data.get( i ).getCenter();
+			weights[i] = 1.0;
 		}
-
-		int repetitions = 100;
-		while ( repetitions-- >= 0 ) {
-			// Assign points to clusters
-			for ( Cluster point : data ) {
-				double minDistance = distance( point.getCenter(), centers[0].getCenter() );
-				int closestCluster = 0;
-				for ( int i = 1; i < k; i++ ) {
-					double distance = distance( point.getCenter(), centers[i].getCenter() );
-					if ( distance < minDistance ) {
-						closestCluster = i;
-						minDistance = distance;
-					}
-				}
-
-				clustering.get( closestCluster ).add( point );
-			}
-
-			// Calculate new centers and clear clustering lists
-			SphereCluster[] newCenters = new SphereCluster[centers.length];
-			for ( int i = 0; i < k; i++ ) {
-				newCenters[i] = calculateCenter( clustering.get( i ), dimensions );
-				clustering.get( i ).clear();
-			}
-			centers = newCenters;
+		double[][] init = new double[k][];
+		for ( int i = 0; i < k; i++ ) {
+			init[i] = centers[i].getCenter();
 		}
-
-		return new Clustering( centers );
+		return kMeans( init, points, weights );
 	}
 
-	private static SphereCluster calculateCenter( ArrayList<Cluster> cluster, int dimensions ) {
-		double[] res = new double[dimensions];
-		for ( int i = 0; i < res.length; i++ ) {
-			res[i] = 0.0;
-		}
-
-		if ( cluster.size() == 0 ) {
-			return new SphereCluster( res, 0.0 );
+	/**
+	 * @return one SphereCluster per center: weighted mean, radius covers its points
+	 */
+	private static Clustering kMeans( double[][] centers, double[][] points, double[] weights ) {
+		int k = centers.length;
+		int[] assignment = new int[points.length];
+		if ( points.length > 0 ) {
+			WeightedKMeans.cluster( points, weights, centers, assignment, WeightedKMeans.DEFAULT_MAX_ITERATIONS );
 		}
 
-		for ( Cluster point : cluster ) {
-			double [] center = point.getCenter();
-			for (int i = 0; i < res.length; i++) {
-				res[i] += center[i];
-			}
-		}
-
-		// Normalize
-		for ( int i = 0; i < res.length; i++ ) {
-			res[i] /= cluster.size();
+		double[] radius = new double[k];
+		double[] weight = new double[k];
+		for ( int i = 0; i < points.length; i++ ) {
+			int c = assignment[i];
+			radius[c] = Math.max( radius[c], distance( centers[c], points[i] ) );
+			weight[c] += weights[i];
 		}
 
-		// Calculate radius
-		double radius = 0.0;
-		for ( Cluster point : cluster ) {
-			double dist = distance( res, point.getCenter() );
-			if ( dist > radius ) {
-				radius = dist;
-			}
+		SphereCluster[] res = new SphereCluster[k];
+		for ( int i = 0; i < k; i++ ) {
+			res[i] = new SphereCluster( centers[i], radius[i] );
+			res[i].setWeight( weight[i] );
 		}
-		SphereCluster sc = new SphereCluster( res, radius );
-		sc.setWeight(cluster.size());
-		return sc;
+		return new Clustering( res );
 	}
 
 	@Override
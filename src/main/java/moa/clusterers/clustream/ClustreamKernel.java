@@ -19,9 +19,14 @@
  */
 
 package moa.clusterers.clustream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Random;
 import moa.cluster.CFCluster;
+import moa.clusterers.SubspaceClustererCheckpoint;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 
 public class ClustreamKernel extends CFCluster {
@@ -36,6 +41,9 @@ public class ClustreamKernel extends CFCluster {
     int m;
     double t;
 
+    private transient double[] center;		// LS / N, see getCenterRef()
+    private transient boolean centerValid;
+
 
     public ClustreamKernel( Instance instance, int dimensions, long timestamp , double t, int m) {
         super(instance, dimensions);
@@ -53,7 +61,31 @@ public class ClustreamKernel extends CFCluster {
         this.SST = cluster.SST;
     }
 
+    private ClustreamKernel( double t, int m ) {
+        super(0);
+        this.t = t;
+        this.m = m;
+    }
+
+    /**
+     * Write CF vectors and time statistics (see SubspaceClustererCheckpoint).
+     */
+    public void writeCheckpoint( DataOutput out ) throws IOException {
+        SubspaceClustererCheckpoint.writeCF(out, this);
+        out.writeDouble(LST);
+        out.writeDouble(SST);
+    }
+
+    public static ClustreamKernel readCheckpoint( DataInput in, double t, int m ) throws IOException {
+        ClustreamKernel kernel = new ClustreamKernel(t, m);
+        SubspaceClustererCheckpoint.readCF(in, kernel);
+        kernel.LST = in.readDouble();
+        kernel.SST = in.readDouble();
+        return kernel;
+    }
+
     public void insert( Instance instance, long timestamp ) {
+		centerValid = false;
 		N++;
 		LST += timestamp;
 		SST += timestamp*timestamp;
@@ -68,6 +100,7 @@ public class ClustreamKernel extends CFCluster {
     public void add( CFCluster other2 ) {
         ClustreamKernel other = (ClustreamKernel) other2;
 		assert( other.LS.length == this.LS.length );
+		centerValid = false;
 		this.N += other.N;
 		this.LST += other.LST;
 		this.SST += other.SST;
@@ -98,6 +131,19 @@ public class ClustreamKernel extends CFCluster {
 		return Math.sqrt( 2 ) * inverseError( 2*z - 1 );
     }
 
+    /**
+     * Kernel with the given statistics (e.g. for tests of the kernel queues).
+     */
+    static ClustreamKernel fromStatistics( double N, double[] LS, double[] SS, double LST, double SST, double t, int m ) {
+        ClustreamKernel kernel = new ClustreamKernel( new DenseInstance(1.0, LS), LS.length, 0, t, m );
+        kernel.N = N;
+        kernel.LS = LS.clone();
+        kernel.SS = SS.clone();
+        kernel.LST = LST;
+        kernel.SST = SST;
+        return kernel;
+    }
+
     @Override
     public double getRadius() {
         //trivial cluster
@@ -124,19 +170,57 @@ public class ClustreamKernel extends CFCluster {
         return sumOfDeviation / variance.length;
     }
 
+    @Override
+    public void setN( double N ) {
+        super.setN(N);
+        centerValid = false;
+    }
+
     /**
-     * @return this kernels' center
+     * @return this kernels' center, a new array computed without the cache
+     * (safe while training runs)
      */
     @Override
     public double[] getCenter() {
         assert (!this.isEmpty());
-        double res[] = new double[this.LS.length];
+        double[] res = new double[this.LS.length];
         for (int i = 0; i < res.length; i++) {
             res[i] = this.LS[i] / N;
         }
         return res;
     }
 
+    /**
+     * Cached center, computed again after the kernel changed.
+     * Read only; the array is reused for the next center. Only for the
+     * thread that trains the clusterer, as it writes the cache.
+     */
+    public double[] getCenterRef() {
+        assert (!this.isEmpty());
+        if (!centerValid) {
+            if (center == null) {
+                center = new double[this.LS.length];
+            }
+            for (int i = 0; i < center.length; i++) {
+                center[i] = this.LS[i] / N;
+            }
+            centerValid = true;
+        }
+        return center;
+    }
+
+    /**
+     * Euclidean distance of the center to a point, without building the center.
+     */
+    public double distanceToPoint(double[] point) {
+        double distance = 0.0;
+        for (int i = 0; i < LS.length; i++) {
+            double d = point[i] - LS[i] / N;
+            distance += d * d;
+        }
+        return Math.sqrt(distance);
+    }
+
     /**
      * See interface <code>Cluster</code>
      * @param point
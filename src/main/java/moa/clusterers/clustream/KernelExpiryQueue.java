@@ -0,0 +1,106 @@
+/**
+ * [KernelExpiryQueue.java] for Subspace MOA
+ *
+ * Cached relevance stamps of the CluStream kernels in an array-backed min-tree
+ * over the kernel positions, to find a kernel that can be forgotten in O(log m).
+ *
+ * Changed kernels are only marked; their stamps are computed again on the next
+ * query. The query returns the lowest position with a stamp below the threshold,
+ * i.e. the kernel the linear scan in Clustream replaced.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+class KernelExpiryQueue {
+
+	private final ClustreamKernel[] kernels;
+	private final int size;				// Leaves: power of two >= number of kernels
+	private final double[] tree;		// tree[1] is the minimum, leaf of kernel i is tree[size + i]
+
+	private final boolean[] changed;
+	private final int[] changedList;
+	private int numChanged;
+	private boolean allChanged = true;
+
+
+	KernelExpiryQueue(ClustreamKernel[] kernels) {
+		int m = kernels.length;
+		int s = 1;
+		while (s < m) {
+			s <<= 1;
+		}
+		this.kernels = kernels;
+		this.size = s;
+		this.tree = new double[2 * s];
+		for (int i = 0; i < tree.length; i++) {
+			tree[i] = Double.POSITIVE_INFINITY;
+		}
+		this.changed = new boolean[m];
+		this.changedList = new int[m];
+	}
+
+	/**
+	 * Kernel i was updated or replaced.
+	 */
+	void changed(int i) {
+		if (!allChanged && !changed[i]) {
+			changed[i] = true;
+			changedList[numChanged++] = i;
+		}
+	}
+
+	/**
+	 * All kernels were updated or replaced.
+	 */
+	void changedAll() {
+		allChanged = true;
+	}
+
+	/**
+	 * @return lowest kernel index with a relevance stamp below 'threshold', or -1
+	 */
+	int firstExpired(long threshold) {
+		update();
+		if (!(tree[1] < threshold)) {
+			return -1;
+		}
+		int node = 1;
+		while (node < size) {
+			node = tree[2 * node] < threshold ? 2 * node : 2 * node + 1;
+		}
+		return node - size;
+	}
+
+	private void update() {
+		if (allChanged) {
+			for (int i = 0; i < kernels.length; i++) {
+				tree[size + i] = stamp(i);
+			}
+			for (int node = size - 1; node >= 1; node--) {
+				tree[node] = Math.min(tree[2 * node], tree[2 * node + 1]);
+			}
+		} else {
+			for (int k = 0; k < numChanged; k++) {
+				int i = changedList[k];
+				int node = size + i;
+				tree[node] = stamp(i);
+				for (node >>= 1; node >= 1; node >>= 1) {
+					tree[node] = Math.min(tree[2 * node], tree[2 * node + 1]);
+				}
+			}
+		}
+
+		for (int k = 0; k < numChanged; k++) {
+			changed[changedList[k]] = false;
+		}
+		numChanged = 0;
+		allChanged = false;
+	}
+
+	private double stamp(int i) {
+		double stamp = kernels[i].getRelevanceStamp();
+		return Double.isNaN(stamp) ? Double.POSITIVE_INFINITY : stamp;	// Never below a threshold
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * [WeightedKMeans.java] for Subspace MOA
+ *
+ * Weighted k-means of points (e.g. micro-cluster centers weighted by getWeight()):
+ * - k-means++ seeding (D^2 sampling, proportional to weight),
+ * - Hamerly's algorithm: an upper bound to the assigned and a lower bound to the
+ *   second closest center skip most distance computations once centers settle,
+ * - stops as soon as no assignment changes (or after maxIterations).
+ *
+ * Ties go to the center with the lower index, as in a plain scan.
+ *
+ * Reference: G. Hamerly, "Making k-means even faster", SDM, p130-140, 2010.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+import java.util.Random;
+
+public class WeightedKMeans {
+
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+	/**
+	 * Choose centers[numGiven..] by weighted k-means++; the first 'numGiven' are kept.
+	 *
+	 * @param points - n points
+	 * @param weights - non-negative weight per point
+	 * @param centers - k rows of the point dimension
+	 */
+	public static void seed(double[][] points, double[] weights, double[][] centers, int numGiven, Random random) {
+		int n = points.length;
+		int k = centers.length;
+		if (numGiven >= k) {
+			return;
+		}
+
+		// Squared distance to the closest chosen center (weighted)
+		double[] minDist = new double[n];
+		int chosen = numGiven;
+		if (chosen == 0) {
+			int first = sample(weights, null, random);
+			centers[0] = points[first].clone();
+			chosen = 1;
+		}
+		for (int i = 0; i < n; i++) {
+			minDist[i] = Double.MAX_VALUE;
+			for (int j = 0; j < chosen; j++) {
+				minDist[i] = Math.min(minDist[i], squaredDistance(points[i], centers[j]));
+			}
+		}
+
+		for (; chosen < k; chosen++) {
+			int next = sample(weights, minDist, random);
+			centers[chosen] = points[next].clone();
+			for (int i = 0; i < n; i++) {
+				minDist[i] = Math.min(minDist[i], squaredDistance(points[i], centers[chosen]));
+			}
+		}
+	}
+
+	/**
+	 * Index drawn with probability proportional to weight * minDist
+	 * (weight only, if minDist is null or all chosen points are covered).
+	 */
+	private static int sample(double[] weights, double[] minDist, Random random) {
+		int n = weights.length;
+		double total = 0;
+		if (minDist != null) {
+			for (int i = 0; i < n; i++) {
+				total += weights[i] * minDist[i];
+			}
+		}
+		if (!(total > 0)) {
+			minDist = null;
+			for (int i = 0; i < n; i++) {
+				total += weights[i];
+			}
+		}
+		if (!(total > 0)) {
+			return random.nextInt(n);
+		}
+
+		double r = random.nextDouble() * total;
+		int last = 0;
+		for (int i = 0; i < n; i++) {
+			double p = minDist == null ? weights[i] : weights[i] * minDist[i];
+			if (p > 0) {
+				last = i;
+				r -= p;
+				if (r < 0) {
+					return i;
+				}
+			}
+		}
+		return last;		// Rounding
+	}
+
+	/**
+	 * Run k-means from the given centers, which are updated in place.
+	 *
+	 * @param points - n points
+	 * @param weights - non-negative weight per point
+	 * @param centers - k initial centers, final centers on return
+	 * @param assignment - n entries, index of the closest final center on return
+	 * @return number of iterations
+	 */
+	public static int cluster(double[][] points, double[] weights, double[][] centers, int[] assignment, int maxIterations) {
+		int n = points.length;
+		int k = centers.length;
+		int d = centers[0].length;
+
+		double[] upper = new double[n];		// >= distance to the assigned center
+		double[] lower = new double[n];		// <= distance to any other center
+		double[] halfGap = new double[k];	// Half the distance to the closest other center
+		double[] moved = new double[k];
+		double[][] sums = new double[k][d];
+		double[] weightSums = new double[k];
+
+		for (int i = 0; i < n; i++) {
+			scan(points[i], centers, assignment, upper, lower, i);
+		}
+
+		int iteration = 0;
+		while (true) {
+			iteration++;
+
+			// Move centers to the weighted means
+			for (int j = 0; j < k; j++) {
+				weightSums[j] = 0;
+				for (int a = 0; a < d; a++) {
+					sums[j][a] = 0;
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				double w = weights[i];
+				double[] sum = sums[assignment[i]];
+				double[] x = points[i];
+				for (int a = 0; a < d; a++) {
+					sum[a] += w * x[a];
+				}
+				weightSums[assignment[i]] += w;
+			}
+			double maxMoved = 0, secondMoved = 0;
+			int maxMovedIndex = -1;
+			for (int j = 0; j < k; j++) {
+				moved[j] = 0;
+				if (weightSums[j] > 0) {		// Otherwise the center stays
+					double dist = 0;
+					for (int a = 0; a < d; a++) {
+						double c = sums[j][a] / weightSums[j];
+						double diff = c - centers[j][a];
+						dist += diff * diff;
+						centers[j][a] = c;
+					}
+					moved[j] = Math.sqrt(dist);
+				}
+				if (moved[j] > maxMoved) {
+					secondMoved = maxMoved;
+					maxMoved = moved[j];
+					maxMovedIndex = j;
+				} else if (moved[j] > secondMoved) {
+					secondMoved = moved[j];
+				}
+			}
+			if (maxMoved == 0 || iteration >= maxIterations) {
+				break;
+			}
+
+			// Update bounds
+			for (int i = 0; i < n; i++) {
+				int a = assignment[i];
+				upper[i] += moved[a];
+				lower[i] -= (a == maxMovedIndex) ? secondMoved : maxMoved;
+			}
+
+			// Reassign
+			for (int j = 0; j < k; j++) {
+				double min = Double.MAX_VALUE;
+				for (int j2 = 0; j2 < k; j2++) {
+					if (j2 != j) {
+						min = Math.min(min, distance(centers[j], centers[j2]));
+					}
+				}
+				halfGap[j] = min / 2;
+			}
+			boolean changed = false;
+			for (int i = 0; i < n; i++) {
+				int a = assignment[i];
+				double bound = Math.max(halfGap[a], lower[i]);
+				if (upper[i] < bound) {
+					continue;		// Strictly closer than any other center: no tie possible
+				}
+				upper[i] = distance(points[i], centers[a]);
+				if (upper[i] < bound) {
+					continue;
+				}
+				scan(points[i], centers, assignment, upper, lower, i);
+				if (assignment[i] != a) {
+					changed = true;
+				}
+			}
+			if (!changed) {
+				break;
+			}
+		}
+		return iteration;
+	}
+
+	/**
+	 * Closest and second closest center of point i.
+	 */
+	private static void scan(double[] x, double[][] centers, int[] assignment, double[] upper, double[] lower, int i) {
+		int closest = 0;
+		double min = Double.MAX_VALUE, second = Double.MAX_VALUE;
+		for (int j = 0; j < centers.length; j++) {
+			double dist = distance(x, centers[j]);
+			if (dist < min) {
+				second = min;
+				min = dist;
+				closest = j;
+			} else if (dist < second) {
+				second = dist;
+			}
+		}
+		assignment[i] = closest;
+		upper[i] = min;
+		lower[i] = second;
+	}
+
+	private static double squaredDistance(double[] pointA, double[] pointB) {
+		double distance = 0.0;
+		for (int i = 0; i < pointA.length; i++) {
+			double d = pointA[i] - pointB[i];
+			distance += d * d;
+		}
+		return distance;
+	}
+
+	private static double distance(double[] pointA, double[] pointB) {
+		return Math.sqrt(squaredDistance(pointA, pointB));
+	}
+}
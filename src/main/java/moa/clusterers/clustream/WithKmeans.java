@@ -12,16 +12,15 @@
 
 package moa.clusterers.clustream;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Random;
 
 import moa.cluster.CFCluster;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
-import moa.cluster.SphereCluster;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
 import moa.core.Measurement;
@@ -52,10 +51,13 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
 	private boolean initialized;
-	private List<ClustreamKernel> buffer; // Buffer for initialization with kNN
+	private ClustreamKernel[] buffer; // Buffer for initialization with kNN
+	private int bufferCount;
 	private int bufferSize;
 	private double t;
 	private int m;
+	private transient ClosestKernelPairs closestPairs;	// Created on the first merge
+	private transient KernelExpiryQueue expiryQueue;		// Created on the first forgetting
 	
 	public WithKmeans() {
 	
@@ -66,8 +68,11 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		this.kernels = new ClustreamKernel[maxNumKernelsOption.getValue()];
 		this.timeWindow = timeWindowOption.getValue();
 		this.initialized = false;
-		this.buffer = new LinkedList<ClustreamKernel>();
 		this.bufferSize = maxNumKernelsOption.getValue();
+		this.buffer = new ClustreamKernel[bufferSize];
+		this.bufferCount = 0;
+		this.closestPairs = null;
+		this.expiryQueue = null;
 		t = kernelRadiFactorOption.getValue();
 		m = maxNumKernelsOption.getValue();
 	}
@@ -78,15 +83,16 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		timestamp++;
 		// 0. Initialize
 		if (!initialized) {
-			if (buffer.size() < bufferSize) {
-				buffer.add(new ClustreamKernel(instance, dim, timestamp, t, m));
+			if (bufferCount < bufferSize) {
+				buffer[bufferCount++] = new ClustreamKernel(instance, dim, timestamp, t, m);
 				return;
 			} else {
-				for (int i = 0; i < buffer.size(); i++) {
-					kernels[i] = new ClustreamKernel(new DenseInstance(1.0, buffer.get(i).getCenter()), dim, timestamp, t, m);
+				for (int i = 0; i < bufferCount; i++) {
+					kernels[i] = new ClustreamKernel(new DenseInstance(1.0, buffer[i].getCenter()), dim, timestamp, t, m);
 				}
 	
-				buffer.clear();
+				buffer = null;
+				bufferCount = 0;
 				initialized = true;
 				return;
 			}
@@ -95,12 +101,15 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 
 		// 1. Determine closest kernel
 		ClustreamKernel closestKernel = null;
+		int closestIndex = -1;
 		double minDistance = Double.MAX_VALUE;
+		double[] point = instance.toDoubleArray();
 		for ( int i = 0; i < kernels.length; i++ ) {
 			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter());
+			double distance = kernels[i].distanceToPoint( point );
 			if (distance < minDistance) {
 				closestKernel = kernels[i];
+				closestIndex = i;
 				minDistance = distance;
 			}
 		}
@@ -111,13 +120,13 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 			// Special case: estimate radius by determining the distance to the
 			// next closest cluster
 			radius = Double.MAX_VALUE;
-			double[] center = closestKernel.getCenter();
+			double[] center = closestKernel.getCenterRef();
 			for ( int i = 0; i < kernels.length; i++ ) {
 				if ( kernels[i] == closestKernel ) {
 					continue;
 				}
 
-				double distance = distance(kernels[i].getCenter(), center );
+				double distance = kernels[i].distanceToPoint( center );
 				radius = Math.min( distance, radius );
 			}
 		} else {
@@ -127,6 +136,7 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged( closestIndex );
 			return;
 		}
 
@@ -134,33 +144,38 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		// some space to insert a new kernel
 		long threshold = timestamp - timeWindow; // Kernels before this can be forgotten
 
-		// 3.1 Try to forget old kernels
-		for ( int i = 0; i < kernels.length; i++ ) {
-			if ( kernels[i].getRelevanceStamp() < threshold ) {
-				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
-				return;
-			}
+		// 3.1 Try to forget old kernels (first one with an expired relevance stamp)
+		if ( expiryQueue == null ) {
+			expiryQueue = new KernelExpiryQueue( kernels );
+		}
+		int expired = expiryQueue.firstExpired( threshold );
+		if ( expired >= 0 ) {
+			kernels[expired] = new ClustreamKernel( instance, dim, timestamp, t, m );
+			kernelChanged( expired );
+			return;
 		}
 
-		// 3.2 Merge closest two kernels
-		int closestA = 0;
-		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			double[] centerA = kernels[i].getCenter();
-			for ( int j = i + 1; j < kernels.length; j++ ) {
-				double dist = distance( centerA, kernels[j].getCenter() );
-				if ( dist < minDistance ) {
-					minDistance = dist;
-					closestA = i;
-					closestB = j;
-				}
-			}
+		// 3.2 Merge closest two kernels (neighbours are maintained incrementally)
+		if ( closestPairs == null ) {
+			closestPairs = new ClosestKernelPairs( kernels );
 		}
+		int[] closest = closestPairs.closestPair();
+		int closestA = closest[0];
+		int closestB = closest[1];
 		assert (closestA != closestB);
 
 		kernels[closestA].add( kernels[closestB] );
 		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged( closestA );
+		kernelChanged( closestB );
+	}
+
+	/**
+	 * Kernel i was updated or replaced: refresh its neighbours and relevance stamp lazily.
+	 */
+	private void kernelChanged( int i ) {
+		if ( closestPairs != null ) closestPairs.changed( i );
+		if ( expiryQueue != null ) expiryQueue.changed( i );
 	}
 	
 	@Override
@@ -176,7 +191,7 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 
 		return new Clustering(result);
 	}
-	
+
 	@Override
 	public SubspaceClustering getClusteringResult() {
 		return new SubspaceClustering(kMeans_rand(kOption.getValue(), getMicroClusteringResult()));
@@ -190,25 +205,10 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		return "CluStreamWithKMeans " + timeWindow;
 	}
 
-	/**
-	 * Distance between two vectors.
-	 * 
-	 * @param pointA
-	 * @param pointB
-	 * @return dist
-	 */
-	private static double distance(double[] pointA, double [] pointB) {
-		double distance = 0.0;
-		for (int i = 0; i < pointA.length; i++) {
-			double d = pointA[i] - pointB[i];
-			distance += d * d;
-		}
-		return Math.sqrt(distance);
-	}
-
 	/**
 	 * k-means of (micro)clusters, with ground-truth-aided initialization.
 	 * (to produce best results) 
+	 * The centers not given by the ground truth are seeded with k-means++.
 	 * 
 	 * @param k
 	 * @param data
@@ -216,37 +216,30 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	 */
 	public static Clustering kMeans_gta(int k, Clustering clustering, Clustering gtClustering) {
 		
-		ArrayList<CFCluster> microclusters = new ArrayList<CFCluster>();
-        for (int i = 0; i < clustering.size(); i++) {
-            if (clustering.get(i) instanceof CFCluster) {
-                microclusters.add((CFCluster)clustering.get(i));
-            } else {
-                System.out.println("Unsupported Cluster Type:" + clustering.get(i).getClass() + ". Cluster needs to extend moa.cluster.CFCluster");
-            }
-        }
-        
-        int n = microclusters.size();
-		assert (k <= n);
+		ArrayList<CFCluster> microclusters = toCFClusters(clustering);
+		int n = microclusters.size();
+		if (n == 0) {
+			return new Clustering();
+		}
+		k = Math.min(k, n);
 		
 		/* k-means */
-		Random random = new Random(0);
-		Cluster[] centers = new Cluster[k];
-		int K = gtClustering.size();
+		double[][] points = new double[n][];
+		double[] weights = new double[n];
+		prepare(microclusters, points, weights);
 		
-		for (int i = 0; i < k; i++) {
-			if (i < K) {	// GT-aided
-				centers[i] = new SphereCluster(gtClustering.get(i).getCenter(), 0);
-			} else {		// Randomized
-				int rid = random.nextInt(n);
-				centers[i] = new SphereCluster(microclusters.get(rid).getCenter(), 0);
-			}
+		double[][] centers = new double[k][];
+		int K = Math.min(k, gtClustering.size());
+		for (int i = 0; i < K; i++) {	// GT-aided
+			centers[i] = gtClustering.get(i).getCenter();
 		}
+		WeightedKMeans.seed(points, weights, centers, K, new Random(0));
 		
-		return cleanUpKMeans(kMeans(k, centers, microclusters), microclusters);
+		return kMeans(centers, points, weights, microclusters);
 	}
 	
 	/**
-	 * k-means of (micro)clusters, with randomized initialization. 
+	 * k-means of (micro)clusters, with k-means++ initialization. 
 	 * 
 	 * @param k
 	 * @param data
@@ -254,6 +247,25 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	 */
 	public static Clustering kMeans_rand(int k, Clustering clustering) {
 		
+		ArrayList<CFCluster> microclusters = toCFClusters(clustering);
+		int n = microclusters.size();
+		if (n == 0) {
+			return new Clustering();
+		}
+		k = Math.min(k, n);
+		
+		/* k-means */
+		double[][] points = new double[n][];
+		double[] weights = new double[n];
+		prepare(microclusters, points, weights);
+		
+		double[][] centers = new double[k][];
+		WeightedKMeans.seed(points, weights, centers, 0, new Random(0));
+		
+		return kMeans(centers, points, weights, microclusters);
+	}
+	
+	private static ArrayList<CFCluster> toCFClusters(Clustering clustering) {
 		ArrayList<CFCluster> microclusters = new ArrayList<CFCluster>();
         for (int i = 0; i < clustering.size(); i++) {
             if (clustering.get(i) instanceof CFCluster) {
@@ -262,122 +274,48 @@ public class WithKmeans extends AbstractSubspaceClusterer {
                 System.out.println("Unsupported Cluster Type:" + clustering.get(i).getClass() + ". Cluster needs to extend moa.cluster.CFCluster");
             }
         }
-        
-        int n = microclusters.size();
-		assert (k <= n);
-		
-		/* k-means */
-		Random random = new Random(0);
-		Cluster[] centers = new Cluster[k];
-		
-		for (int i = 0; i < k; i++) {
-			int rid = random.nextInt(n);
-			centers[i] = new SphereCluster(microclusters.get(rid).getCenter(), 0);
-		}
-		
-		return cleanUpKMeans(kMeans(k, centers, microclusters), microclusters);
+        return microclusters;
 	}
 	
 	/**
-	 * (The Actual Algorithm) k-means of (micro)clusters, with specified initialization points.
-	 * 
-	 * @param k
-	 * @param centers - initial centers
-	 * @param data
-	 * @return (macro)clustering - SphereClusters
+	 * k-means helper: Centers and weights of the micro-clusters.
 	 */
-	protected static Clustering kMeans(int k, Cluster[] centers, List<? extends Cluster> data) {
-		assert (centers.length == k);
-		assert (k > 0);
-
-		int dimensions = centers[0].getCenter().length;
-
-		ArrayList<ArrayList<Cluster>> clustering = new ArrayList<ArrayList<Cluster>>();
-		for (int i = 0; i < k; i++) {
-			clustering.add(new ArrayList<Cluster>());
-		}
-
-		while (true) {
-			// Assign points to clusters
-			for (Cluster point : data) {
-				double minDistance = distance(point.getCenter(), centers[0].getCenter());
-				int closestCluster = 0;
-				for (int i = 1; i < k; i++) {
-					double distance = distance(point.getCenter(), centers[i].getCenter());
-					if (distance < minDistance) {
-						closestCluster = i;
-						minDistance = distance;
-					}
-				}
-
-				clustering.get(closestCluster).add(point);
-			}
-
-			// Calculate new centers and clear clustering lists
-			SphereCluster[] newCenters = new SphereCluster[centers.length];
-			for (int i = 0; i < k; i++) {
-				newCenters[i] = calculateCenter(clustering.get(i), dimensions);
-				clustering.get(i).clear();
-			}
-			
-			// Convergence check
-			boolean converged = true;
-			for (int i = 0; i < k; i++) {
-				if (!Arrays.equals(centers[i].getCenter(), newCenters[i].getCenter())) {
-					converged = false;
-					break;
-				}
-			}
-			
-			if (converged) {
-				break;
-			} else {
-				centers = newCenters;
-			}
+	private static void prepare(ArrayList<CFCluster> microclusters, double[][] points, double[] weights) {
+		for (int i = 0; i < points.length; i++) {
+			CFCluster mc = microclusters.get(i);
+			points[i] = mc.getCenter();
+			weights[i] = mc.getWeight();
 		}
-
-		return new Clustering(centers);
 	}
 	
 	/**
-	 * Rearrange the k-means result into a set of CFClusters, cleaning up the redundancies.
+	 * (The Actual Algorithm) weighted k-means of (micro)clusters from the given centers,
+	 * stops when converged. The micro-clusters of a macro-cluster are merged into a
+	 * CFCluster; macro-clusters without micro-clusters are dropped.
 	 * 
-	 * @param kMeansResult
-	 * @param microclusters
-	 * @return
+	 * @param centers - initial centers
+	 * @return (macro)clustering - CFClusters
 	 */
-	protected static Clustering cleanUpKMeans(Clustering kMeansResult, ArrayList<CFCluster> microclusters) {
+	protected static Clustering kMeans(double[][] centers, double[][] points, double[] weights, ArrayList<CFCluster> microclusters) {
+		int k = centers.length;
+		int[] assignment = new int[points.length];
+		WeightedKMeans.cluster(points, weights, centers, assignment, WeightedKMeans.DEFAULT_MAX_ITERATIONS);
+		
 		/* Convert k-means result to CFClusters */
-		int k = kMeansResult.size();
 		CFCluster[] converted = new CFCluster[k];
-
-		for (CFCluster mc : microclusters) {
-		    // Find closest kMeans cluster
-		    double minDistance = Double.MAX_VALUE;
-		    int closestCluster = 0;
-		    for (int i = 0; i < k; i++) {
-		    	double distance = distance(kMeansResult.get(i).getCenter(), mc.getCenter());
-				if (distance < minDistance) {
-				    closestCluster = i;
-				    minDistance = distance;
-				}
-		    }
-
-		    // Add to cluster
+		int count = 0;
+		for (int i = 0; i < points.length; i++) {
+			CFCluster mc = microclusters.get(i);
+			int closestCluster = assignment[i];
 		    if ( converted[closestCluster] == null ) {
 		    	converted[closestCluster] = (CFCluster)mc.copy();
+		    	count++;
 		    } else {
 		    	converted[closestCluster].add(mc);
 		    }
 		}
-
+		
 		// Clean up
-		int count = 0;
-		for (int i = 0; i < converted.length; i++) {
-		    if (converted[i] != null)
-			count++;
-		}
-
 		CFCluster[] cleaned = new CFCluster[count];
 		count = 0;
 		for (int i = 0; i < converted.length; i++) {
@@ -389,49 +327,49 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	}
 
 	
-
-	/**
-	 * k-means helper: Calculate a wrapping cluster of assigned points[microclusters].
-	 * 
-	 * @param assigned
-	 * @param dimensions
-	 * @return SphereCluster (with center and radius)
-	 */
-	private static SphereCluster calculateCenter(ArrayList<Cluster> assigned, int dimensions) {
-		double[] result = new double[dimensions];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = 0.0;
-		}
-
-		if (assigned.size() == 0) {
-			return new SphereCluster(result, 0.0);
-		}
-
-		for (Cluster point : assigned) {
-			double[] center = point.getCenter();
-			for (int i = 0; i < result.length; i++) {
-				result[i] += center[i];
+	/** Checkpoints **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	@Override
+	protected void writeCheckpoint(DataOutputStream out) throws IOException {
+		out.writeLong(timestamp);
+		out.writeBoolean(initialized);
+		if (initialized) {
+			out.writeInt(kernels.length);
+			for (ClustreamKernel kernel : kernels) {
+				kernel.writeCheckpoint(out);
+			}
+		} else {
+			out.writeInt(bufferCount);
+			for (int i = 0; i < bufferCount; i++) {
+				buffer[i].writeCheckpoint(out);
 			}
 		}
-
-		// Normalize
-		for (int i = 0; i < result.length; i++) {
-			result[i] /= assigned.size();
+	}
+	
+	@Override
+	protected void readCheckpoint(DataInputStream in) throws IOException {
+		timestamp = in.readLong();
+		initialized = in.readBoolean();
+		int count = in.readInt();
+		ClustreamKernel[] target = initialized ? kernels : buffer;
+		if (count > target.length) {
+			throw new IOException("WithKmeans: checkpoint has more kernels than maxNumKernels");
 		}
-
-		// Calculate radius: biggest wrapping distance from center
-		double radius = 0.0;
-		for (Cluster point : assigned) {
-			double dist = distance(result, point.getCenter());
-			if (dist > radius) {
-				radius = dist;
-			}
+		for (int i = 0; i < count; i++) {
+			target[i] = ClustreamKernel.readCheckpoint(in, t, m);
+		}
+		if (initialized) {
+			buffer = null;
+		} else {
+			bufferCount = count;
 		}
-		SphereCluster sc = new SphereCluster(result, radius);
-		sc.setWeight(assigned.size());
-		return sc;
 	}
-
+	
 	
 	/** Miscellaneous **/
 	
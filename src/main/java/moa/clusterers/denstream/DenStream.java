@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.MicroClusterBudget;
 import moa.core.Measurement;
 import moa.options.FloatOption;
 import moa.options.IntOption;
@@ -44,6 +45,8 @@ public class DenStream extends AbstractClusterer {
     public IntOption streamSpeedOption = new IntOption(
 			"streamSpeed", 'v',
 			"Number of data points processed in a time unit", 1);
+    
+    public IntOption maxMicroClustersOption = MicroClusterBudget.newMaxMicroClustersOption();
 
 
     private double weightThreshold = 0.01;
@@ -61,6 +64,7 @@ public class DenStream extends AbstractClusterer {
     private long timestamp = -1;
     Timestamp currentTimestamp = new Timestamp();
     long tp;
+    MicroClusterBudget<MicroCluster> budget;
     
 	private int streamSpeed;
 
@@ -91,6 +95,7 @@ public class DenStream extends AbstractClusterer {
         tp = Math.round(1 / lambda * Math.log((beta * mu) / (beta * mu - 1))) + 1;
 
         streamSpeed = streamSpeedOption.getValue();
+        budget = new MicroClusterBudget<MicroCluster>(maxMicroClustersOption.getValue(), lambda);
     }
 
     public void initialDBScan() {
@@ -155,11 +160,17 @@ public class DenStream extends AbstractClusterer {
                     if (x.getWeight() > beta * mu) {
                         o_micro_cluster.getClustering().remove(x);
                         p_micro_cluster.getClustering().add(x);
+                        budget.outlierRemoved(x);
+                    } else {
+                        budget.outlierChanged(x);
                     }
                 }
             }
             if (!merged) {
-                o_micro_cluster.getClustering().add(new MicroCluster(point.toDoubleArray(), point.toDoubleArray().length, timestamp, lambda, currentTimestamp));
+                MicroCluster x = new MicroCluster(point.toDoubleArray(), point.toDoubleArray().length, timestamp, lambda, currentTimestamp);
+                o_micro_cluster.getClustering().add(x);
+                budget.outlierChanged(x);
+                budget.enforce(p_micro_cluster.size(), o_micro_cluster.getClustering());
             }
 
             ////////////////////////////
@@ -185,8 +196,9 @@ public class DenStream extends AbstractClusterer {
                         removalList.add((MicroCluster) c);
                     }
                 }
-                for (Cluster c : removalList) {
+                for (MicroCluster c : removalList) {
                     o_micro_cluster.getClustering().remove(c);
+                    budget.outlierRemoved(c);
                 }
             }
 
@@ -266,7 +278,9 @@ public class DenStream extends AbstractClusterer {
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new Measurement[] {
+                budget.getMeasurement()
+        };
     }
 
     @Override
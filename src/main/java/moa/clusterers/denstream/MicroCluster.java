@@ -20,10 +20,16 @@
 
 package moa.clusterers.denstream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import moa.cluster.CFCluster;
+import moa.cluster.TimestampedCluster;
+import moa.clusterers.SubspaceClustererCheckpoint;
 import weka.core.Instance;
 
-public class MicroCluster extends CFCluster {
+public class MicroCluster extends CFCluster implements TimestampedCluster {
 
     private long lastEditT = -1;
     private long creationTimestamp = -1;
@@ -57,6 +63,10 @@ public class MicroCluster extends CFCluster {
         return lastEditT;
     }
 
+    public double getWeightAtLastEdit() {
+        return N;
+    }
+
     private double[] calcCF2(long dt) {
         double[] cf2 = new double[SS.length];
         for (int i = 0; i < SS.length; i++) {
@@ -147,6 +157,25 @@ public class MicroCluster extends CFCluster {
         return 0.0;
     }
 
+    /**
+     * Write CF vectors, timestamps and weight (see SubspaceClustererCheckpoint).
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        SubspaceClustererCheckpoint.writeCF(out, this);
+        out.writeLong(creationTimestamp);
+        out.writeLong(lastEditT);
+        out.writeDouble(super.getWeight());
+    }
+
+    public static MicroCluster readCheckpoint(DataInput in, double lambda, Timestamp currentTimestamp) throws IOException {
+        MicroCluster mc = new MicroCluster(new double[0], 0, -1, lambda, currentTimestamp);
+        SubspaceClustererCheckpoint.readCF(in, mc);
+        mc.creationTimestamp = in.readLong();
+        mc.lastEditT = in.readLong();
+        mc.setWeight(in.readDouble());
+        return mc;
+    }
+
     @Override
     public CFCluster getCF(){
         CFCluster cf = copy();
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.MicroClusterBudget;
 import moa.clusterers.macro.dbscan.DBScan;
 import moa.core.Measurement;
 import moa.options.FloatOption;
@@ -49,6 +50,8 @@ public class WithDBSCAN extends AbstractClusterer {
 	 
 	 public IntOption speedOption = new IntOption("processingSpeed", 's',
 				"Number of incoming points per time unit.", 100, 1, 1000);
+	 
+	 public IntOption maxMicroClustersOption = MicroClusterBudget.newMaxMicroClustersOption();
 
 	private double weightThreshold = 0.01;
 	double lambda;
@@ -65,6 +68,7 @@ public class WithDBSCAN extends AbstractClusterer {
 	private long timestamp = 0;
 	Timestamp currentTimestamp;
 	long tp;
+	MicroClusterBudget<MicroCluster> budget;
 	
 	/* #point variables */
 	protected int numInitPoints;
@@ -106,6 +110,7 @@ public class WithDBSCAN extends AbstractClusterer {
 		
 		numProcessedPerUnit = 0;
 		processingSpeed = speedOption.getValue();
+		budget = new MicroClusterBudget<MicroCluster>(maxMicroClustersOption.getValue(), lambda);
 	}
 
 	public void initialDBScan() {
@@ -173,14 +178,19 @@ public class WithDBSCAN extends AbstractClusterer {
 					if (x.getWeight() > beta * mu) {
 						o_micro_cluster.getClustering().remove(x);
 						p_micro_cluster.getClustering().add(x);
+						budget.outlierRemoved(x);
+					} else {
+						budget.outlierChanged(x);
 					}
 				}
 			}
 			if (!merged) {
-				o_micro_cluster.getClustering().add(
-						new MicroCluster(point.toDoubleArray(), point
-								.toDoubleArray().length, timestamp, lambda,
-								currentTimestamp));
+				MicroCluster x = new MicroCluster(point.toDoubleArray(), point
+						.toDoubleArray().length, timestamp, lambda,
+						currentTimestamp);
+				o_micro_cluster.getClustering().add(x);
+				budget.outlierChanged(x);
+				budget.enforce(p_micro_cluster.size(), o_micro_cluster.getClustering());
 			}
 
 			// //////////////////////////
@@ -207,8 +217,9 @@ public class WithDBSCAN extends AbstractClusterer {
 						removalList.add((MicroCluster) c);
 					}
 				}
-				for (Cluster c : removalList) {
+				for (MicroCluster c : removalList) {
 					o_micro_cluster.getClustering().remove(c);
+					budget.outlierRemoved(c);
 				}
 			}
 
@@ -292,7 +303,9 @@ public class WithDBSCAN extends AbstractClusterer {
 
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return new Measurement[] {
+				budget.getMeasurement()
+		};
 	}
 
 	@Override
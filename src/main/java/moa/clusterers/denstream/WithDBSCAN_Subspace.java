@@ -10,12 +10,17 @@
 
 package moa.clusterers.denstream;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.MicroClusterBudget;
+import moa.clusterers.SubspaceClustererCheckpoint;
 import moa.clusterers.macro.dbscan.DBScan;
 import moa.core.Measurement;
 import moa.options.FloatOption;
@@ -50,6 +55,8 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 	 
 	 public IntOption speedOption = new IntOption("processingSpeed", 's',
 				"Number of incoming points per time unit.", 100, 1, 1000);
+	 
+	 public IntOption maxMicroClustersOption = MicroClusterBudget.newMaxMicroClustersOption();
 
 	private double weightThreshold = 0.01;
 	double lambda;
@@ -66,6 +73,7 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 	private long timestamp = 0;
 	Timestamp currentTimestamp;
 	long tp;
+	MicroClusterBudget<MicroCluster> budget;
 	
 	/* #point variables */
 	protected int numInitPoints;
@@ -107,6 +115,7 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 		
 		numProcessedPerUnit = 0;
 		processingSpeed = speedOption.getValue();
+		budget = new MicroClusterBudget<MicroCluster>(maxMicroClustersOption.getValue(), lambda);
 	}
 
 	public void initialDBScan() {
@@ -174,14 +183,19 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 					if (x.getWeight() > beta * mu) {
 						o_micro_cluster.getClustering().remove(x);
 						p_micro_cluster.getClustering().add(x);
+						budget.outlierRemoved(x);
+					} else {
+						budget.outlierChanged(x);
 					}
 				}
 			}
 			if (!merged) {
-				o_micro_cluster.getClustering().add(
-						new MicroCluster(point.toDoubleArray(), point
-								.toDoubleArray().length, timestamp, lambda,
-								currentTimestamp));
+				MicroCluster x = new MicroCluster(point.toDoubleArray(), point
+						.toDoubleArray().length, timestamp, lambda,
+						currentTimestamp);
+				o_micro_cluster.getClustering().add(x);
+				budget.outlierChanged(x);
+				budget.enforce(p_micro_cluster.size(), o_micro_cluster.getClustering());
 			}
 
 			// //////////////////////////
@@ -208,8 +222,9 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 						removalList.add((MicroCluster) c);
 					}
 				}
-				for (Cluster c : removalList) {
+				for (MicroCluster c : removalList) {
 					o_micro_cluster.getClustering().remove(c);
+					budget.outlierRemoved(c);
 				}
 			}
 
@@ -291,9 +306,68 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 		return p_micro_cluster;
 	}
 
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+
+	@Override
+	protected void writeCheckpoint(DataOutputStream out) throws IOException {
+		out.writeLong(timestamp);
+		out.writeLong(currentTimestamp.getTimestamp());
+		out.writeInt(numProcessedPerUnit);
+		out.writeBoolean(initialized);
+		if (!initialized) {
+			out.writeInt(initBuffer.size());
+			for (DenPoint point : initBuffer) {
+				SubspaceClustererCheckpoint.writeInstance(out, point);
+				out.writeBoolean(point.covered);
+			}
+		}
+		writeMicroClusters(out, p_micro_cluster);
+		writeMicroClusters(out, o_micro_cluster);
+	}
+
+	private void writeMicroClusters(DataOutputStream out, Clustering microclusters) throws IOException {
+		out.writeInt(microclusters.size());
+		for (int c = 0; c < microclusters.size(); c++) {
+			((MicroCluster) microclusters.get(c)).writeCheckpoint(out);
+		}
+	}
+
+	@Override
+	protected void readCheckpoint(DataInputStream in) throws IOException {
+		timestamp = in.readLong();
+		currentTimestamp.setTimestamp(in.readLong());
+		numProcessedPerUnit = in.readInt();
+		initialized = in.readBoolean();
+		if (!initialized) {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				DenPoint point = new DenPoint(SubspaceClustererCheckpoint.readInstance(in), timestamp);
+				point.covered = in.readBoolean();
+				initBuffer.add(point);
+			}
+		}
+		p_micro_cluster = readMicroClusters(in);
+		o_micro_cluster = readMicroClusters(in);
+		budget.rebuild(o_micro_cluster.getClustering(), MicroCluster.class);
+	}
+
+	private Clustering readMicroClusters(DataInputStream in) throws IOException {
+		Clustering microclusters = new Clustering();
+		int size = in.readInt();
+		for (int c = 0; c < size; c++) {
+			microclusters.add(MicroCluster.readCheckpoint(in, lambda, currentTimestamp));
+		}
+		return microclusters;
+	}
+
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return new Measurement[] {
+				budget.getMeasurement()
+		};
 	}
 
 	@Override
@@ -10,13 +10,20 @@
 
 package moa.clusterers.hddstream;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.MicroClusterBudget;
+import moa.clusterers.SubspaceClustererCheckpoint;
 import moa.core.Measurement;
+import moa.core.ObjectSizeEstimate;
+import moa.core.TimingHistogram;
 import moa.options.FloatOption;
 import moa.options.IntOption;
 import weka.core.Instance;
@@ -59,6 +66,8 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	
 	public IntOption speedOption = new IntOption("processingSpeed", 's',
 			"Number of incoming points per time unit.", 100);
+	
+	public IntOption maxMicroClustersOption = MicroClusterBudget.newMaxMicroClustersOption();
 
 	
 	/* Parameters for online processing */
@@ -97,6 +106,20 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	protected int numNewMCs, numDeletedMCs;
 	protected int numPromotedToPMC, numDegradedPMCs;
 	
+	/* Totals of the counters above over all finished time units */
+	protected long totalIncludedInPMC, totalIncludedInOMC;
+	protected long totalNewMCs, totalDeletedMCs;
+	protected long totalPromotedToPMC, totalDegradedPMCs;
+	
+	/* Time spent per phase */
+	protected TimingHistogram mergeTime, decayTime, pruneTime, offlineTime;
+	
+	/* Number of dimensions to choose the first candidate of nearestCluster() */
+	private static final int SEED_DIMENSIONS = 8;
+	
+	/* Microcluster budget (0 = none) */
+	protected MicroClusterBudget<ProjectedMicroCluster> budget;
+	
 	
 	
 	/** Online processing **/
@@ -133,6 +156,20 @@ public class HDDStream extends AbstractSubspaceClusterer {
 		numPromotedToPMC = 0;
 		numDegradedPMCs = 0;
 		
+		totalIncludedInPMC = 0;
+		totalIncludedInOMC = 0;
+		totalNewMCs = 0;
+		totalDeletedMCs = 0;
+		totalPromotedToPMC = 0;
+		totalDegradedPMCs = 0;
+		
+		mergeTime = new TimingHistogram();
+		decayTime = new TimingHistogram();
+		pruneTime = new TimingHistogram();
+		offlineTime = new TimingHistogram();
+		
+		budget = new MicroClusterBudget<ProjectedMicroCluster>(maxMicroClustersOption.getValue(), lambda);
+		
 		if (debug) {
 			System.out.println("----------------------------------------\n"
 							 + "HDDStream: initialization phase...\n"
@@ -165,6 +202,15 @@ public class HDDStream extends AbstractSubspaceClusterer {
 				System.out.println("-----------------------------------------\n"
 								 + ">> Time unit: " + currentTimestamp);
 			}
+			
+			totalIncludedInPMC += numIncludedInPMC;
+			totalIncludedInOMC += numIncludedInOMC;
+			totalNewMCs += numNewMCs;
+			totalDeletedMCs += numDeletedMCs;
+			totalPromotedToPMC += numPromotedToPMC;
+			totalDegradedPMCs += numDegradedPMCs;
+			publishMetrics();
+			
 			numIncludedInPMC = 0;
 			numIncludedInOMC = 0;
 			numDeletedMCs = 0;
@@ -187,6 +233,7 @@ public class HDDStream extends AbstractSubspaceClusterer {
 			// ////////// //
 			// Merging(p) //
 			// ////////// //
+			long phaseStart = System.nanoTime();
 			boolean merged = false;
 			
 			// Merge into the nearest potential microcluster
@@ -213,18 +260,28 @@ public class HDDStream extends AbstractSubspaceClusterer {
 						outlier_microclusters.getClustering().remove(x);
 						potential_microclusters.add(x);
 						numPromotedToPMC++;
+						budget.outlierRemoved(x);
+					} else {
+						budget.outlierChanged(x);
 					}
 				}
 			}
 			
 			// Create new outlier microcluster
 			if (!merged) {
-				outlier_microclusters.add(new ProjectedMicroCluster(point.toDoubleArray(), point.toDoubleArray().length,
+				ProjectedMicroCluster x = new ProjectedMicroCluster(point.toDoubleArray(), point.toDoubleArray().length,
 									 	  currentTimestamp, lambda, currentTimestamp, mu,
-									 	  epsilon, delta, kappa, pi));
+									 	  epsilon, delta, kappa, pi);
+				outlier_microclusters.add(x);
 				numNewMCs++;
+				budget.outlierChanged(x);
+				budget.enforce(potential_microclusters.size(), outlier_microclusters.getClustering());
 			}
 			
+			long phaseEnd = System.nanoTime();
+			mergeTime.add(phaseEnd - phaseStart);
+			phaseStart = phaseEnd;
+			
 			// ////////////// //
 			// No-hit updates //
 			// ////////////// //
@@ -238,6 +295,10 @@ public class HDDStream extends AbstractSubspaceClusterer {
 			}
 			
 			
+			phaseEnd = System.nanoTime();
+			decayTime.add(phaseEnd - phaseStart);
+			phaseStart = phaseEnd;
+			
 			// //////////////////////// //
 			// Periodic cluster removal //
 			// //////////////////////// //
@@ -253,8 +314,9 @@ public class HDDStream extends AbstractSubspaceClusterer {
 					}
 				}
 				
-				for (Cluster c : outlierRemovalList) {
+				for (ProjectedMicroCluster c : outlierRemovalList) {
 					outlier_microclusters.getClustering().remove(c);
+					budget.outlierRemoved(c);
 				}
 				
 				numDeletedMCs += outlierRemovalList.size();
@@ -266,14 +328,16 @@ public class HDDStream extends AbstractSubspaceClusterer {
 					}
 				}
 				
-				for (Cluster c : potentialRemovalList) {
+				for (ProjectedMicroCluster c : potentialRemovalList) {
 					potential_microclusters.getClustering().remove(c);
 					outlier_microclusters.add(c);
+					budget.outlierChanged(c);
 				}
 				
 				numDegradedPMCs += potentialRemovalList.size();
 				
 				removalProcessed = true;
+				pruneTime.add(System.nanoTime() - phaseStart);
 			}
 		}
 	}
@@ -299,35 +363,60 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	 */
 	protected ProjectedMicroCluster nearestCluster(DenPoint p, Clustering cl) {
 		ProjectedMicroCluster min = null;
-		double minProjectedDist = Double.MAX_VALUE;
+		int minIndex = -1;
+		double minProjectedDist = Double.POSITIVE_INFINITY;
+		double[] point = p.toDoubleArray();
 		
+		// Start with the cluster closest in the first dimensions, so that the distances
+		// below stop early against a small bound
+		int seed = -1;
+		double seedDist = Double.POSITIVE_INFINITY;
 		for (int c = 0; c < cl.size(); c++) {
+			double partialDist = ((ProjectedMicroCluster) cl.get(c)).partialSquaredDistanceTo(point, SEED_DIMENSIONS);
+			if (partialDist < seedDist) {
+				seedDist = partialDist;
+				seed = c;
+			}
+		}
+		if (seed >= 0 && canInsert((ProjectedMicroCluster) cl.get(seed), p)) {
+			min = (ProjectedMicroCluster) cl.get(seed);
+			minIndex = seed;
+			minProjectedDist = min.projectedDistanceTo(point, Double.POSITIVE_INFINITY);
+		}
+		
+		for (int c = 0; c < cl.size(); c++) {
+			if (c == minIndex) {
+				continue;
+			}
 			ProjectedMicroCluster x = (ProjectedMicroCluster) cl.get(c);
-			ProjectedMicroCluster xCopy = x.copy();
 			
-			// Tentatively insert and check the conditions
-			xCopy.insert(p, currentTimestamp);
-			double radiusAfterInsertion = xCopy.getProjectedRadius();
-			if (radiusAfterInsertion <= epsilon && xCopy.getNumRelDim() <= pi) {
-				if (min == null) {
-					//ADDED BY MTH: On the first attempt already set minProjectedDist.
-					//Otherwise first cluster will NEVER be chosen if any other clusters exist.
-					minProjectedDist = x.projectedDistanceTo(p);
-					//END ADDED BY MTH
-					min = x;
-					continue;
-				}
-				
-				double projectedDist = x.projectedDistanceTo(p);
-				if (projectedDist < minProjectedDist) {
-					minProjectedDist = projectedDist;
-					min = x;
-				}
+			// Only a closer cluster (or an equally close one with a lower index) can
+			// replace the current one: check the distance first, then the costly conditions
+			double projectedDist = x.projectedDistanceTo(point, minProjectedDist);
+			if (min != null && !(projectedDist < minProjectedDist
+								 || (projectedDist == minProjectedDist && c < minIndex))) {
+				continue;
+			}
+			
+			if (canInsert(x, p)) {
+				minProjectedDist = projectedDist;
+				minIndex = c;
+				min = x;
 			}
 		}
 		
 		return min;
 	}
+	
+	/**
+	 * Tentatively insert p into a copy of x and check the conditions.
+	 */
+	boolean canInsert(ProjectedMicroCluster x, DenPoint p) {
+		ProjectedMicroCluster xCopy = x.copy();
+		xCopy.insert(p, currentTimestamp);
+		double radiusAfterInsertion = xCopy.getProjectedRadius();
+		return radiusAfterInsertion <= epsilon && xCopy.getNumRelDim() <= pi;
+	}
 
 	/*protected double distance(double[] pointA, double[] pointB) {
 		double distance = 0.0;
@@ -342,10 +431,13 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	/** Offline processing (results) **/
 	
 	public SubspaceClustering getClusteringResult() {
+		long start = System.nanoTime();
 		PreDeCon predecon = new PreDeCon(potential_microclusters,
 										 offlineOption.getValue() * epsilon, mu, 
 										 pi, delta, kappa);
-		return new SubspaceClustering(predecon.getClustering(debug));
+		SubspaceClustering result = new SubspaceClustering(predecon.getClustering(debug));
+		offlineTime.add(System.nanoTime() - start);
+		return result;
 	}
 
 	@Override
@@ -370,11 +462,137 @@ public class HDDStream extends AbstractSubspaceClusterer {
 
 	
 	
+	/** Checkpoints **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	@Override
+	protected void writeCheckpoint(DataOutputStream out) throws IOException {
+		out.writeLong(currentTimestamp);
+		out.writeBoolean(removalProcessed);
+		out.writeInt(numProcessedPerUnit);
+		out.writeInt(numIncludedInPMC);
+		out.writeInt(numIncludedInOMC);
+		out.writeInt(numNewMCs);
+		out.writeInt(numDeletedMCs);
+		out.writeInt(numPromotedToPMC);
+		out.writeInt(numDegradedPMCs);
+		
+		out.writeBoolean(initialized);
+		if (!initialized) {
+			out.writeInt(initBuffer.size());
+			for (DenPoint p : initBuffer) {
+				SubspaceClustererCheckpoint.writeInstance(out, p);
+				out.writeLong(p.getCreationTimestamp());
+			}
+		}
+		writeMicroClusters(out, potential_microclusters);
+		writeMicroClusters(out, outlier_microclusters);
+	}
+	
+	private void writeMicroClusters(DataOutputStream out, Clustering microclusters) throws IOException {
+		out.writeInt(microclusters.size());
+		for (int c = 0; c < microclusters.size(); c++) {
+			((ProjectedMicroCluster) microclusters.get(c)).writeCheckpoint(out);
+		}
+	}
+	
+	@Override
+	protected void readCheckpoint(DataInputStream in) throws IOException {
+		currentTimestamp = in.readLong();
+		removalProcessed = in.readBoolean();
+		numProcessedPerUnit = in.readInt();
+		numIncludedInPMC = in.readInt();
+		numIncludedInOMC = in.readInt();
+		numNewMCs = in.readInt();
+		numDeletedMCs = in.readInt();
+		numPromotedToPMC = in.readInt();
+		numDegradedPMCs = in.readInt();
+		
+		initialized = in.readBoolean();
+		if (!initialized) {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				Instance inst = SubspaceClustererCheckpoint.readInstance(in);
+				initBuffer.add(new DenPoint(inst, in.readLong()));
+			}
+		}
+		potential_microclusters = readMicroClusters(in);
+		outlier_microclusters = readMicroClusters(in);
+		budget.rebuild(outlier_microclusters.getClustering(), ProjectedMicroCluster.class);
+	}
+	
+	private Clustering readMicroClusters(DataInputStream in) throws IOException {
+		Clustering microclusters = new Clustering();
+		int size = in.readInt();
+		for (int c = 0; c < size; c++) {
+			ProjectedMicroCluster mc = new ProjectedMicroCluster(new double[0], 0, 0, lambda, 0, mu,
+																  epsilon, delta, kappa, pi);
+			mc.readCheckpoint(in);
+			microclusters.add(mc);
+		}
+		return microclusters;
+	}
+	
+	
 	/** Auxiliaries **/
 	
+	/**
+	 * Micro-cluster counts, counters of the online phase (totals including the
+	 * current time unit) and timings of the phases.
+	 */
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		ArrayList<Measurement> measurements = new ArrayList<Measurement>();
+		measurements.add(new Measurement("potential microclusters", potential_microclusters.size()));
+		measurements.add(new Measurement("outlier microclusters", outlier_microclusters.size()));
+		measurements.add(new Measurement("points included in potential microclusters", totalIncludedInPMC + numIncludedInPMC));
+		measurements.add(new Measurement("points included in outlier microclusters", totalIncludedInOMC + numIncludedInOMC));
+		measurements.add(new Measurement("created microclusters", totalNewMCs + numNewMCs));
+		measurements.add(new Measurement("deleted microclusters", totalDeletedMCs + numDeletedMCs));
+		measurements.add(new Measurement("microclusters promoted to potential", totalPromotedToPMC + numPromotedToPMC));
+		measurements.add(new Measurement("microclusters degraded to outlier", totalDegradedPMCs + numDegradedPMCs));
+		measurements.add(budget.getMeasurement());
+		addAll(measurements, mergeTime.getMeasurements("merge time"));
+		addAll(measurements, decayTime.getMeasurements("decay time"));
+		addAll(measurements, pruneTime.getMeasurements("prune time"));
+		addAll(measurements, offlineTime.getMeasurements("offline clustering time"));
+		return measurements.toArray(new Measurement[measurements.size()]);
+	}
+	
+	/**
+	 * Micro-clusters, their lists and the initialization buffer, see ObjectSizeEstimate.
+	 */
+	@Override
+	public long estimateByteSize() {
+		long size = estimateByteSize(potential_microclusters) + estimateByteSize(outlier_microclusters);
+		if (initBuffer != null) {
+			size += ObjectSizeEstimate.arrayList(initBuffer.size());
+			for (DenPoint p : initBuffer) {
+				size += ObjectSizeEstimate.instance(p, 8 + 1, 0);	// Timestamp, covered
+			}
+		}
+		return size;
+	}
+	
+	private static long estimateByteSize(Clustering microclusters) {
+		if (microclusters == null) {
+			return 0;
+		}
+		long size = ObjectSizeEstimate.object(0, 1) + ObjectSizeEstimate.arrayList(microclusters.size());
+		for (Cluster mc : microclusters.getClustering()) {
+			size += ((MicroCluster) mc).estimateByteSize();
+		}
+		return size;
+	}
+	
+	private static void addAll(ArrayList<Measurement> list, Measurement[] measurements) {
+		for (Measurement m : measurements) {
+			list.add(m);
+		}
 	}
 
 	@Override
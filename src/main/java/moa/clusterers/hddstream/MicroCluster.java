@@ -12,10 +12,17 @@
 
 package moa.clusterers.hddstream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import moa.cluster.CFCluster;
+import moa.cluster.TimestampedCluster;
+import moa.clusterers.SubspaceClustererCheckpoint;
+import moa.core.ObjectSizeEstimate;
 import weka.core.Instance;
 
-public class MicroCluster extends CFCluster {
+public class MicroCluster extends CFCluster implements TimestampedCluster {
 
 	private static final long serialVersionUID = 1L;
 	
@@ -27,6 +34,9 @@ public class MicroCluster extends CFCluster {
     protected double lambda;
     protected double weight;
     protected double mu;
+    
+    private transient double[] center;		// LS / weight, see getCenterRef()
+    private transient boolean centerValid;
 
     public MicroCluster(double[] center, int dimensions, long creationTimestamp, double lambda, long currentTimestamp, double mu) {
         super(center, dimensions);		// Setting CF1 and CF2
@@ -51,6 +61,7 @@ public class MicroCluster extends CFCluster {
     		double decayingFactor = Math.pow(2, -lambda * dt);
     	
     		weight *= decayingFactor;
+    		statisticsChanged();
     		for (int j = 0; j < LS.length; j++) {
         		LS[j] *= decayingFactor;
         		SS[j] *= decayingFactor;
@@ -72,6 +83,7 @@ public class MicroCluster extends CFCluster {
         
     	/* Update for a new instance */
     	weight++;
+    	statisticsChanged();
     	
         for (int j = 0; j < instance.numValues(); j++) {
             LS[j] += instance.value(j);
@@ -90,6 +102,10 @@ public class MicroCluster extends CFCluster {
         return lastEditTimestamp;
     }
     
+    public double getWeightAtLastEdit() {
+        return weight;		// Decayed only together with lastEditTimestamp
+    }
+    
     
     
     /** Weight **/
@@ -101,19 +117,58 @@ public class MicroCluster extends CFCluster {
     @Override
     public void setWeight(double newWeight) {
     	weight = newWeight;
+    	statisticsChanged();
     }
     
     
     
     /** Later calculations **/
+    
+    /**
+     * LS, SS or the weight changed: drop values cached from them.
+     */
+    protected void statisticsChanged() {
+    	centerValid = false;
+    }
         
+    /**
+     * @return a new array, computed without the cache (safe while training runs)
+     */
     public double[] getCenter() {
-    	double[] center = new double[LS.length];
-        for (int j = 0; j < LS.length; j++) {
-            center[j] = LS[j] / this.weight;
-        }
-        
-        return center;
+    	double[] res = new double[LS.length];
+    	for (int j = 0; j < LS.length; j++) {
+    		res[j] = LS[j] / this.weight;
+    	}
+    	return res;
+    }
+    
+    /**
+     * Cached center, computed again after an update. Read only; the array is reused.
+     * Only for the thread that trains the clusterer, as it writes the cache.
+     */
+    public double[] getCenterRef() {
+    	if (!centerValid) {
+    		if (center == null) {
+    			center = new double[LS.length];
+    		}
+    		for (int j = 0; j < LS.length; j++) {
+    			center[j] = LS[j] / this.weight;
+    		}
+    		centerValid = true;
+    	}
+    	return center;
+    }
+    
+    /**
+     * Euclidean distance of the center to a point, without building the center.
+     */
+    public double distanceToPoint(double[] point) {
+    	double distance = 0.0;
+    	for (int j = 0; j < LS.length; j++) {
+    		double d = point[j] - LS[j] / this.weight;
+    		distance += d * d;
+    	}
+    	return Math.sqrt(distance);
     }
 
     public double getRadius() {
@@ -155,8 +210,38 @@ public class MicroCluster extends CFCluster {
     }
 
     
+    /** Checkpoint (see SubspaceClustererCheckpoint) **/
+    
+    public void writeCheckpoint(DataOutput out) throws IOException {
+    	SubspaceClustererCheckpoint.writeCF(out, this);
+    	out.writeLong(creationTimestamp);
+    	out.writeLong(lastEditTimestamp);
+    	out.writeDouble(weight);
+    }
+    
+    /**
+     * Overwrite the statistics with those of writeCheckpoint().
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+    	SubspaceClustererCheckpoint.readCF(in, this);
+    	creationTimestamp = in.readLong();
+    	lastEditTimestamp = in.readLong();
+    	weight = in.readDouble();
+    	statisticsChanged();
+    }
+    
+    
     /** Auxiliaries **/
     
+    /**
+     * Heap size (see ObjectSizeEstimate) of the fields, LS, SS and the cached center.
+     */
+    public long estimateByteSize() {
+    	// 2 booleans, 2 longs, 3 doubles; center
+    	return ObjectSizeEstimate.cfCluster(this, 2 + 2 * 8 + 3 * 8, 1)
+    			+ ObjectSizeEstimate.doubleArray(center);
+    }
+    
     public boolean isCore() {
     	return (weight >= mu);
     }
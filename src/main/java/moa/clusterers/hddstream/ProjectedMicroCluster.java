@@ -12,6 +12,10 @@
 
 package moa.clusterers.hddstream;
 
+import java.io.DataInput;
+import java.io.IOException;
+
+import moa.core.ObjectSizeEstimate;
 import weka.core.Instance;
 
 public class ProjectedMicroCluster extends MicroCluster {
@@ -30,6 +34,9 @@ public class ProjectedMicroCluster extends MicroCluster {
     
     protected double epsilon;
     protected double beta;
+    
+    private transient double[] prefWeightInverse;	// 1 / dimPrefVector, see computeDimPrefVector()
+    private transient boolean prefValid;
 
     public ProjectedMicroCluster(double[] center, int dimensions, long creationTimestamp, double lambda, long currentTimestamp, double coreThreshold,
     							 double epsilon, double delta, double kappa, int pi) {
@@ -52,23 +59,37 @@ public class ProjectedMicroCluster extends MicroCluster {
        
     /** Projected properties **/
     
+    /**
+     * Variance and preference weight per dimension, computed again only after an update.
+     * A slightly negative variance (rounding) counts as zero.
+     */
     private void computeDimPrefVector() {
+    	if (prefValid) {
+    		return;
+    	}
     	dimVariance = new double[numDim];
     	dimPrefVector = new double[numDim];
+    	prefWeightInverse = new double[numDim];
     	numRelDim = 0;
     	
     	for (int j = 0; j < numDim; j++) {
     		double temp = SS[j] / weight - Math.pow((LS[j] / weight), 2);
-    		if (temp >= 0) {
-    			dimVariance[j] = Math.sqrt(temp);
-    			if (dimVariance[j] <= delta) {
-    				dimPrefVector[j] = kappa;
-    				numRelDim++;
-    			} else {
-    				dimPrefVector[j] = 1;
-    			}
+    		dimVariance[j] = (temp > 0) ? Math.sqrt(temp) : 0;
+    		if (dimVariance[j] <= delta) {
+    			dimPrefVector[j] = kappa;
+    			numRelDim++;
+    		} else {
+    			dimPrefVector[j] = 1;
     		}
+    		prefWeightInverse[j] = 1 / dimPrefVector[j];
     	}
+    	prefValid = true;
+    }
+    
+    @Override
+    protected void statisticsChanged() {
+    	super.statisticsChanged();
+    	prefValid = false;
     }
     
     public double getProjectedRadius() {
@@ -97,24 +118,59 @@ public class ProjectedMicroCluster extends MicroCluster {
     }
     
     public double projectedDistanceTo(Instance inst) {
-    	computeDimPrefVector();
-    	
-    	double[] center = getCenter();
     	double[] p = inst.toDoubleArray();
     	
-    	if (center.length != p.length) {
+    	if (numDim != p.length) {
     		System.out.println("hddstream.ProjectedMicroCluster.projectedDistanceTo(inst):" 
     						+ "given inst has different #dimensions");
     	}
     	
+    	return projectedDistanceTo(p, Double.POSITIVE_INFINITY);
+    }
+    
+    /**
+     * Projected Euclidean distance sqrt(sum_j (p_j - c_j)^2 / w_j) of the center c
+     * to p, with the preference weights w_j. Stops as soon as the partial sum shows
+     * that the distance exceeds 'bound'.
+     * 
+     * @return the distance, or a value not smaller than 'bound' if it exceeds 'bound'
+     */
+    public double projectedDistanceTo(double[] p, double bound) {
+    	computeDimPrefVector();
+    	
+    	double[] center = getCenterRef();
+    	double limit = bound * bound;
+    	
     	double sum = 0;
     	for (int j = 0; j < center.length; j++) {
-    		sum += Math.pow(2, p[j] - center[j]) / dimPrefVector[j];
+    		double d = p[j] - center[j];
+    		sum += d * d * prefWeightInverse[j];
+    		if (sum > limit) {
+    			break;
+    		}
     	}
     	
     	return Math.sqrt(sum);
     }
     
+    /**
+     * Squared projected distance over the first 'numDims' dimensions only; a lower
+     * bound of the squared projected distance.
+     */
+    public double partialSquaredDistanceTo(double[] p, int numDims) {
+    	computeDimPrefVector();
+    	
+    	double[] center = getCenterRef();
+    	int n = Math.min(numDims, center.length);
+    	
+    	double sum = 0;
+    	for (int j = 0; j < n; j++) {
+    		double d = p[j] - center[j];
+    		sum += d * d * prefWeightInverse[j];
+    	}
+    	return sum;
+    }
+    
     
     /** Microcluster types **/
 
@@ -164,8 +220,25 @@ public class ProjectedMicroCluster extends MicroCluster {
     }
     
     
+    /** Checkpoint **/
+    
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+    	super.readCheckpoint(in);
+    	numDim = LS.length;
+    }
+    
+    
     /** Auxiliaries **/
     
+    @Override
+    public long estimateByteSize() {
+    	// boolean, 4 doubles, 3 ints; dimVariance, dimPrefVector
+    	return super.estimateByteSize() + 1 + 4 * 8 + 3 * 4 + 2 * ObjectSizeEstimate.REFERENCE
+    			+ ObjectSizeEstimate.doubleArray(dimVariance)
+    			+ ObjectSizeEstimate.doubleArray(dimPrefVector);
+    }
+    
     @Override
     public ProjectedMicroCluster copy() {
     	computeDimPrefVector();
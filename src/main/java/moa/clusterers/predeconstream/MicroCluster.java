@@ -12,14 +12,21 @@
 
 package moa.clusterers.predeconstream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import moa.cluster.CFCluster;
+import moa.cluster.TimestampedCluster;
+import moa.clusterers.SubspaceClustererCheckpoint;
+import moa.core.ObjectSizeEstimate;
 import weka.core.Instance;
 
-public class MicroCluster extends CFCluster {
+public class MicroCluster extends CFCluster implements TimestampedCluster {
 
 	private static final long serialVersionUID = 1L;
 	
@@ -57,6 +64,9 @@ public class MicroCluster extends CFCluster {
 	private double[] dimVariance;
 	protected double[] subspacePrefVector;
 	
+	private transient double[] center;		// LS / weight, see getCenterRef()
+	private transient boolean centerValid;
+	
 	/** Neighborhoods **/
 	protected List<MicroCluster> neighborhood;
 	protected List<MicroCluster> weightedNeighborhood;
@@ -108,6 +118,7 @@ public class MicroCluster extends CFCluster {
     		double decayingFactor = Math.pow(2, -lambda * dt);
     		
     		weight *= decayingFactor;
+    		centerValid = false;
     		for (int j = 0; j < LS.length; j++) {
         		LS[j] *= decayingFactor;
         		SS[j] *= decayingFactor;
@@ -129,6 +140,7 @@ public class MicroCluster extends CFCluster {
         
     	/* Update for a new instance */
     	weight++;
+    	centerValid = false;
     	
         for (int j = 0; j < instance.numValues(); j++) {
             LS[j] += instance.value(j);
@@ -139,13 +151,44 @@ public class MicroCluster extends CFCluster {
     
     /** Later calculations (based on LS, SS) **/
     
+    /**
+     * @return a new array, computed without the cache (safe while training runs)
+     */
     public double[] getCenter() {
-    	double[] center = new double[LS.length];
-        for (int j = 0; j < LS.length; j++) {
-            center[j] = LS[j] / weight;
-        }
-        
-        return center;
+    	double[] res = new double[LS.length];
+    	for (int j = 0; j < LS.length; j++) {
+    		res[j] = LS[j] / weight;
+    	}
+    	return res;
+    }
+    
+    /**
+     * Cached center, computed again after an update. Read only; the array is reused.
+     * Only for the thread that trains the clusterer, as it writes the cache.
+     */
+    public double[] getCenterRef() {
+    	if (!centerValid) {
+    		if (center == null) {
+    			center = new double[LS.length];
+    		}
+    		for (int j = 0; j < LS.length; j++) {
+    			center[j] = LS[j] / weight;
+    		}
+    		centerValid = true;
+    	}
+    	return center;
+    }
+    
+    /**
+     * Euclidean distance of the center to a point, without building the center.
+     */
+    public double distanceToPoint(double[] point) {
+    	double distance = 0.0;
+    	for (int j = 0; j < LS.length; j++) {
+    		double d = point[j] - LS[j] / weight;
+    		distance += d * d;
+    	}
+    	return Math.sqrt(distance);
     }
 
     public double getRadius() {
@@ -226,7 +269,7 @@ public class MicroCluster extends CFCluster {
 	private double[] dimVarianceInsideNeighborhood(List<MicroCluster> neighbors) {
 		double dist;
 
-		double[] center = getCenter();
+		double[] center = getCenterRef();
 		double[] variances = new double[numDim];
 		
 		// For every dimension...
@@ -235,7 +278,7 @@ public class MicroCluster extends CFCluster {
 			double diff = 0;
 			for (int k = 0; k < neighbors.size(); k++) {
 				MicroCluster neighbor = neighbors.get(k);
-				diff = center[j] - neighbor.getCenter()[j];
+				diff = center[j] - neighbor.getCenterRef()[j];
 				dist += Math.pow(diff, 2);
 			}
 			variances[j] = dist / neighbors.size();
@@ -316,8 +359,8 @@ public class MicroCluster extends CFCluster {
 	
 	protected double asymmetricDistance(MicroCluster first, MicroCluster second) {
 		double distance = 0d;
-		double[] center1 = first.getCenter();
-		double[] center2 = second.getCenter();
+		double[] center1 = first.getCenterRef();
+		double[] center2 = second.getCenterRef();
 
 		for (int i = 0; i < first.numDim; i++) {
 			double diff = center1[i] - center2[i];
@@ -328,7 +371,7 @@ public class MicroCluster extends CFCluster {
 	}
 	
 	private double distance(MicroCluster o) {
-		return distance(this.getCenter(), o.getCenter());
+		return distance(this.getCenterRef(), o.getCenterRef());
 	}
 
 	private double distance(double[] center, double[] center2) {
@@ -414,6 +457,10 @@ public class MicroCluster extends CFCluster {
         return lastEditTimestamp;
     }
     
+    public double getWeightAtLastEdit() {
+        return weight;		// Decayed only together with lastEditTimestamp
+    }
+    
     public double getWeight() {
         return weight;
     }
@@ -421,6 +468,7 @@ public class MicroCluster extends CFCluster {
     @Override
     public void setWeight(double newWeight) {
     	weight = newWeight;
+    	centerValid = false;
     }
     
     public int getNumRelDim() {
@@ -439,8 +487,84 @@ public class MicroCluster extends CFCluster {
     
     
     
+	/* Checkpoint (see SubspaceClustererCheckpoint) */
+    
+    /**
+     * Write statistics, status and subspace preference; the neighborhoods are
+     * written separately by writeNeighborhoods().
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+    	SubspaceClustererCheckpoint.writeCF(out, this);
+    	out.writeLong(creationTimestamp);
+    	out.writeLong(lastEditTimestamp);
+    	out.writeDouble(weight);
+    	out.writeInt(status);
+    	out.writeInt(numRelDim);
+    	SubspaceClustererCheckpoint.writeDoubles(out, dimVariance);
+    	SubspaceClustererCheckpoint.writeDoubles(out, subspacePrefVector);
+    	out.writeDouble(weightSumOfWeightedNeighborhood);
+    }
+    
+    public void readCheckpoint(DataInput in) throws IOException {
+    	SubspaceClustererCheckpoint.readCF(in, this);
+    	creationTimestamp = in.readLong();
+    	lastEditTimestamp = in.readLong();
+    	weight = in.readDouble();
+    	status = in.readInt();
+    	numRelDim = in.readInt();
+    	dimVariance = SubspaceClustererCheckpoint.readDoubles(in);
+    	subspacePrefVector = SubspaceClustererCheckpoint.readDoubles(in);
+    	weightSumOfWeightedNeighborhood = in.readDouble();
+    	numDim = LS.length;
+    	centerValid = false;
+    }
+    
+    /**
+     * Write the neighborhoods as positions in the list of all microclusters.
+     */
+    public void writeNeighborhoods(DataOutput out, IdentityHashMap<MicroCluster, Integer> ids) throws IOException {
+    	writeReferences(out, neighborhood, ids);
+    	writeReferences(out, weightedNeighborhood, ids);
+    }
+    
+    public void readNeighborhoods(DataInput in, List<MicroCluster> all) throws IOException {
+    	neighborhood = readReferences(in, all);
+    	weightedNeighborhood = readReferences(in, all);
+    }
+    
+    static void writeReferences(DataOutput out, List<MicroCluster> mcs, IdentityHashMap<MicroCluster, Integer> ids) throws IOException {
+    	out.writeInt(mcs.size());
+    	for (MicroCluster mc : mcs) {
+    		out.writeInt(ids.get(mc));
+    	}
+    }
+    
+    static List<MicroCluster> readReferences(DataInput in, List<MicroCluster> all) throws IOException {
+    	int size = in.readInt();
+    	List<MicroCluster> mcs = new ArrayList<MicroCluster>(size);
+    	for (int i = 0; i < size; i++) {
+    		mcs.add(all.get(in.readInt()));
+    	}
+    	return mcs;
+    }
+    
+    
 	/* Auxiliaries */
     
+    /**
+     * Heap size (see ObjectSizeEstimate) of the fields, LS, SS, the subspace arrays
+     * and the neighborhood lists; the neighbors are counted on their own.
+     */
+    public long estimateByteSize() {
+    	// 2 booleans, 2 longs, 9 doubles, 9 ints; 5 references
+    	return ObjectSizeEstimate.cfCluster(this, 2 + 2 * 8 + 9 * 8 + 9 * 4, 5)
+    			+ ObjectSizeEstimate.doubleArray(dimVariance)
+    			+ ObjectSizeEstimate.doubleArray(subspacePrefVector)
+    			+ ObjectSizeEstimate.doubleArray(center)
+    			+ (neighborhood == null ? 0 : ObjectSizeEstimate.arrayList(neighborhood.size()))
+    			+ (weightedNeighborhood == null ? 0 : ObjectSizeEstimate.arrayList(weightedNeighborhood.size()));
+    }
+    
     public MicroCluster copy() {
         MicroCluster copy = new MicroCluster(this.LS.clone(),
         									 this.epsilon, this.muN, this.lambda,
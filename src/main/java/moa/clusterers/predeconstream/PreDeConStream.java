@@ -11,9 +11,13 @@
 
 package moa.clusterers.predeconstream;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -22,8 +26,12 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.MicroClusterBudget;
+import moa.clusterers.SubspaceClustererCheckpoint;
 import moa.clusterers.macro.NonConvexCluster;
 import moa.core.Measurement;
+import moa.core.ObjectSizeEstimate;
+import moa.core.TimingHistogram;
 import moa.options.FloatOption;
 import moa.options.IntOption;
 import weka.core.Instance;
@@ -69,6 +77,8 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 	
 	public IntOption speedOption = new IntOption("processingSpeed", 's',
 			"Number of incoming points per time unit.", 100);
+	
+	public IntOption maxMicroClustersOption = MicroClusterBudget.newMaxMicroClustersOption();
 
 	
 	/* Parameters for online processing */
@@ -109,6 +119,17 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 	protected int numNewMCs, numDeletedMCs;
 	protected int numPromotedToPMC, numDegradedPMCs;
 	
+	/* Totals of the counters above over all finished time units */
+	protected long totalIncludedInPMC, totalIncludedInOMC;
+	protected long totalNewMCs, totalDeletedMCs;
+	protected long totalPromotedToPMC, totalDegradedPMCs;
+	
+	/* Time spent per phase */
+	protected TimingHistogram mergeTime, decayTime, pruneTime, offlineTime;
+	
+	/* Microcluster budget (0 = none) */
+	protected MicroClusterBudget<MicroCluster> budget;
+	
 	/* Weight boundaries */
 	protected double Wmax, Wmin, Wd = 1.0;
 	
@@ -158,6 +179,20 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 		numPromotedToPMC = 0;
 		numDegradedPMCs = 0;
 		
+		totalIncludedInPMC = 0;
+		totalIncludedInOMC = 0;
+		totalNewMCs = 0;
+		totalDeletedMCs = 0;
+		totalPromotedToPMC = 0;
+		totalDegradedPMCs = 0;
+		
+		mergeTime = new TimingHistogram();
+		decayTime = new TimingHistogram();
+		pruneTime = new TimingHistogram();
+		offlineTime = new TimingHistogram();
+		
+		budget = new MicroClusterBudget<MicroCluster>(maxMicroClustersOption.getValue(), lambda);
+		
 		Wmax = 1 / (1 - Math.pow(2, -lambda));
 		Wmin = beta * muN;
 		
@@ -199,6 +234,15 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 				System.out.println("-----------------------------------------\n"
 								 + ">> Time unit: " + currentTimestamp);
 			}
+			
+			totalIncludedInPMC += numIncludedInPMC;
+			totalIncludedInOMC += numIncludedInOMC;
+			totalNewMCs += numNewMCs;
+			totalDeletedMCs += numDeletedMCs;
+			totalPromotedToPMC += numPromotedToPMC;
+			totalDegradedPMCs += numDegradedPMCs;
+			publishMetrics();
+			
 			numIncludedInPMC = 0;
 			numIncludedInOMC = 0;
 			numDeletedMCs = 0;
@@ -235,6 +279,7 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 			// ////////// //
 			// Merging(p) //
 			// ////////// //
+			long phaseStart = System.nanoTime();
 			boolean merged = false;
 			
 			// Merge into the nearest potential microcluster
@@ -268,19 +313,29 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 						potential_microclusters.add(x);
 						Inserted_PMC.add(x);	// For later offline processing
 						numPromotedToPMC++;
+						budget.outlierRemoved(x);
+					} else {
+						budget.outlierChanged(x);
 					}
 				}
 			}
 			
 			// Create new outlier microcluster
 			if (!merged) {
-				outlier_microclusters.add(new MicroCluster(point.toDoubleArray(),
-														   epsilonN, muN, lambda,
-														   offlineFactor, muF, delta, kappa, tau, 
-														   currentTimestamp, currentTimestamp));
+				MicroCluster x = new MicroCluster(point.toDoubleArray(),
+												  epsilonN, muN, lambda,
+												  offlineFactor, muF, delta, kappa, tau, 
+												  currentTimestamp, currentTimestamp);
+				outlier_microclusters.add(x);
 				numNewMCs++;
+				budget.outlierChanged(x);
+				budget.enforce(potential_microclusters.size(), outlier_microclusters);
 			}
 			
+			long phaseEnd = System.nanoTime();
+			mergeTime.add(phaseEnd - phaseStart);
+			phaseStart = phaseEnd;
+			
 			// ///////////////////////// //
 			// Microclusters maintenance //
 			// ///////////////////////// //
@@ -294,6 +349,10 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 			}
 			
 			
+			phaseEnd = System.nanoTime();
+			decayTime.add(phaseEnd - phaseStart);
+			phaseStart = phaseEnd;
+			
 			// //////////////////////// //
 			// Periodic cluster removal //
 			// //////////////////////// //
@@ -311,6 +370,7 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 				
 				for (MicroCluster c : outlierRemovalList) {
 					outlier_microclusters.remove(c);
+					budget.outlierRemoved(c);
 				}
 				
 				numDeletedMCs += outlierRemovalList.size();
@@ -326,11 +386,16 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 					potential_microclusters.remove(c);
 					outlier_microclusters.add(c);
 					Deleted_PMC.add((MicroCluster) c);
+					budget.outlierChanged(c);
 				}
 				
 				numDegradedPMCs += potentialRemovalList.size();
 				
+				phaseEnd = System.nanoTime();
+				pruneTime.add(phaseEnd - phaseStart);
+				
 				updateClustering();
+				offlineTime.add(System.nanoTime() - phaseEnd);
 				
 				removalProcessed = true;
 			}			
@@ -350,6 +415,7 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 		double minDistToCenter = Double.MAX_VALUE,
 			   minDistToContour = Double.MAX_VALUE;
 		
+		double[] point = p.toDoubleArray();
 		for (int c = 0; c < MCs.size(); c++) {
 			MicroCluster x = (MicroCluster) MCs.get(c);
 			if (minA == null) {
@@ -357,11 +423,9 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 				continue;
 			}
 			
-			double[] point = p.toDoubleArray();
-			double[] clusterCenter = x.getCenter();
 			double clusterRadius = x.getRadius();
 			
-			double distToCenter = distance(point, clusterCenter);
+			double distToCenter = x.distanceToPoint(point);
 			if (distToCenter < minDistToCenter) {
 				minDistToCenter = distToCenter;
 				minB = x;
@@ -635,11 +699,238 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 
 	
 	
+	/** Checkpoints **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	/**
+	 * Every microcluster is written once: those in the containers, in the offline
+	 * clusters and (transitively) in their neighborhoods, which may still refer to
+	 * deleted ones. All references are positions in this list.
+	 */
+	@Override
+	protected void writeCheckpoint(DataOutputStream out) throws IOException {
+		out.writeLong(currentTimestamp);
+		out.writeBoolean(removalProcessed);
+		out.writeInt(numProcessedPerUnit);
+		out.writeInt(numIncludedInPMC);
+		out.writeInt(numIncludedInOMC);
+		out.writeInt(numNewMCs);
+		out.writeInt(numDeletedMCs);
+		out.writeInt(numPromotedToPMC);
+		out.writeInt(numDegradedPMCs);
+		out.writeInt(nextClusterID);
+		
+		out.writeBoolean(initialized);
+		if (!initialized) {
+			out.writeInt(initBuffer.size());
+			for (DenPoint p : initBuffer) {
+				SubspaceClustererCheckpoint.writeInstance(out, p);
+				out.writeLong(p.getCreationTimestamp());
+			}
+		}
+		
+		/* All microclusters */
+		ArrayList<MicroCluster> all = new ArrayList<MicroCluster>();
+		IdentityHashMap<MicroCluster, Integer> ids = new IdentityHashMap<MicroCluster, Integer>();
+		collect(potential_microclusters, all, ids);
+		collect(outlier_microclusters, all, ids);
+		collect(Inserted_PMC, all, ids);
+		collect(Deleted_PMC, all, ids);
+		if (offlineClustering != null) {
+			for (Cluster c : offlineClustering.getClustering()) {
+				for (CFCluster cf : ((NonConvexCluster) c).getMicroClusters()) {
+					collect((MicroCluster) cf, all, ids);
+				}
+			}
+		}
+		for (int i = 0; i < all.size(); i++) {
+			collect(all.get(i).neighborhood, all, ids);
+			collect(all.get(i).weightedNeighborhood, all, ids);
+		}
+		
+		out.writeInt(all.size());
+		for (MicroCluster mc : all) {
+			mc.writeCheckpoint(out);
+		}
+		for (MicroCluster mc : all) {
+			mc.writeNeighborhoods(out, ids);
+		}
+		MicroCluster.writeReferences(out, potential_microclusters, ids);
+		MicroCluster.writeReferences(out, outlier_microclusters, ids);
+		MicroCluster.writeReferences(out, Inserted_PMC, ids);
+		MicroCluster.writeReferences(out, Deleted_PMC, ids);
+		
+		/* Offline clusters: CF and their microclusters */
+		out.writeBoolean(offlineClustering != null);
+		if (offlineClustering != null) {
+			out.writeInt(offlineClustering.size());
+			for (Cluster c : offlineClustering.getClustering()) {
+				weightedNonConvexCluster ncc = (weightedNonConvexCluster) c;
+				out.writeDouble(ncc.getId());
+				SubspaceClustererCheckpoint.writeCF(out, ncc);
+				out.writeDouble(ncc.getWeight());
+				List<CFCluster> members = ncc.getMicroClusters();
+				out.writeInt(members.size());
+				for (CFCluster cf : members) {
+					out.writeInt(ids.get(cf));
+				}
+			}
+		}
+	}
+	
+	private void collect(List<MicroCluster> mcs, ArrayList<MicroCluster> all, IdentityHashMap<MicroCluster, Integer> ids) {
+		for (MicroCluster mc : mcs) {
+			collect(mc, all, ids);
+		}
+	}
+	
+	private void collect(MicroCluster mc, ArrayList<MicroCluster> all, IdentityHashMap<MicroCluster, Integer> ids) {
+		if (!ids.containsKey(mc)) {
+			ids.put(mc, all.size());
+			all.add(mc);
+		}
+	}
+	
+	@Override
+	protected void readCheckpoint(DataInputStream in) throws IOException {
+		currentTimestamp = in.readLong();
+		removalProcessed = in.readBoolean();
+		numProcessedPerUnit = in.readInt();
+		numIncludedInPMC = in.readInt();
+		numIncludedInOMC = in.readInt();
+		numNewMCs = in.readInt();
+		numDeletedMCs = in.readInt();
+		numPromotedToPMC = in.readInt();
+		numDegradedPMCs = in.readInt();
+		nextClusterID = in.readInt();
+		
+		initialized = in.readBoolean();
+		if (!initialized) {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				Instance inst = SubspaceClustererCheckpoint.readInstance(in);
+				initBuffer.add(new DenPoint(inst, in.readLong()));
+			}
+		}
+		
+		/* All microclusters */
+		int size = in.readInt();
+		ArrayList<MicroCluster> all = new ArrayList<MicroCluster>(size);
+		for (int i = 0; i < size; i++) {
+			MicroCluster mc = new MicroCluster(new double[0],
+											   epsilonN, muN, lambda,
+											   offlineFactor, muF, delta, kappa, tau,
+											   0, 0);
+			mc.readCheckpoint(in);
+			all.add(mc);
+		}
+		for (MicroCluster mc : all) {
+			mc.readNeighborhoods(in, all);
+		}
+		potential_microclusters = new ArrayList<MicroCluster>(MicroCluster.readReferences(in, all));
+		outlier_microclusters = new ArrayList<MicroCluster>(MicroCluster.readReferences(in, all));
+		budget.rebuild(outlier_microclusters, MicroCluster.class);
+		Inserted_PMC = new ArrayList<MicroCluster>(MicroCluster.readReferences(in, all));
+		Deleted_PMC = new ArrayList<MicroCluster>(MicroCluster.readReferences(in, all));
+		
+		/* Offline clusters */
+		offlineClustering = null;
+		if (in.readBoolean()) {
+			offlineClustering = new Clustering();
+			int numClusters = in.readInt();
+			for (int c = 0; c < numClusters; c++) {
+				double id = in.readDouble();
+				double N = in.readDouble();
+				double[] LS = SubspaceClustererCheckpoint.readDoubles(in);
+				double[] SS = SubspaceClustererCheckpoint.readDoubles(in);
+				double weight = in.readDouble();
+				List<MicroCluster> members = MicroCluster.readReferences(in, all);
+				
+				// Same microcluster list as in expandCluster(); the CF is the one saved
+				weightedNonConvexCluster ncc = new weightedNonConvexCluster(members.get(0), members);
+				ncc.setN(N);
+				ncc.LS = LS;
+				ncc.SS = SS;
+				ncc.setWeight(weight);
+				ncc.setId(id);
+				offlineClustering.add(ncc);
+			}
+		}
+	}
+	
+	
 	/** Auxiliaries **/
 	
+	/**
+	 * Micro-cluster counts, counters of the online phase (totals including the
+	 * current time unit) and timings of the phases.
+	 */
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		ArrayList<Measurement> measurements = new ArrayList<Measurement>();
+		measurements.add(new Measurement("potential microclusters", potential_microclusters.size()));
+		measurements.add(new Measurement("outlier microclusters", outlier_microclusters.size()));
+		measurements.add(new Measurement("offline clusters", offlineClustering == null ? 0 : offlineClustering.size()));
+		measurements.add(new Measurement("points included in potential microclusters", totalIncludedInPMC + numIncludedInPMC));
+		measurements.add(new Measurement("points included in outlier microclusters", totalIncludedInOMC + numIncludedInOMC));
+		measurements.add(new Measurement("created microclusters", totalNewMCs + numNewMCs));
+		measurements.add(new Measurement("deleted microclusters", totalDeletedMCs + numDeletedMCs));
+		measurements.add(new Measurement("microclusters promoted to potential", totalPromotedToPMC + numPromotedToPMC));
+		measurements.add(new Measurement("microclusters degraded to outlier", totalDegradedPMCs + numDegradedPMCs));
+		measurements.add(budget.getMeasurement());
+		addAll(measurements, mergeTime.getMeasurements("merge time"));
+		addAll(measurements, decayTime.getMeasurements("decay time"));
+		addAll(measurements, pruneTime.getMeasurements("prune time"));
+		addAll(measurements, offlineTime.getMeasurements("offline clustering time"));
+		return measurements.toArray(new Measurement[measurements.size()]);
+	}
+	
+	/**
+	 * Micro-clusters with their neighborhoods, the offline clusters, the lists of
+	 * changed micro-clusters and the initialization buffer, see ObjectSizeEstimate.
+	 */
+	@Override
+	public long estimateByteSize() {
+		long size = estimateByteSize(potential_microclusters) + estimateByteSize(outlier_microclusters);
+		if (offlineClustering != null) {
+			size += ObjectSizeEstimate.object(0, 1) + ObjectSizeEstimate.arrayList(offlineClustering.size());
+			for (Cluster c : offlineClustering.getClustering()) {
+				// weight; list of member micro-clusters
+				size += ObjectSizeEstimate.cfCluster((CFCluster) c, 8, 1)
+						+ ObjectSizeEstimate.arrayList(((NonConvexCluster) c).getMicroClusters().size());
+			}
+		}
+		if (Inserted_PMC != null) {
+			size += ObjectSizeEstimate.arrayList(Inserted_PMC.size()) + ObjectSizeEstimate.arrayList(Deleted_PMC.size());
+		}
+		if (initBuffer != null) {
+			size += ObjectSizeEstimate.arrayList(initBuffer.size());
+			for (DenPoint p : initBuffer) {
+				size += ObjectSizeEstimate.instance(p, 8 + 1, 0);	// Timestamp, covered
+			}
+		}
+		return size;
+	}
+	
+	private static long estimateByteSize(List<MicroCluster> microclusters) {
+		if (microclusters == null) {
+			return 0;
+		}
+		long size = ObjectSizeEstimate.arrayList(microclusters.size());
+		for (MicroCluster mc : microclusters) {
+			size += mc.estimateByteSize();
+		}
+		return size;
+	}
+	
+	private static void addAll(ArrayList<Measurement> list, Measurement[] measurements) {
+		for (Measurement m : measurements) {
+			list.add(m);
+		}
 	}
 
 	@Override
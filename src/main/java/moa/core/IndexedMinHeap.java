@@ -0,0 +1,150 @@
+/**
+ * [IndexedMinHeap.java] for Subspace MOA
+ *
+ * Binary min-heap of objects with a double key. Every object knows its position
+ * (by identity), so its key can be changed or the object removed in O(log n).
+ * Used to find the lowest-weight outlier micro-clusters under a micro-cluster budget.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+public class IndexedMinHeap<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ArrayList<T> items = new ArrayList<T>();
+	private double[] keys = new double[16];
+	private final IdentityHashMap<T, Integer> positions = new IdentityHashMap<T, Integer>();
+
+
+	public int size() {
+		return items.size();
+	}
+
+	public boolean contains(T item) {
+		return positions.containsKey(item);
+	}
+
+	public void clear() {
+		items.clear();
+		positions.clear();
+	}
+
+	/**
+	 * Add the object, or change its key if it is already in the heap.
+	 */
+	public void put(T item, double key) {
+		Integer position = positions.get(item);
+		if (position != null) {
+			double old = keys[position];
+			keys[position] = key;
+			if (key < old) {
+				siftUp(position);
+			} else {
+				siftDown(position);
+			}
+			return;
+		}
+		int i = items.size();
+		if (i == keys.length) {
+			double[] grown = new double[2 * i];
+			System.arraycopy(keys, 0, grown, 0, i);
+			keys = grown;
+		}
+		items.add(item);
+		keys[i] = key;
+		positions.put(item, i);
+		siftUp(i);
+	}
+
+	/**
+	 * @return true if the object was in the heap
+	 */
+	public boolean remove(T item) {
+		Integer position = positions.remove(item);
+		if (position == null) {
+			return false;
+		}
+		int i = position;
+		int last = items.size() - 1;
+		T moved = items.remove(last);
+		if (i < last) {
+			items.set(i, moved);
+			keys[i] = keys[last];
+			positions.put(moved, i);
+			siftDown(i);
+			siftUp(i);
+		}
+		return true;
+	}
+
+	/**
+	 * @return object with the smallest key, or null if empty
+	 */
+	public T peek() {
+		return items.isEmpty() ? null : items.get(0);
+	}
+
+	public double peekKey() {
+		return items.isEmpty() ? Double.NaN : keys[0];
+	}
+
+	/**
+	 * Remove and return the object with the smallest key (null if empty).
+	 */
+	public T poll() {
+		T min = peek();
+		if (min != null) {
+			remove(min);
+		}
+		return min;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!(keys[i] < keys[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		int n = items.size();
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1, right = left + 1;
+			if (left < n && keys[left] < keys[smallest]) {
+				smallest = left;
+			}
+			if (right < n && keys[right] < keys[smallest]) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				break;
+			}
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int a, int b) {
+		T itemA = items.get(a);
+		T itemB = items.get(b);
+		items.set(a, itemB);
+		items.set(b, itemA);
+		double key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		positions.put(itemB, a);
+		positions.put(itemA, b);
+	}
+}
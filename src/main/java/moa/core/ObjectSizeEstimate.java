@@ -0,0 +1,75 @@
+/**
+ * [ObjectSizeEstimate.java] for Subspace MOA
+ *
+ * Heap size of objects and arrays on a 64-bit JVM with compressed references
+ * (12 byte object header, 16 byte array header, 4 byte references, 8 byte
+ * alignment). Used for model size estimates that do not walk the model graph
+ * like SizeOf.fullSizeOf().
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.core;
+
+import moa.cluster.CFCluster;
+import weka.core.Instance;
+
+public final class ObjectSizeEstimate {
+
+	public static final int OBJECT_HEADER = 12;
+	public static final int ARRAY_HEADER = 16;
+	public static final int REFERENCE = 4;
+
+	private ObjectSizeEstimate() {
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * @param primitiveBytes - total size of the primitive fields
+	 * @param numReferences - number of reference fields
+	 */
+	public static long object(int primitiveBytes, int numReferences) {
+		return align(OBJECT_HEADER + primitiveBytes + (long) numReferences * REFERENCE);
+	}
+
+	public static long doubleArray(int length) {
+		return align(ARRAY_HEADER + 8L * length);
+	}
+
+	public static long doubleArray(double[] array) {
+		return array == null ? 0 : doubleArray(array.length);
+	}
+
+	public static long referenceArray(int length) {
+		return align(ARRAY_HEADER + (long) REFERENCE * length);
+	}
+
+	/**
+	 * ArrayList (or Clustering's vector) of 'size' references, without the elements.
+	 */
+	public static long arrayList(int size) {
+		return object(8, 1) + referenceArray(size);
+	}
+
+	/**
+	 * Cluster feature with LS and SS. The fields of Cluster, SphereCluster and
+	 * CFCluster (6 doubles, 4 references) are included; the fields of the
+	 * subclass are given.
+	 */
+	public static long cfCluster(CFCluster cf, int primitiveBytes, int numReferences) {
+		return object(6 * 8 + primitiveBytes, 4 + numReferences)
+				+ doubleArray(cf.LS) + doubleArray(cf.SS);
+	}
+
+	/**
+	 * Dense instance with its values (the header is shared). The fields of
+	 * DenseInstance (1 double, 2 references) are included; the fields of the
+	 * subclass are given.
+	 */
+	public static long instance(Instance inst, int primitiveBytes, int numReferences) {
+		return object(8 + primitiveBytes, 2 + numReferences) + doubleArray(inst.numValues());
+	}
+}
@@ -12,7 +12,8 @@
 
 package moa.core;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import weka.core.DenseInstance;
@@ -22,7 +23,8 @@ public class SubspaceInstance extends DenseInstance {
 
 	private static final long serialVersionUID = 1L;
 
-	double[] classLabels;		// Class label for each attribute value
+	double[] classLabels;		// Class label for each attribute value (may be shared, do not modify)
+	private transient Set<Double> classLabelSet;	// Cached on first request
 	
 	public SubspaceInstance(double weight, double[] attValues) {
 		super(weight, attValues);
@@ -37,7 +39,9 @@ public class SubspaceInstance extends DenseInstance {
 	public SubspaceInstance(Instance inst) {
 		super(inst);
 		if (inst instanceof SubspaceInstance) {
-			setClassLabels(((SubspaceInstance) inst).getClassLabels());
+			SubspaceInstance source = (SubspaceInstance) inst;
+			this.classLabels = source.classLabels;
+			this.classLabelSet = source.classLabelSet;
 		}
 	}
 	
@@ -47,22 +51,37 @@ public class SubspaceInstance extends DenseInstance {
 	
 	public void setClassLabels(double[] classLabels) {
 		this.classLabels = classLabels;
+		this.classLabelSet = null;
 	}
 	
 	public double getClassLabel(int attIndex) {
 		return this.classLabels[attIndex];
 	}
 	
-	public Set<Double> getClassLabelSet() {		
-		HashMap<Double, Integer> classLabelMap = new HashMap<Double, Integer>();
-		
-		int index = 0;
+	/**
+	 * Distinct class labels of this instance. The set is computed once and
+	 * cached until the labels are replaced, so it must not be modified.
+	 * 
+	 * @return
+	 */
+	public Set<Double> getClassLabelSet() {
+		if (classLabelSet == null) {
+			classLabelSet = toClassLabelSet(classLabels);
+		}
+		return classLabelSet;
+	}
+	
+	/**
+	 * Helper: distinct labels of a per-attribute label array.
+	 * 
+	 * @param classLabels
+	 * @return unmodifiable set
+	 */
+	public static Set<Double> toClassLabelSet(double[] classLabels) {
+		Set<Double> labelSet = new HashSet<Double>();
 		for (double label : classLabels) {
-			if (!classLabelMap.containsKey(label)) {
-				classLabelMap.put(label, index);
-				index++;
-			}
+			labelSet.add(label);
 		}
-		return classLabelMap.keySet();
+		return Collections.unmodifiableSet(labelSet);
 	}
-}
\ No newline at end of file
+}
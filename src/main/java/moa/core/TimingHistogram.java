@@ -0,0 +1,97 @@
+/**
+ * [TimingHistogram.java] for Subspace MOA
+ *
+ * Histogram of durations (nanoseconds) in power-of-two buckets: bucket b counts
+ * durations in [2^b, 2^(b+1)) ns. Adding is O(1) without allocation, quantiles
+ * are exact up to a factor of two.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.core;
+
+import java.io.Serializable;
+
+public class TimingHistogram implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int NUM_BUCKETS = 64;
+
+	private final long[] buckets = new long[NUM_BUCKETS];
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+
+
+	public void add(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public void reset() {
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			buckets[b] = 0;
+		}
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	public double getMeanNanos() {
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	/**
+	 * @param q - quantile in [0, 1]
+	 * @return upper bound of the bucket holding the q-quantile (at most the maximum)
+	 */
+	public long getQuantileNanos(double q) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(q * count);
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += buckets[b];
+			if (seen >= rank && buckets[b] > 0) {
+				long upper = (b >= 62) ? Long.MAX_VALUE : (1L << (b + 1)) - 1;
+				return Math.min(upper, maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+
+	/**
+	 * Count, total, mean, median, 99th percentile and maximum, times in microseconds.
+	 */
+	public Measurement[] getMeasurements(String name) {
+		return new Measurement[] {
+				new Measurement(name + " count", count),
+				new Measurement(name + " total (us)", totalNanos / 1000.0),
+				new Measurement(name + " mean (us)", getMeanNanos() / 1000.0),
+				new Measurement(name + " median (us)", getQuantileNanos(0.5) / 1000.0),
+				new Measurement(name + " 99th percentile (us)", getQuantileNanos(0.99) / 1000.0),
+				new Measurement(name + " max (us)", maxNanos / 1000.0)
+		};
+	}
+}
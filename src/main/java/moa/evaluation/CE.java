@@ -80,7 +80,7 @@ public class CE extends SubspaceMeasureCollection {
     			Cluster fc = foundClusters.get(i);
     			if (fc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
     				if (fc instanceof SubspaceSphereCluster) {
-	    				for (int j : ((SubspaceSphereCluster) fc).getAdjustedRelevantDims()) {
+	    				for (int j : ((SubspaceSphereCluster) fc).getAdjustedRelevantDimIndices()) {
 	    					dimCoveredByFCs[j]++;
 	    				}
     				} else {
@@ -96,7 +96,7 @@ public class CE extends SubspaceMeasureCollection {
     			Cluster gc = gtClusters.get(i);
     			if (gc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
     				if (gc instanceof SubspaceSphereCluster) {
-	    				for (int j : ((SubspaceSphereCluster) gc).getAdjustedRelevantDims()) {
+	    				for (int j : ((SubspaceSphereCluster) gc).getAdjustedRelevantDimIndices()) {
 	    					dimCoveredByGCs[j]++;
 	    				}
     				} else {
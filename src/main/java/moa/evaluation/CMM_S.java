@@ -20,6 +20,7 @@ import moa.cluster.Clustering;
 import moa.cluster.SphereCluster;
 import moa.cluster.SubspaceClustering;
 import moa.evaluation.CMM_S_GTAnalysis.CMMPoint;
+import moa.gui.subspacevisualization.PointWeights;
 import moa.gui.subspacevisualization.SubspaceDataPoint;
 import moa.gui.visualization.DataPoint;
 
@@ -109,12 +110,17 @@ public class CMM_S extends SubspaceMeasureCollection {
 
     
     public void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points) throws Exception{
+        subEvaluateSubspaceClustering(foundClustering, trueClustering, points, PointWeights.STORED);
+    }
+
+    @Override
+    protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points, PointWeights weights) throws Exception{
         // Reverse: Subspace clustering => Full-space clustering
     	Clustering fullFoundClustering =  foundClustering.toClustering();
     	Clustering fullTrueClustering = trueClustering.toClustering();
     	ArrayList<DataPoint> fullPoints = new ArrayList<DataPoint>();
     	for (SubspaceDataPoint sdp : points) {
-    		fullPoints.add(sdp.getDataPoint());
+    		fullPoints.add(sdp.getDataPoint(weights.getWeight(sdp)));
     	}
     	
     	this.clustering = fullFoundClustering;
@@ -19,6 +19,7 @@ import moa.cluster.Cluster;
 import moa.cluster.SubspaceClustering;
 import moa.cluster.SubspaceSphereCluster;
 import moa.core.AutoExpandVector;
+import moa.gui.subspacevisualization.PointWeights;
 import moa.gui.subspacevisualization.SubspaceDataPoint;
 
 public class SubCMM extends SubspaceMeasureCollection {
@@ -28,6 +29,7 @@ public class SubCMM extends SubspaceMeasureCollection {
 	private boolean debug = false;
 	
 	private List<SubspaceDataPoint> points;
+	private PointWeights weights;
 	private AutoExpandVector<Cluster> foundClusters;
 	private AutoExpandVector<Cluster> gtClusters;
 	private List<List<SubspaceDataPoint>> pointsInFC;
@@ -67,7 +69,13 @@ public class SubCMM extends SubspaceMeasureCollection {
 
     @Override
     protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points) throws Exception {
+		subEvaluateSubspaceClustering(foundClustering, gtClustering, points, PointWeights.STORED);
+    }
+
+    @Override
+    protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points, PointWeights weights) throws Exception {
 		this.points = points;
+		this.weights = weights;
 		foundClusters = foundClustering.getClustering();
 		gtClusters = gtClustering.getClustering();
 		pointsInFC = new ArrayList<List<SubspaceDataPoint>>();
@@ -395,6 +403,7 @@ public class SubCMM extends SubspaceMeasureCollection {
 		double weightedSumOfConnectivityToGT = 0.0;		// To normalize final CMM value
 		for (int i = 0; i < points.size(); i++) {
 			SubspaceDataPoint p = points.get(i);
+			double weight = weights.getWeight(p);
 			for (int j = 0; j < p.getClassLabels().length; j++) {
 				double orgGTClusterLabel = p.getClassLabel(j);
 				int orgGTClusterIndex = labelMap.get(orgGTClusterLabel);
@@ -409,7 +418,7 @@ public class SubCMM extends SubspaceMeasureCollection {
 					System.out.println("NaN error in connectivity of (" + i + ", " + j + ") to the cluster " + orgGTClusterIndex);
 				}
 				
-				weightedSumOfConnectivityToGT += p.weight() * con;
+				weightedSumOfConnectivityToGT += weight * con;
 				conToOrgGT[i][j] = con;
 			}
 		}
@@ -490,8 +499,9 @@ public class SubCMM extends SubspaceMeasureCollection {
     		}
     		
     		// Update weighted sum of penalties
+    		double weight = weights.getWeight(p);
     		for (int j = 0; j < p.getClassLabels().length; j++) {
-    			weightedSumOfPenalty += p.weight() * maxPen[i][j];
+    			weightedSumOfPenalty += weight * maxPen[i][j];
     		}
     	}
      	
@@ -0,0 +1,157 @@
+/**
+ * [SubspaceEvaluationBinaryReader.java] for Subspace MOA
+ *
+ * Reads the output of SubspaceEvaluationBinaryWriter row by row.
+ * A truncated last block (e.g. from a crashed run) ends the rows quietly.
+ *
+ * Usage as a converter:
+ *   java moa.evaluation.SubspaceEvaluationBinaryReader input.bin output.csv
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class SubspaceEvaluationBinaryReader {
+
+	private DataInputStream in;
+	private String[] columnNames;
+	private double[] means = null;
+
+	// Current block
+	private int blockSize = 0;
+	private int blockFirstNr;
+	private String[] blockEvents;
+	private double[][] blockValues;		// [column][row]
+	private int row = -1;
+	private boolean finished = false;
+
+	public SubspaceEvaluationBinaryReader(String filepath) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+		if (in.readInt() != SubspaceEvaluationBinaryWriter.MAGIC) {
+			in.close();
+			throw new IOException("SubspaceEvaluationBinaryReader: " + filepath + " is not a binary evaluation file");
+		}
+		int version = in.readInt();
+		if (version != SubspaceEvaluationBinaryWriter.VERSION) {
+			in.close();
+			throw new IOException("SubspaceEvaluationBinaryReader: unsupported version " + version);
+		}
+		columnNames = new String[in.readInt()];
+		for (int c = 0; c < columnNames.length; c++) {
+			columnNames[c] = in.readUTF();
+		}
+		blockValues = new double[columnNames.length][];
+	}
+
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * Move to the next row.
+	 *
+	 * @return false if there are no more rows
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (row + 1 < blockSize) {
+			row++;
+			return true;
+		}
+		if (finished || !readBlock()) {
+			finished = true;
+			return false;
+		}
+		row = 0;
+		return true;
+	}
+
+	private boolean readBlock() throws IOException {
+		try {
+			int size = in.readInt();
+			if (size == SubspaceEvaluationBinaryWriter.MEANS_MARKER) {
+				double[] m = new double[columnNames.length];
+				for (int c = 0; c < m.length; c++) {
+					m[c] = in.readDouble();
+				}
+				means = m;
+				return false;
+			}
+			int firstNr = in.readInt();
+			String[] events = new String[size];
+			for (int r = 0; r < size; r++) {
+				events[r] = in.readUTF();
+			}
+			double[][] values = new double[columnNames.length][size];
+			for (int c = 0; c < values.length; c++) {
+				for (int r = 0; r < size; r++) {
+					values[c][r] = in.readDouble();
+				}
+			}
+			blockSize = size;
+			blockFirstNr = firstNr;
+			blockEvents = events;
+			blockValues = values;
+			return true;
+		} catch (EOFException e) {		// End of file or truncated block
+			return false;
+		}
+	}
+
+	public int getNr() {
+		return blockFirstNr + row;
+	}
+
+	public String getEvent() {
+		return blockEvents[row];
+	}
+
+	public double getValue(int column) {
+		return blockValues[column][row];
+	}
+
+	/**
+	 * @return column means, or null if the file has none (yet)
+	 */
+	public double[] getMeans() {
+		return means;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Convert a binary evaluation file to the csv layout.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: SubspaceEvaluationBinaryReader <input> <output.csv>");
+			return;
+		}
+		SubspaceEvaluationBinaryReader reader = new SubspaceEvaluationBinaryReader(args[0]);
+		SubspaceEvaluationCSVWriter writer = new SubspaceEvaluationCSVWriter(args[1], reader.getColumnNames(), 1000);
+		try {
+			double[] values = new double[reader.getColumnNames().length];
+			while (reader.next()) {
+				for (int c = 0; c < values.length; c++) {
+					values[c] = reader.getValue(c);
+				}
+				writer.writeRow(reader.getNr(), reader.getEvent(), values);
+			}
+			if (reader.getMeans() != null) {
+				writer.writeMeans(reader.getMeans());
+			}
+		} finally {
+			writer.close();
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * [SubspaceEvaluationBinaryWriter.java] for Subspace MOA
+ *
+ * Compact binary evaluation output for long runs. Rows are buffered and
+ * written as column blocks of up to 'flushInterval' rows:
+ *
+ * header: int MAGIC, int VERSION, int numColumns, UTF columnName x numColumns
+ * block:  int numRows (> 0), int firstNr, UTF event x numRows,
+ *         then per column: double value x numRows
+ * means:  int -1, double mean x numColumns (last, optional)
+ *
+ * Every block is flushed when written; a run that crashes loses at most the
+ * rows of the current block. Read with SubspaceEvaluationBinaryReader.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class SubspaceEvaluationBinaryWriter extends SubspaceEvaluationWriter {
+
+	public static final int MAGIC = 0x53454231;		// "SEB1"
+	public static final int VERSION = 1;
+	public static final int MEANS_MARKER = -1;
+
+	private DataOutputStream out;
+
+	// Current block (columnar)
+	private int blockSize = 0;
+	private int blockFirstNr;
+	private String[] blockEvents;
+	private double[][] blockValues;		// [column][row]
+
+	public SubspaceEvaluationBinaryWriter(String filepath, String[] columnNames, int flushInterval) throws IOException {
+		super(columnNames, flushInterval);
+		blockEvents = new String[this.flushInterval];
+		blockValues = new double[columnNames.length][this.flushInterval];
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(columnNames.length);
+		for (String name : columnNames) {
+			out.writeUTF(name);
+		}
+		out.flush();
+	}
+
+	@Override
+	protected void appendRow(int nr, String event, double[] values) throws IOException {
+		if (blockSize == 0) {
+			blockFirstNr = nr;
+		} else if (nr != blockFirstNr + blockSize) {	// Rows of a block are consecutive
+			writeBlock();
+			blockFirstNr = nr;
+		}
+		blockEvents[blockSize] = event;
+		for (int c = 0; c < values.length; c++) {
+			blockValues[c][blockSize] = values[c];
+		}
+		blockSize++;
+	}
+
+	private void writeBlock() throws IOException {
+		if (blockSize == 0) {
+			return;
+		}
+		out.writeInt(blockSize);
+		out.writeInt(blockFirstNr);
+		for (int r = 0; r < blockSize; r++) {
+			out.writeUTF(blockEvents[r]);
+		}
+		for (int c = 0; c < blockValues.length; c++) {
+			for (int r = 0; r < blockSize; r++) {
+				out.writeDouble(blockValues[c][r]);
+			}
+		}
+		blockSize = 0;
+	}
+
+	@Override
+	public void writeMeans(double[] means) throws IOException {
+		writeBlock();
+		out.writeInt(MEANS_MARKER);
+		for (double mean : means) {
+			out.writeDouble(mean);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			flush();
+			out.close();
+			out = null;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * [SubspaceEvaluationCSVWriter.java] for Subspace MOA
+ *
+ * Semicolon separated evaluation output (the dumpFile layout of EvaluateSubspaceClustering):
+ *
+ * Nr;Event;measure1;measure2;...;
+ * 0;;value;value;...;
+ * ...
+ * mean;;value;value;...;
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class SubspaceEvaluationCSVWriter extends SubspaceEvaluationWriter {
+
+	private static final String delimiter = ";";
+
+	private Writer out;
+
+	public SubspaceEvaluationCSVWriter(String filepath, String[] columnNames, int flushInterval) throws IOException {
+		super(columnNames, flushInterval);
+		out = new BufferedWriter(new FileWriter(filepath));
+
+		out.write("Nr" + delimiter);
+		out.write("Event" + delimiter);
+		for (String name : columnNames) {
+			out.write(name + delimiter);
+		}
+		out.write("\n");
+		out.flush();
+	}
+
+	@Override
+	protected void appendRow(int nr, String event, double[] values) throws IOException {
+		out.write(nr + delimiter);
+		out.write(event + delimiter);
+		for (double value : values) {
+			out.write(value + delimiter);
+		}
+		out.write("\n");
+	}
+
+	@Override
+	public void writeMeans(double[] means) throws IOException {
+		out.write("mean" + delimiter + delimiter);
+		for (double mean : means) {
+			out.write(mean + delimiter);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * [SubspaceEvaluationWriter.java] for Subspace MOA
+ *
+ * Streaming output of evaluation results: one row per averaged evaluation,
+ * written as soon as it is produced. At most 'flushInterval' rows are held
+ * back before they are flushed to the file, so a crashed run keeps its results
+ * up to the last flush.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.IOException;
+
+public abstract class SubspaceEvaluationWriter {
+
+	protected String[] columnNames;
+	protected int flushInterval;
+	protected int numRows = 0;
+
+	public SubspaceEvaluationWriter(String[] columnNames, int flushInterval) {
+		this.columnNames = columnNames;
+		this.flushInterval = Math.max(1, flushInterval);
+	}
+
+	/**
+	 * Append an evaluation row.
+	 *
+	 * @param nr - row number
+	 * @param event - cluster event type, empty if none
+	 * @param values - one value per column
+	 * @throws IOException
+	 */
+	public void writeRow(int nr, String event, double[] values) throws IOException {
+		if (values.length != columnNames.length) {
+			throw new IllegalArgumentException("SubspaceEvaluationWriter: " + values.length
+					+ " values for " + columnNames.length + " columns");
+		}
+		appendRow(nr, event, values);
+		numRows++;
+		if (numRows % flushInterval == 0) {
+			flush();
+		}
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	protected abstract void appendRow(int nr, String event, double[] values) throws IOException;
+
+	/**
+	 * Write the mean of each column. Called once, before close().
+	 *
+	 * @param means
+	 * @throws IOException
+	 */
+	public abstract void writeMeans(double[] means) throws IOException;
+
+	public abstract void flush() throws IOException;
+
+	public abstract void close() throws IOException;
+}
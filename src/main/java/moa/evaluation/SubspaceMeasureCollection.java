@@ -15,6 +15,7 @@ import java.util.List;
 
 import moa.AbstractMOAObject;
 import moa.cluster.SubspaceClustering;
+import moa.gui.subspacevisualization.PointWeights;
 import moa.gui.subspacevisualization.SubspaceDataPoint;
 
 public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
@@ -31,6 +32,9 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
     private double[] sumValues;
     private boolean[] enabled;
     private int[] corrupted;
+    private int[] numValues;
+    private double[] lastValue;
+    private boolean storeValues = true;		// false: only count, sum, min/max and last value are kept
     private double time;
     private boolean debug = true;
     private MembershipMatrix mm = null;
@@ -56,6 +60,8 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
         minValue = new double[numMeasures];
         sumValues = new double[numMeasures];
         corrupted = new int[numMeasures];
+        numValues = new int[numMeasures];
+        lastValue = new double[numMeasures];
         enabled = getDefaultEnabled();
         time = 0;
         events = new ArrayList<String>();
@@ -87,7 +93,22 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 	        if (value > maxValue[index]) maxValue[index] = value;
         }
         
-        values[index].add(value);
+        numValues[index]++;
+        lastValue[index] = value;
+        if (storeValues) {
+        	values[index].add(value);
+        }
+    }
+    
+    /**
+     * Whether every averaged value is kept for getValue()/getMedian() etc.
+     * Long runs that stream their results can switch this off to keep memory
+     * constant; mean, min, max and the last value are still available.
+     * 
+     * @param storeValues
+     */
+    public void setStoreValues(boolean storeValues) {
+    	this.storeValues = storeValues;
     }
 
     protected void addValue(String name, double value){
@@ -128,19 +149,15 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
     }
 
     public double getLastValue(int index){
-         if (values[index].size() < 1) return Double.NaN;
-         double value = values[index].get(values[index].size() - 1);
-         if (Double.isNaN(value))
-        	 return Double.NaN;
-         else
-        	 return value;
+         if (numValues[index] < 1) return Double.NaN;
+         return lastValue[index];
      }
 
      public double getMean(int index){
-         if (values[index].size() < 1)
+         if (numValues[index] < 1)
              return Double.NaN;
 
-         return sumValues[index] / (values[index].size() - corrupted[index]);
+         return sumValues[index] / (numValues[index] - corrupted[index]);
      }
 
      private void updateSortedValues(int index){
@@ -195,7 +212,7 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 
 
      public int getNumberOfValues(int index){
-         return values[index].size();
+         return numValues[index];
      }
 
      public double getValue(int index, int i){
@@ -216,8 +233,8 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
      }
 
      public double getMeanRunningTime(){
-         if(values[0].size()!=0)
-            return (time/10e5/values[0].size());
+         if(numValues[0]!=0)
+            return (time/10e5/numValues[0]);
          else
              return 0;
      }
@@ -232,14 +249,31 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 
     protected abstract void subEvaluateSubspaceClustering(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points) throws Exception;
 
+    /**
+     * Same with the decay weights of the points from 'weights'; only measures
+     * that weight the points need to override it.
+     */
+    protected void subEvaluateSubspaceClustering(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points, PointWeights weights) throws Exception {
+        subEvaluateSubspaceClustering(clustering, trueClustering, points);
+    }
+
      /*
       * Evaluate Clustering
       *
       * return Time in milliseconds
       */
     public double subEvaluateClusteringPerformance(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points) throws Exception{
+        return subEvaluateClusteringPerformance(clustering, trueClustering, points, PointWeights.STORED);
+    }
+
+    /*
+     * Evaluate Clustering, with the decay weights of the points from 'weights'
+     *
+     * return Time in milliseconds
+     */
+    public double subEvaluateClusteringPerformance(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points, PointWeights weights) throws Exception{
         long start = System.nanoTime();
-        subEvaluateSubspaceClustering(clustering, trueClustering, points);
+        subEvaluateSubspaceClustering(clustering, trueClustering, points, weights);
         long duration = System.nanoTime()-start;
         time+=duration;
         duration/=10e5;
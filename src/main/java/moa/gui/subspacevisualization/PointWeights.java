@@ -0,0 +1,23 @@
+/**
+ * [PointWeights.java] for Subspace MOA
+ *
+ * Source of the decay weights of the points handed to a measure: a
+ * SubspaceDataPointWindow computes them from the window time, STORED reads
+ * the weight kept in each point (e.g. by DataPoint.updateWeight()).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.gui.subspacevisualization;
+
+public interface PointWeights {
+
+	/** The weights stored in the points **/
+	PointWeights STORED = new PointWeights() {
+		public double getWeight(SubspaceDataPoint point) {
+			return point.weight();
+		}
+	};
+
+	double getWeight(SubspaceDataPoint point);
+}
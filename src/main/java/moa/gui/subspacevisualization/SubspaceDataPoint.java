@@ -11,7 +11,6 @@
 
 package moa.gui.subspacevisualization;
 
-import java.util.HashMap;
 import java.util.Set;
 
 import moa.core.SubspaceInstance;
@@ -24,7 +23,8 @@ public class SubspaceDataPoint extends DataPoint {
 
 	private static final long serialVersionUID = 1L;
 	
-	protected double[] classLabels;		// Class label for each attribute value
+	protected double[] classLabels;		// Class label for each attribute value (shared with the source instance)
+	private transient Set<Double> classLabelSet;
 	
 	public SubspaceDataPoint(SubspaceInstance nextInstance, Integer timestamp) {
 		super(nextInstance, timestamp);
@@ -34,6 +34,7 @@ public class SubspaceDataPoint extends DataPoint {
 	public SubspaceDataPoint(SubspaceDataPoint point, Integer timestamp) {
 		super(point, timestamp);
 		this.classLabels = point.getClassLabels();
+		this.classLabelSet = point.classLabelSet;
 	}
 		
 	public double[] getClassLabels() {
@@ -44,17 +45,34 @@ public class SubspaceDataPoint extends DataPoint {
 		return this.classLabels[attIndex];
 	}
 	
-	public Set<Double> getClassLabelSet() {		
-		HashMap<Double, Integer> classLabelMap = new HashMap<Double, Integer>();
-		
-		int index = 0;
-		for (double label : classLabels) {
-			if (!classLabelMap.containsKey(label)) {
-				classLabelMap.put(label, index);
-				index++;
-			}
+	public Set<Double> getClassLabelSet() {
+		if (classLabelSet == null) {
+			classLabelSet = SubspaceInstance.toClassLabelSet(classLabels);
 		}
-		return classLabelMap.keySet();
+		return classLabelSet;
+	}
+	
+	/**
+	 * Instance to train a clusterer with. The attribute values are shared with
+	 * this point if the class attribute is kept; otherwise they are copied once
+	 * without the class attribute.
+	 * 
+	 * @param keepClassLabel
+	 * @return
+	 */
+	public SubspaceInstance getTrainingInstance(boolean keepClassLabel) {
+		SubspaceInstance trainInst;
+		if (keepClassLabel) {
+			trainInst = new SubspaceInstance(this);
+			trainInst.setDataset(dataset());
+		} else {
+			int classIndex = classIndex();
+			double[] values = new double[m_AttValues.length - 1];
+			System.arraycopy(m_AttValues, 0, values, 0, classIndex);
+			System.arraycopy(m_AttValues, classIndex + 1, values, classIndex, values.length - classIndex);
+			trainInst = new SubspaceInstance(m_Weight, values, null);
+		}
+		return trainInst;
 	}
 	
 
@@ -164,13 +182,24 @@ public class SubspaceDataPoint extends DataPoint {
 	 * @return DataPoint
 	 */
 	public DataPoint getDataPoint() {
+		return getDataPoint(this.m_Weight);
+	}
+	
+	/**
+	 * Same as getDataPoint(), with the given decay weight instead of the
+	 * weight stored in this point (see SubspaceDataPointWindow.getWeight()).
+	 * 
+	 * @param weight
+	 * @return DataPoint
+	 */
+	public DataPoint getDataPoint(double weight) {
 		int numAtts = numAttributes();
 		double[] attValues = new double[numAtts];
 		for (int j = 0; j < numAtts; j++) {
 			attValues[j] = value(j);
 		}
 		
-		DenseInstance inst = new DenseInstance(this.m_Weight, attValues);
+		DenseInstance inst = new DenseInstance(weight, attValues);
 		Instances insts = new Instances(this.m_Dataset);
 		inst.setDataset(insts);
 		
@@ -0,0 +1,145 @@
+/**
+ * [SubspaceDataPointWindow.java] for Subspace MOA
+ *
+ * Fixed-capacity sliding window of SubspaceDataPoints (decay horizon).
+ *
+ * - Ring buffer: adding a point to a full window evicts the oldest one in O(1).
+ * - Decay weights are computed on read from the window time and the timestamp
+ *   of the point (getWeight(), the PointWeights of the measures); the points themselves are never written, so
+ *   windows of different times may share them across threads. A new
+ *   evaluation point only needs setTimestamp() instead of an extra pass.
+ * - The window itself is the (read-only) List view for measures and ground truth.
+ *   It changes with the next add(), so do not keep it beyond one evaluation
+ *   (take a snapshot() instead).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.gui.subspacevisualization;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+public class SubspaceDataPointWindow extends AbstractList<SubspaceDataPoint> implements RandomAccess, PointWeights {
+
+	private SubspaceDataPoint[] points;
+	private int head;		// Index of the oldest point
+	private int size;
+
+	private double decayRate;
+	private int timestamp;
+
+	public SubspaceDataPointWindow(int capacity, double decayRate) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("SubspaceDataPointWindow: capacity must be positive");
+		}
+		this.points = new SubspaceDataPoint[capacity];
+		this.decayRate = decayRate;
+	}
+
+	/**
+	 * Append a point, evicting the oldest one if the window is full.
+	 * The window time advances to the timestamp of the point if it is newer.
+	 *
+	 * @param point
+	 * @return evicted point, or null
+	 */
+	public SubspaceDataPoint addPoint(SubspaceDataPoint point) {
+		SubspaceDataPoint evicted = null;
+		int tail = head + size;
+		if (tail >= points.length) tail -= points.length;
+
+		if (size == points.length) {
+			evicted = points[head];
+			head++;
+			if (head == points.length) head = 0;
+		} else {
+			size++;
+		}
+
+		points[tail] = point;
+		if (point.getTimestamp() > timestamp) {
+			timestamp = point.getTimestamp();
+		}
+		return evicted;
+	}
+
+	@Override
+	public boolean add(SubspaceDataPoint point) {
+		addPoint(point);
+		return true;
+	}
+
+	/**
+	 * Move the window to a new time. Weights of the points follow in getWeight().
+	 *
+	 * @param timestamp
+	 */
+	public void setTimestamp(int timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public int getTimestamp() {
+		return timestamp;
+	}
+
+	public double getDecayRate() {
+		return decayRate;
+	}
+
+	public int getCapacity() {
+		return points.length;
+	}
+
+	/**
+	 * Copy of the current window (same points, time and decay rate) that does not
+	 * change with later add() calls, e.g. to evaluate it on another thread.
+	 * The points are shared; getWeight() of the copy stays at its time.
+	 *
+	 * @return
+	 */
+	public SubspaceDataPointWindow snapshot() {
+		SubspaceDataPointWindow copy = new SubspaceDataPointWindow(Math.max(size, 1), decayRate);
+		int first = Math.min(size, points.length - head);
+		System.arraycopy(points, head, copy.points, 0, first);
+		System.arraycopy(points, 0, copy.points, first, size - first);
+		copy.size = size;
+		copy.timestamp = timestamp;
+		return copy;
+	}
+
+	@Override
+	public SubspaceDataPoint get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int i = head + index;
+		if (i >= points.length) i -= points.length;
+		return points[i];
+	}
+
+	/**
+	 * Decay weight of a point at the window time, as DataPoint.updateWeight()
+	 * would set it. The point is not modified.
+	 *
+	 * @param point
+	 * @return
+	 */
+	public double getWeight(SubspaceDataPoint point) {
+		return Math.pow(2, (-1.0) * decayRate * (timestamp - point.getTimestamp()));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < points.length; i++) {
+			points[i] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+}
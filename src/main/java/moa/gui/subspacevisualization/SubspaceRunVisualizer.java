@@ -351,40 +351,18 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                                 
                 // Train micro-clusterers
                 if (m_settingChecked1) {
-                	SubspaceInstance trainInst1 = new SubspaceInstance(point1);
 	                if (m_settingType1 == SubspaceClusteringAlgoPanel.SETTING_COMBINATION) {
-	                	if (m_microClusterer1.keepClassLabel()) {
-	                		trainInst1.setDataset(point1.dataset());
-	                	} else {
-	                		trainInst1.deleteAttributeAt(point1.classIndex());
-	                	}
-	                	m_microClusterer1.trainOnInstanceImpl(trainInst1);
+	                	m_microClusterer1.trainOnInstanceImpl(point1.getTrainingInstance(m_microClusterer1.keepClassLabel()));
 	                } else if (m_settingType1 == SubspaceClusteringAlgoPanel.SETTING_ONESTOP) {
-	                	if (m_onestopClusterer1.keepClassLabel()) {
-	                		trainInst1.setDataset(point1.dataset());
-	                	} else {
-	                		trainInst1.deleteAttributeAt(point1.classIndex());
-	                	}
-	                	m_onestopClusterer1.trainOnInstanceImpl(trainInst1);
+	                	m_onestopClusterer1.trainOnInstanceImpl(point1.getTrainingInstance(m_onestopClusterer1.keepClassLabel()));
 	                }
                 }
                 
                 if (m_settingChecked2) {
-                	SubspaceInstance trainInst2 = new SubspaceInstance(point2);
 	                if (m_settingType2 == SubspaceClusteringAlgoPanel.SETTING_COMBINATION) {
-	                	if (m_microClusterer2.keepClassLabel()) {
-	                		trainInst2.setDataset(point2.dataset());
-	                	} else {
-	                		trainInst2.deleteAttributeAt(point2.classIndex());
-	                	}
-	                	m_microClusterer2.trainOnInstanceImpl(nextInstance);
+	                	m_microClusterer2.trainOnInstanceImpl(point2.getTrainingInstance(m_microClusterer2.keepClassLabel()));
 	                } else if (m_settingType2 == SubspaceClusteringAlgoPanel.SETTING_ONESTOP) {
-	                	if (m_onestopClusterer2.keepClassLabel()) {
-	                		trainInst2.setDataset(point2.dataset());
-	                	} else {
-	                		trainInst2.deleteAttributeAt(point2.classIndex());
-	                	}
-	                	m_onestopClusterer2.trainOnInstanceImpl(nextInstance);
+	                	m_onestopClusterer2.trainOnInstanceImpl(point2.getTrainingInstance(m_onestopClusterer2.keepClassLabel()));
 	                }
                 }
                 
@@ -131,10 +131,11 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
     	List<Cluster> foundClusters = clustering.getClustering();
     	double inclusionProbabilityThreshold = 0.5;
     	for (SubspaceDataPoint p : points) {
+    		boolean[] pointSubspace = p.getSubspace();
     		for (int i = 0; i < foundClusters.size(); i++) {
     			Cluster fc = foundClusters.get(i);
     			if (fc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
-    				if (p.getSubspace()[getActiveXDim()] == true || p.getSubspace()[getActiveYDim()] == true) {
+    				if (pointSubspace[getActiveXDim()] == true || pointSubspace[getActiveYDim()] == true) {
     					SubspacePointPanel pointPanel = new SubspacePointPanel(p, this, color);
     			    	layerMacro.add(pointPanel);
     			        pointPanel.updateLocation();
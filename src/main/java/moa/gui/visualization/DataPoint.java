@@ -23,7 +23,7 @@ public class DataPoint extends DenseInstance{
 	private static final long serialVersionUID = 1L;
 	
 	protected int timestamp;
-    private HashMap<String, String> measure_values;
+    private HashMap<String, String> measure_values;		// Created on first use
     
     protected int noiseLabel;
 
@@ -31,7 +31,6 @@ public class DataPoint extends DenseInstance{
         super(nextInstance);
         this.setDataset(nextInstance.dataset());
         this.timestamp = timestamp;
-        measure_values = new HashMap<String, String>();
         
         Attribute classLabel = dataset().classAttribute();
         noiseLabel = classLabel.indexOfValue("noise");		// -1 returned if there is no noise
@@ -41,25 +40,38 @@ public class DataPoint extends DenseInstance{
         setWeight(Math.pow(2,(-1.0)*decay_rate*(cur_timestamp-timestamp)));
     }
 
+    private synchronized HashMap<String, String> measureValues(){
+        if(measure_values == null)
+            measure_values = new HashMap<String, String>();
+        return measure_values;
+    }
+
     public void setMeasureValue(String measureKey, double value){
-        synchronized(measure_values){
-            measure_values.put(measureKey, Double.toString(value));
+        HashMap<String, String> values = measureValues();
+        synchronized(values){
+            values.put(measureKey, Double.toString(value));
         }
     }
 
     public void setMeasureValue(String measureKey,String value){
-        synchronized(measure_values){
-            measure_values.put(measureKey, value);
+        HashMap<String, String> values = measureValues();
+        synchronized(values){
+            values.put(measureKey, value);
         }
     }
 
     public String getMeasureValue(String measureKey){
-        if(measure_values.containsKey(measureKey))
-            synchronized(measure_values){
-                return measure_values.get(measureKey);
-            }
-        else
+        HashMap<String, String> values;
+        synchronized(this){
+            values = measure_values;
+        }
+        if(values == null)
             return "";
+        synchronized(values){
+            if(values.containsKey(measureKey))
+                return values.get(measureKey);
+        }
+        return "";
     }
 
     public int getTimestamp(){
@@ -85,15 +97,16 @@ public class DataPoint extends DenseInstance{
         sb.append("<b>Evaluation</b><br>");
         sb.append("<table>");
 
+        HashMap<String, String> values = measureValues();
         TreeSet<String> sortedset;
-        synchronized(measure_values){
-            sortedset = new TreeSet<String>(measure_values.keySet());
+        synchronized(values){
+            sortedset = new TreeSet<String>(values.keySet());
         }
 
         Iterator miterator = sortedset.iterator();
          while(miterator.hasNext()) {
              String key = (String)miterator.next();
-             sb.append("<tr><td>"+key+"</td><td>"+measure_values.get(key)+"</td></tr>");
+             sb.append("<tr><td>"+key+"</td><td>"+values.get(key)+"</td></tr>");
          }
 
         sb.append("</table></html>");
@@ -51,13 +51,7 @@ public class Evaluator {
             pointBuffer.add(point);
 
             // Train clusterers
-            SubspaceInstance trainInst = new SubspaceInstance(point);
-            if (clusterer.keepClassLabel()) {
-                trainInst.setDataset(point.dataset());
-            } else {
-                trainInst.deleteAttributeAt(point.classIndex());
-            }
-            if(alsoTrainOn) clusterer.trainOnInstance(trainInst);
+            if(alsoTrainOn) clusterer.trainOnInstance(point.getTrainingInstance(clusterer.keepClassLabel()));
         }
 
         SubspaceClustering result = clusterer.getClusteringForEvaluation();
@@ -17,6 +17,49 @@ public class RCompatibleDataStream {
         }
         return res;
     }
+    /**
+     * The next n points as one flat row-major matrix of n rows and
+     * numAtts + 1 columns (attribute values, class value), i.e. the rows of
+     * getPoints(n). In R: matrix(x, nrow = n, byrow = TRUE)
+     */
+    public double[] getPointsFlat(int n) {
+        int numberDims = this.stream.numAttsOption.getValue();
+        double[] res = new double[n * (numberDims + 1)];
+        if (this.stream instanceof RandomRBFSubspaceGeneratorEvents) {
+            ((RandomRBFSubspaceGeneratorEvents) this.stream).nextBatch(n, res, null);
+        } else {
+            for(int i = 0; i < n; i++) {
+                double[] point = this.stream.nextInstance().toDoubleArray();
+                System.arraycopy(point, 0, res, i * (numberDims + 1), numberDims + 1);
+            }
+        }
+        return res;
+    }
+    /**
+     * Same as getPointsFlat(n) with the class labels of the numAtts dimensions
+     * appended to each row (2 * numAtts + 1 columns).
+     */
+    public double[] getPointsWithLabelsFlat(int n) {
+        int numberDims = this.stream.numAttsOption.getValue();
+        int width = 2 * numberDims + 1;
+        double[] res = new double[n * width];
+        if (this.stream instanceof RandomRBFSubspaceGeneratorEvents) {
+            double[] values = new double[n * (numberDims + 1)];
+            double[] labels = new double[n * numberDims];
+            ((RandomRBFSubspaceGeneratorEvents) this.stream).nextBatch(n, values, labels);
+            for(int i = 0; i < n; i++) {
+                System.arraycopy(values, i * (numberDims + 1), res, i * width, numberDims + 1);
+                System.arraycopy(labels, i * numberDims, res, i * width + numberDims + 1, numberDims);
+            }
+        } else {
+            for(int i = 0; i < n; i++) {
+                SubspaceInstance inst = this.stream.nextInstance();
+                System.arraycopy(inst.toDoubleArray(), 0, res, i * width, numberDims + 1);
+                System.arraycopy(inst.getClassLabels(), 0, res, i * width + numberDims + 1, numberDims);
+            }
+        }
+        return res;
+    }
     public int getNumAtts() {
         return this.stream.numAttsOption.getValue();
     }
@@ -0,0 +1,302 @@
+/**
+ * [CachedRandomRBFSubspaceGeneratorEvents.java] for Subspace MOA
+ *
+ * RandomRBFSubspaceGeneratorEvents that materializes its first instances to a
+ * cache directory once and replays them from there afterwards, e.g. to compare
+ * several algorithms on exactly the same stream without generating it again.
+ *
+ * A cache entry is keyed by the generation options (seeds included; not the decay
+ * and evaluation settings or the cache options) and consists of
+ * - <key>.sbin:   instances in the binary subspace format (see SubspaceBinaryStreamWriter),
+ *                 replayed memory-mapped by a SubspaceBinaryStream,
+ * - <key>.events: the cluster events, fired again before the instance they preceded.
+ *
+ * The events file is written last, so an entry without it (interrupted run) is
+ * generated again. An entry with fewer instances than requested is replaced.
+ * While replaying, the generator itself is restarted as well, so its kernels
+ * (getGeneratingClusters()) are in the initial state whether or not the entry
+ * was just materialized.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+import moa.core.InstancesHeader;
+import moa.core.SubspaceInstance;
+import moa.options.IntOption;
+import moa.options.Option;
+import moa.options.StringOption;
+
+public class CachedRandomRBFSubspaceGeneratorEvents extends RandomRBFSubspaceGeneratorEvents {
+
+	private static final long serialVersionUID = 1L;
+	private boolean debug = false;
+
+	public static final int EVENTS_MAGIC = 0x53534531;		// "SSE1"
+	public static final int EVENTS_VERSION = 1;
+
+	public StringOption cacheDirectoryOption = new StringOption("cacheDirectory", 'c',
+			"Directory of the materialized streams.", "cache");
+
+	public IntOption cachedInstancesOption = new IntOption("cachedInstances", 'l',
+			"Number of instances to materialize (and replay).", 100000, 1, Integer.MAX_VALUE);
+
+	/* Replay */
+	private transient SubspaceBinaryStream replay;
+	private transient ArrayList<ClusterEvent> events;
+	private int nextEventIndex;
+	private long numReplayedInstances;
+
+	/* Materialization */
+	private transient boolean materializing = false;
+
+
+	public CachedRandomRBFSubspaceGeneratorEvents() {
+
+	}
+
+	@Override
+	public void restart() {
+		String key = getCacheKey();
+		File directory = new File(cacheDirectoryOption.getValue());
+		String name = "rbfsubspace-" + digest(key);
+		File dataFile = new File(directory, name + ".sbin");
+		File eventsFile = new File(directory, name + ".events");
+
+		replay = null;
+		try {
+			events = readEvents(eventsFile, key);
+			if (events == null) {
+				if (!directory.isDirectory() && !directory.mkdirs()) {
+					throw new IOException("Cannot create cache directory " + directory);
+				}
+				if (debug) System.out.println("CachedRandomRBFSubspaceGeneratorEvents: materializing "
+						+ cachedInstancesOption.getValue() + " instances to " + dataFile);
+				materialize(dataFile, eventsFile, key);
+				events = readEvents(eventsFile, key);
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException("CachedRandomRBFSubspaceGeneratorEvents: cache failed.", ioe);
+		}
+
+		super.restart();
+		replay = new SubspaceBinaryStream();
+		replay.binaryFileOption.setValue(dataFile.getPath());
+		replay.prepareForUse();
+		nextEventIndex = 0;
+		numReplayedInstances = 0;
+	}
+
+	/**
+	 * The generation options in CLI form.
+	 */
+	public String getCacheKey() {
+		StringBuilder sb = new StringBuilder(RandomRBFSubspaceGeneratorEvents.class.getName());
+		for (Option option : getOptions().getOptionArray()) {
+			if (isGenerationOption(option)) {
+				sb.append(" -").append(option.getCLIChar()).append(' ').append(option.getValueAsCLIString());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return false for options that do not change the generated instances
+	 */
+	private boolean isGenerationOption(Option option) {
+		return option != cacheDirectoryOption && option != cachedInstancesOption
+				&& option != decayHorizonOption && option != decayThresholdOption
+				&& option != evaluationFrequencyOption && option != subEvaluationOption
+				&& option != subEvaluationFrequencyOption;
+	}
+
+	private static String digest(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(key.hashCode());
+		} catch (IOException e) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+
+
+	/** Materialization **/
+
+	private void materialize(File dataFile, File eventsFile, String key) throws IOException {
+		eventsFile.delete();
+		super.restart();
+		events = new ArrayList<ClusterEvent>();
+		long numInstances = cachedInstancesOption.getValue();
+
+		// Instances: the header is written afterwards, as creation events add class values
+		File partFile = new File(dataFile.getPath() + ".part");
+		SubspaceBinaryStreamWriter writer = new SubspaceBinaryStreamWriter(partFile, getHeader());
+		materializing = true;
+		try {
+			for (long i = 0; i < numInstances; i++) {
+				writer.write(super.nextInstance());
+			}
+		} finally {
+			materializing = false;
+			writer.close();
+		}
+
+		SubspaceBinaryStreamWriter headerWriter = new SubspaceBinaryStreamWriter(dataFile, getHeader());
+		headerWriter.close();
+		long dataBytes = numInstances * SubspaceBinaryStreamWriter.recordSize(getHeader().numAttributes());
+		FileInputStream in = new FileInputStream(partFile);
+		FileOutputStream out = new FileOutputStream(dataFile, true);
+		try {
+			FileChannel source = in.getChannel();
+			FileChannel target = out.getChannel();
+			long position = source.size() - dataBytes;
+			while (position < source.size()) {
+				position += source.transferTo(position, source.size() - position, target);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		partFile.delete();
+
+		// Events
+		DataOutputStream eventsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(eventsFile)));
+		try {
+			eventsOut.writeInt(EVENTS_MAGIC);
+			eventsOut.writeInt(EVENTS_VERSION);
+			eventsOut.writeUTF(key);
+			eventsOut.writeLong(numInstances);
+			eventsOut.writeInt(events.size());
+			for (ClusterEvent e : events) {
+				eventsOut.writeLong(e.getTimestamp());
+				eventsOut.writeUTF(e.getType());
+				eventsOut.writeUTF(e.getMessage());
+			}
+		} finally {
+			eventsOut.close();
+		}
+	}
+
+	/**
+	 * @return the events of a complete cache entry for 'key' with enough instances, null otherwise
+	 */
+	private ArrayList<ClusterEvent> readEvents(File eventsFile, String key) throws IOException {
+		if (!eventsFile.isFile()) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(eventsFile)));
+		try {
+			if (in.readInt() != EVENTS_MAGIC || in.readInt() != EVENTS_VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			if (in.readLong() < cachedInstancesOption.getValue()) {
+				return null;
+			}
+			int numEvents = in.readInt();
+			ArrayList<ClusterEvent> result = new ArrayList<ClusterEvent>(numEvents);
+			for (int i = 0; i < numEvents; i++) {
+				long timestamp = in.readLong();
+				String type = in.readUTF();
+				String message = in.readUTF();
+				result.add(new ClusterEvent(this, timestamp, type, message));
+			}
+			return result;
+		} catch (EOFException e) {		// Truncated entry
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	protected void fireClusterChange(long timestamp, String type, String message) {
+		if (materializing) {
+			events.add(new ClusterEvent(this, timestamp, type, message));
+		} else {
+			super.fireClusterChange(timestamp, type, message);
+		}
+	}
+
+
+	/** Replay **/
+
+	@Override
+	public boolean hasMoreInstances() {
+		return numReplayedInstances < cachedInstancesOption.getValue() && replay.hasMoreInstances();
+	}
+
+	@Override
+	public long estimatedRemainingInstances() {
+		return cachedInstancesOption.getValue() - numReplayedInstances;
+	}
+
+	@Override
+	public SubspaceInstance nextInstance() {
+		if (!hasMoreInstances()) {
+			return null;
+		}
+		numReplayedInstances++;
+
+		// Events fired while generating this instance
+		while (nextEventIndex < events.size() && events.get(nextEventIndex).getTimestamp() <= numReplayedInstances) {
+			ClusterEvent e = events.get(nextEventIndex++);
+			super.fireClusterChange(e.getTimestamp(), e.getType(), e.getMessage());
+		}
+		return replay.nextInstance();
+	}
+
+	@Override
+	public void nextBatch(int n, double[] values, double[] labels) {
+		int numAtts = numAttsOption.getValue();
+		if (values.length < (long) n * (numAtts + 1) || (labels != null && labels.length < (long) n * numAtts)) {
+			throw new IllegalArgumentException("nextBatch: arrays too short for " + n + " instances");
+		}
+
+		for (int i = 0; i < n; i++) {
+			SubspaceInstance inst = nextInstance();
+			if (inst == null) {
+				throw new IllegalStateException("nextBatch: only " + i + " of " + n + " instances left in the cache");
+			}
+			for (int j = 0; j <= numAtts; j++) {
+				values[i * (numAtts + 1) + j] = inst.value(j);
+			}
+			if (labels != null) {
+				System.arraycopy(inst.getClassLabels(), 0, labels, i * numAtts, numAtts);
+			}
+		}
+	}
+
+	@Override
+	public InstancesHeader getHeader() {
+		if (replay != null && !materializing) {
+			return replay.getHeader();
+		}
+		return super.getHeader();
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Generates a random radial basis function stream (subspace-based) once and replays it from a cache file.";
+	}
+}
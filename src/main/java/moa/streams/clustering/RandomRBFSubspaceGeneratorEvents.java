@@ -122,10 +122,18 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
     /* Variables: Instances */
     protected Random instanceRandom;
     private int numGeneratedInstances;
+    private double[] noiseClassLabels;		// Shared by all pure noise instances
+    private transient double[] sampleBuffer;	// Kernel samples for nextBatch
     private AutoExpandVector<Double>[] inClusterRangeSize;
     private AutoExpandVector<Double>[] inClusterRangeCoord;
     private double inClusterRangeSizeSum;
     
+    /* Variables: Kernel lookup (rebuilt lazily after kernel changes) */
+    private transient double[] cumulativeWeights;		// Running weight sums of kernels with positive weight
+    private transient int[] cumulativeKernels;			// Kernel index of each entry
+    private static final double BOUNDARY_TOLERANCE = 1e-9;	// Closer to a running sum: repeat the linear scan
+    private transient SubspaceSphereCluster[][] relevantKernels;	// Per dimension: kernels relevant in it, in kernel order
+    
     /* Variables: Cluster moves */
     private int kernelMovePointFrequency = 10;		// Step size
     private double maxDistanceMoveThresholdByStep = 0.01;
@@ -170,16 +178,18 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 		if (debug) System.out.println("----- RandomRBFSubspaceGeneratorEvents.restart() -----");
 		modelRandom = new Random(modelRandomSeedOption.getValue());
 		instanceRandom = new Random(instanceRandomSeedOption.getValue());
+        numActiveKernels = 0;		// Before choosing the first event, as in a new generator
         nextEventCounter = eventFrequencyOption.getValue();
         nextEventChoice = getNextEvent();
         numGeneratedInstances = 0;
         clusterIdCounter = 0;
         noiseId = numClusterOption.getValue();		// The last index is for noise
+        noiseClassLabels = null;
         mergeClusterA = mergeClusterB = null;
         if (debug) System.out.println("parameters set");
         
-        numActiveKernels = 0;
         kernels = new AutoExpandVector<GeneratorSubspaceCluster>();
+        invalidateKernelLookup();
         initKernels();
         if (debug) System.out.println("----- RandomRBFSubspaceGeneratorEvents.restart() /////");
 	}
@@ -228,49 +238,20 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 	
 	@Override
     public SubspaceInstance nextInstance() {
-    	numGeneratedInstances++;	// Timeline is extended
-        eventScheduler();			// Event processing
-
-        // Initializations
-        double[] values = null;
+        int numAtts = numAttsOption.getValue();
+        double[] values = new double[numAtts + 1];		// +1 for class label
         double[] classLabels = null;
-        int clusterChoice = -1;
-        double chosenLabel = -1;
         
-        // Fill in the attribute values / class labels
-        if (instanceRandom.nextDouble() > noiseLevelOption.getValue()) {	// From generator cluster
-			clusterChoice = chooseWeightedElement();	// TODO: From one or more kernels
-            SubspaceSphereCluster generator = kernels.get(clusterChoice).generator;
-            values = generator.sample(instanceRandom).toDoubleArray();
-            boolean[] curSubspace = generator.getSubspace();
-		            
-            chosenLabel = generator.getId();
-        	classLabels = new double[numAttsOption.getValue()];
-        	for (int j = 0; j < classLabels.length; j++) {
-            	if (curSubspace[j]) {
-            		classLabels[j] = chosenLabel;
-            	} else {
-            		classLabels[j] = noiseId;	// Noise label by default
-            		for (int i = 0; i < kernels.size(); i++) {
-            			SubspaceSphereCluster otherGenerator = kernels.get(i).generator;
-            			if (otherGenerator.boundaryCheck(values[j], j)) {
-            				classLabels[j] = otherGenerator.getId();	// If it's in another cluster, label of that cluster
-            				break;
-	            		}
-            		}
-            	}
-            }            
+        int clusterChoice = generateValues(values, 0);
+        if (clusterChoice != -1) {
+        	classLabels = new double[numAtts];
+        	fillClassLabels(clusterChoice, values, 0, classLabels, 0);
         } else {	// Pure noise
-            values = getNoisePoint();
-            classLabels = new double[numAttsOption.getValue()];
-            for (int j = 0; j < classLabels.length; j++) {
-            	classLabels[j] = noiseId;
+            if (noiseClassLabels == null) {
+            	noiseClassLabels = new double[numAtts];
+            	Arrays.fill(noiseClassLabels, noiseId);
             }
-        }
-
-        // Abnormal value detection
-        if (Double.isNaN(values[0])) {
-            System.out.println("Instance corrupted: " + numGeneratedInstances);
+            classLabels = noiseClassLabels;
         }
         
         // Construct an "Instance"
@@ -284,58 +265,249 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         return inst;
     }
     
+    /**
+     * Generate the next 'n' instances into flat arrays, without creating instance objects.
+     * The instances (and fired cluster events) are the same as those of 'n' calls of
+     * nextInstance(); batches and single instances can be mixed.
+     * 
+     * Instance i is written as
+     *   values[i * (numAtts + 1) + j], j < numAtts: attribute values,
+     *   values[i * (numAtts + 1) + numAtts]: class value,
+     *   labels[i * numAtts + j]: class label of dimension j.
+     * 
+     * @param n - number of instances
+     * @param values - at least n * (numAtts + 1) long
+     * @param labels - at least n * numAtts long, or null if not needed
+     */
+    public void nextBatch(int n, double[] values, double[] labels) {
+    	int numAtts = numAttsOption.getValue();
+    	if (values.length < (long) n * (numAtts + 1) || (labels != null && labels.length < (long) n * numAtts)) {
+    		throw new IllegalArgumentException("nextBatch: arrays too short for " + n + " instances");
+    	}
+    	
+    	for (int i = 0; i < n; i++) {
+    		int valuesOffset = i * (numAtts + 1);
+    		int clusterChoice = generateValues(values, valuesOffset);
+    		if (labels != null) {
+    			int labelsOffset = i * numAtts;
+    			if (clusterChoice != -1) {
+    				fillClassLabels(clusterChoice, values, valuesOffset, labels, labelsOffset);
+    			} else {
+    				Arrays.fill(labels, labelsOffset, labelsOffset + numAtts, noiseId);
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Generate the attribute values and the class value of the next instance.
+     * 
+     * @param values - buffer for numAtts + 1 values
+     * @param offset - position of the first value in the buffer
+     * @return index of the generating kernel, -1 for noise
+     */
+    private int generateValues(double[] values, int offset) {
+    	numGeneratedInstances++;	// Timeline is extended
+        eventScheduler();			// Event processing
+        
+        int numAtts = numAttsOption.getValue();
+        int clusterChoice = -1;
+        
+        // Fill in the attribute values
+        if (instanceRandom.nextDouble() > noiseLevelOption.getValue()) {	// From generator cluster
+			clusterChoice = chooseWeightedElement();	// TODO: From one or more kernels
+            SubspaceSphereCluster generator = kernels.get(clusterChoice).generator;
+            if (offset == 0) {
+            	generator.sample(instanceRandom, values);
+            } else {
+            	if (sampleBuffer == null)
+            		sampleBuffer = new double[numAtts];
+            	generator.sample(instanceRandom, sampleBuffer);
+            	System.arraycopy(sampleBuffer, 0, values, offset, numAtts);
+            }
+            values[offset + numAtts] = generator.getId();
+        } else {	// Pure noise
+            fillNoisePoint(values, offset);
+        }
+
+        // Abnormal value detection
+        if (Double.isNaN(values[offset])) {
+            System.out.println("Instance corrupted: " + numGeneratedInstances);
+        }
+        
+        return clusterChoice;
+    }
+    
+    /**
+     * Class labels of a point generated by a kernel: the kernel's label in its
+     * subspace, elsewhere the label of another cluster containing the value, or noise.
+     * 
+     */
+    private void fillClassLabels(int clusterChoice, double[] values, int valuesOffset, double[] labels, int labelsOffset) {
+    	SubspaceSphereCluster generator = kernels.get(clusterChoice).generator;
+    	double chosenLabel = generator.getId();
+    	int numAtts = numAttsOption.getValue();
+    	for (int j = 0; j < numAtts; j++) {
+        	if (generator.isRelevant(j)) {
+        		labels[labelsOffset + j] = chosenLabel;
+        	} else {
+        		labels[labelsOffset + j] = getDimensionLabel(values[valuesOffset + j], j);
+        	}
+        }
+    }
+    
     /**
      * Randomly choose a kernel index.
+     * Binary search over the cumulative kernel weights; takes one random number
+     * like the former linear scan and chooses the same kernel. Where r is so close
+     * to a cumulative weight that the rounding of the running sum could decide,
+     * the linear scan itself is repeated.
      * 
      * @return kernel index
      */
     private int chooseWeightedElement() {
         double r = instanceRandom.nextDouble();
-
-        // Determine index of chosen element
+        
+        if (cumulativeWeights == null) {
+        	buildCumulativeWeights();
+        }
+        
+        // First entry whose running sum reaches r
+        int lo = 0;
+        int hi = cumulativeWeights.length - 1;
+        while (lo < hi) {
+        	int mid = (lo + hi) >>> 1;
+        	if (cumulativeWeights[mid] < r)
+        		lo = mid + 1;
+        	else
+        		hi = mid;
+        }
+        if (Math.abs(cumulativeWeights[lo] - r) < BOUNDARY_TOLERANCE
+        		|| (lo > 0 && Math.abs(cumulativeWeights[lo - 1] - r) < BOUNDARY_TOLERANCE)) {
+        	return chooseWeightedElementLinear(r);
+        }
+        return cumulativeKernels[lo];	// Rounding: r beyond the total sum takes the last kernel
+    }
+    
+    /**
+     * The former linear scan: subtract the kernel weights from r until it is used up.
+     */
+    private int chooseWeightedElementLinear(double r) {
         int i = 0;
-        while (r > 0.0) {
-            r -= kernels.get(i).generator.getWeight();
+        while (r > 0.0 && i < kernels.size()) {
+            SubspaceSphereCluster generator = kernels.get(i).generator;
+            if (generator != null)
+            	r -= generator.getWeight();
             i++;
         }
-        i--;	// Overcounted once
-        //System.out.println(i);
-        return i;
+        return Math.max(i - 1, 0);
+    }
+    
+    private void buildCumulativeWeights() {
+    	int numPositive = 0;
+    	for (int i = 0; i < kernels.size(); i++) {
+    		SubspaceSphereCluster generator = kernels.get(i).generator;
+    		if (generator != null && generator.getWeight() > 0)
+    			numPositive++;
+    	}
+    	
+    	cumulativeWeights = new double[numPositive];
+    	cumulativeKernels = new int[numPositive];
+    	double sum = 0.0;
+    	int k = 0;
+    	for (int i = 0; i < kernels.size(); i++) {
+    		SubspaceSphereCluster generator = kernels.get(i).generator;
+    		if (generator != null && generator.getWeight() > 0) {
+    			sum += generator.getWeight();
+    			cumulativeWeights[k] = sum;
+    			cumulativeKernels[k] = i;
+    			k++;
+    		}
+    	}
+    }
+    
+    /**
+     * Label of an irrelevant dimension value: the first kernel (in kernel order)
+     * containing the value in its relevant dimension 'dim', noise otherwise.
+     * Only the kernels relevant in 'dim' are tested; their boundaries are read
+     * directly, so kernel moves need no rebuild.
+     * 
+     * @param value
+     * @param dim
+     * @return class label
+     */
+    private double getDimensionLabel(double value, int dim) {
+    	if (relevantKernels == null) {
+    		buildRelevantKernels();
+    	}
+    	SubspaceSphereCluster[] candidates = relevantKernels[dim];
+    	for (int i = 0; i < candidates.length; i++) {
+    		SubspaceSphereCluster kernel = candidates[i];
+    		double c = kernel.getCenterRef()[dim];
+    		double radius = kernel.getRadius();
+    		if (value > c - radius && value < c + radius)	// boundaryCheck(value, dim)
+    			return kernel.getId();
+    	}
+    	return noiseId;
+    }
+    
+    private void buildRelevantKernels() {
+    	int numDims = numAttsOption.getValue();
+    	relevantKernels = new SubspaceSphereCluster[numDims][];
+    	ArrayList<SubspaceSphereCluster> candidates = new ArrayList<SubspaceSphereCluster>();
+    	for (int j = 0; j < numDims; j++) {
+    		candidates.clear();
+    		for (int i = 0; i < kernels.size(); i++) {
+    			SubspaceSphereCluster kernel = kernels.get(i).generator;
+    			if (kernel != null && kernel.isRelevant(j))
+    				candidates.add(kernel);
+    		}
+    		relevantKernels[j] = candidates.toArray(new SubspaceSphereCluster[candidates.size()]);
+    	}
+    }
+    
+    /**
+     * Drop the kernel lookup tables. Must be called whenever kernels are added or
+     * removed, or their weights or subspaces change (moves and radius changes are
+     * read directly).
+     * 
+     */
+    private void invalidateKernelLookup() {
+    	cumulativeWeights = null;
+    	cumulativeKernels = null;
+    	relevantKernels = null;
     }
     
     /**
      * Randomly generate a noise point.
      * 
-     * @return noise point
+     * @param sample - buffer for numAtts + 1 values (+1 for class label)
+     * @param offset - position of the first value in the buffer
      */
-    private double[] getNoisePoint() {
-        double [] sample = new double [numAttsOption.getValue() + 1];	// +1 for class label
-        
+    private void fillNoisePoint(double[] sample, int offset) {
         if (noiseInClusterOption.isSet()) {
            	// Generate a random point
             for (int j = 0; j < numAttsOption.getValue(); j++) {
-                sample[j] = instanceRandom.nextDouble();
+                sample[offset + j] = instanceRandom.nextDouble();
             }
         } else {
         	for (int j = 0; j < numAttsOption.getValue(); j++) {
-        		sample[j] = instanceRandom.nextDouble() * (1 - inClusterRangeSizeSum);
+        		double value = instanceRandom.nextDouble() * (1 - inClusterRangeSizeSum);
         		
         		double blockSum = 0.0;		// Shifting amount
         		for (int k = 0; k < inClusterRangeCoord[j].size(); k++) {
         			double coord = inClusterRangeCoord[j].get(k);
-        			if (coord < sample[j])
+        			if (coord < value)
         				blockSum += inClusterRangeSize[j].get(k);
-        			else if (coord == sample[j])	// Should not be on the boundary coord. Adjust a little bit.
-        				sample[j] -= Double.MIN_VALUE;
+        			else if (coord == value)	// Should not be on the boundary coord. Adjust a little bit.
+        				value -= Double.MIN_VALUE;
         		}
-        		sample[j] += blockSum;
+        		sample[offset + j] = value + blockSum;
         	}
         }
         
         // Noise label
-        sample[numAttsOption.getValue()] = numClusterOption.getValue();
-        
-        return sample;
+        sample[offset + numAttsOption.getValue()] = numClusterOption.getValue();
     }
     
 
@@ -700,6 +872,9 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
      * 
      */
     protected void updateNoiseInterval() {
+    	if (noiseInClusterOption.isSet()) {
+    		return;		// Noise points are drawn from the whole space
+    	}
     	
     	/* Cluster range boundary. Pair of two doubles. */
         class Boundary {
@@ -918,6 +1093,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         	// Remove this cluster
         	if (killTimer == 0) {
                 kernels.remove(this);
+                invalidateKernelLookup();
             } else if (killTimer > 0) {
                 killTimer--;	// Getting old
             }
@@ -987,12 +1163,14 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 	            				List<Integer> relevantDims = generator.getRelevantDims();
 	            				int dimToBeAdded = relevantDims.get(instanceRandom.nextInt(relevantDims.size() - 1));
 	            				generator.setRelevantDim(dimToBeAdded, true);
+	            				invalidateKernelLookup();
 	            			}           			
 	            		} else {			// Remove a dimensions from subspace
 	            			if (curSubspaceSize > 2) {
 	            				List<Integer> irrelevantDims = generator.getRelevantDims();
 	            				int dimToBeRemoved = irrelevantDims.get(instanceRandom.nextInt(irrelevantDims.size() - 1));
 	            				generator.setRelevantDim(dimToBeRemoved, false);
+	            				invalidateKernelLookup();
 	            			}
 	            		}
 	            		
@@ -1184,6 +1362,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         for (int i = 0; i < kernels.size(); i++) {
             kernels.get(i).generator.setWeight(kernels.get(i).generator.getWeight() / sumWeights);
         }
+        invalidateKernelLookup();
     }
     
     public Clustering getMicroClustering(){
@@ -10,24 +10,33 @@
 package moa.streams.clustering;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 
 import moa.core.InputStreamProgressMonitor;
+import moa.core.InstancesHeader;
 import moa.core.ObjectRepository;
 import moa.core.SubspaceInstance;
 import moa.options.FileOption;
 import moa.options.FlagOption;
 import moa.options.IntOption;
 import moa.options.ListOption;
+import moa.options.MultiChoiceOption;
 import moa.options.Option;
 import moa.tasks.TaskMonitor;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -53,7 +62,21 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
     public FlagOption normalizeOption = 
     		new FlagOption("normalize", 'n', 
     				"Numerical data will be normalized to 0-1 " +
-    				"for the visualization to work. The complete arff file needs to be read upfront.");
+    				"for the visualization to work. The complete arff file needs to be read upfront " +
+    				"unless an online normalization mode is chosen.");
+    
+    public MultiChoiceOption normalizationModeOption = new MultiChoiceOption("normalizationMode", 'N',
+    		"How the min/max values for normalization are obtained.",
+    		new String[] {"scan", "cached", "online", "warmup"},
+    		new String[] {"Full pass over the file on every restart",
+    					  "Full pass over the file, kept in a sidecar file (<arffFile>.minmax) " +
+    						"and reused while the file size and modification time are unchanged",
+    					  "Running min/max of the instances read so far (no upfront pass)",
+    					  "Min/max of the first normalizationWarmup instances, then fixed (no full pass)"}, 0);
+    
+    public IntOption normalizationWarmupOption = new IntOption("normalizationWarmup", 'w',
+    		"Number of instances the min/max values are taken from in the warmup normalization mode.",
+    		1000, 1, Integer.MAX_VALUE);
 
     public ListOption removeAttributesOption = new ListOption("removeAttributes", 'r',
             "Attributes to remove. Enter comma seperated list, " +
@@ -76,7 +99,10 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	/* Preprocessing */
 	private Integer[] removeAttributes = null;				// Filtering: duplicates, invalid attributes
 	private Instances filteredDataset = null;				// After filtering
-	private ArrayList<Double[]> valuesMinMaxDiff = null;	// For normalization
+	private double[][] valuesMinMaxDiff = null;			// For normalization: [attribute][min, max, diff]
+	private String valuesMinMaxDiffKey = null;				// File state and filter the values belong to
+	private LinkedList<Instance> warmupInstances = null;	// Read ahead for the warmup normalization mode
+	private HashMap<Double, double[]> classLabelsByValue = new HashMap<Double, double[]>();	// Interned label arrays
 	
 	/* Instances */
 	protected Instances instances;
@@ -144,6 +170,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 			
 			// Extracting instances from the file
 			instances = new Instances(fileReader, 1);
+			classLabelsByValue.clear();
 			if (classIndexOption.getValue() < 0) {
 				instances.setClassIndex(instances.numAttributes() - 1);
 			} else if (classIndexOption.getValue() > 0) {
@@ -174,11 +201,6 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 				}
 			}
 			
-			// Normalize if needed
-			if (normalizeOption.isSet()) {
-				valuesMinMaxDiff = readMinMaxDiffValues(attributesToBeRemoved);
-			}
-			
 			// Attributes to be removed (in an array, sequentially accessible)
 			removeAttributes = attributesToBeRemoved.toArray(new Integer[0]);
 			Arrays.sort(removeAttributes);
@@ -198,6 +220,13 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 			for (int i = removeAttributes.length - 1; i >= 0 ; i--) {
 				filteredDataset.deleteAttributeAt(removeAttributes[i]);
 			}
+			streamHeader = new InstancesHeader(filteredDataset);
+			
+			// Normalize if needed
+			warmupInstances = null;
+			if (normalizeOption.isSet()) {
+				prepareNormalization(attributesToBeRemoved);
+			}
 
 			// Initialize: instance-reading variables
 			this.numInstancesRead = 0;
@@ -210,8 +239,38 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	}
 
 	protected boolean readNextInstanceFromFile() {
-		try {			
-			if (this.instances.readInstance(this.fileReader)) {
+		Instance rawInstance;
+		if (warmupInstances != null && !warmupInstances.isEmpty()) {
+			rawInstance = warmupInstances.removeFirst();
+		} else {
+			rawInstance = readFilteredInstance();
+		}
+		if (rawInstance == null) {		// End of file
+			return false;
+		}
+		
+		// Normalize if needed
+		if (normalizeOption.isSet() && valuesMinMaxDiff != null) {
+			if (normalizationModeOption.getChosenIndex() == NORMALIZATION_ONLINE) {
+				updateMinMaxDiffValues(valuesMinMaxDiff, rawInstance);
+			}
+			rawInstance = normalize(rawInstance);
+		}
+		
+		// Set next instance
+		this.lastInstanceRead = rawInstance;
+		this.numInstancesRead++;
+		return true;
+	}
+	
+	/**
+	 * Read an instance from the file, without the removed attributes.
+	 * 
+	 * @return instance, or null at the end of the file
+	 */
+	protected Instance readFilteredInstance() {
+		try {
+			if (this.fileReader != null && this.instances.readInstance(this.fileReader)) {
 				Instance rawInstance = this.instances.instance(0);
 				
 				// Remove dataset from instance so we can delete attributes
@@ -220,25 +279,9 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 					rawInstance.deleteAttributeAt(removeAttributes[i]);	
 				}
 				rawInstance.setDataset(filteredDataset);
-
-				// Normalize if needed
-				if (normalizeOption.isSet() && valuesMinMaxDiff != null) {
-					for (int i = 0; i < rawInstance.numAttributes() ; i++) {
-						if (valuesMinMaxDiff.get(i)[2] != 1 &&		// Already normalized
-							valuesMinMaxDiff.get(i)[2] != 0 &&		// Max. value is 0 (unable to be normalized)
-							i != rawInstance.classIndex()) {		// Class label is not subject to be normalized
-							double v = rawInstance.value(i);
-							v = (v - valuesMinMaxDiff.get(i)[0]) / valuesMinMaxDiff.get(i)[2];
-							rawInstance.setValue(i, v);
-						}
-					}
-				}
 				
-				// Set next instance
-				this.lastInstanceRead = rawInstance;
 				this.instances.delete();	// Keep instances clean
-				this.numInstancesRead++;
-				return true;
+				return rawInstance;
 			}
 			
 			// End of file
@@ -247,7 +290,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 				this.fileReader = null;
 			}
 			
-			return false;
+			return null;
 			
 		} catch (IOException ioe) {
 			throw new RuntimeException(
@@ -255,12 +298,169 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 		}
 	}
 	
+	/**
+	 * Normalized copy of an instance (values are copied once, not per attribute).
+	 */
+	protected Instance normalize(Instance rawInstance) {
+		double[] values = rawInstance.toDoubleArray();
+		int classIndex = rawInstance.classIndex();
+		for (int i = 0; i < values.length; i++) {
+			double diff = valuesMinMaxDiff[i][2];
+			if (diff != 1 &&		// Already normalized
+				diff != 0 &&		// Max. value is 0 (unable to be normalized)
+				i != classIndex) {	// Class label is not subject to be normalized
+				values[i] = (values[i] - valuesMinMaxDiff[i][0]) / diff;
+			}
+		}
+		Instance normalized = new DenseInstance(rawInstance.weight(), values);
+		normalized.setDataset(rawInstance.dataset());
+		return normalized;
+	}
+	
+	
+	/** Normalization statistics **/
+	
+	private static final int NORMALIZATION_CACHED = 1;
+	private static final int NORMALIZATION_ONLINE = 2;
+	private static final int NORMALIZATION_WARMUP = 3;
+	
+	/**
+	 * Set up 'valuesMinMaxDiff' for the chosen normalization mode.
+	 * For the warmup mode, the first instances are read ahead into 'warmupInstances'.
+	 */
+	protected void prepareNormalization(HashSet<Integer> ignoredAttributes) {
+		int numAttributes = filteredDataset.numAttributes();
+		
+		switch (normalizationModeOption.getChosenIndex()) {
+		case NORMALIZATION_ONLINE:
+			valuesMinMaxDiff = newMinMaxDiffValues(numAttributes);
+			valuesMinMaxDiffKey = null;
+			break;
+			
+		case NORMALIZATION_WARMUP:
+			valuesMinMaxDiff = newMinMaxDiffValues(numAttributes);
+			valuesMinMaxDiffKey = null;
+			warmupInstances = new LinkedList<Instance>();
+			while (warmupInstances.size() < normalizationWarmupOption.getValue()) {
+				Instance instance = readFilteredInstance();
+				if (instance == null) break;
+				updateMinMaxDiffValues(valuesMinMaxDiff, instance);
+				warmupInstances.add(instance);
+			}
+			break;
+			
+		case NORMALIZATION_CACHED:
+			String key = minMaxDiffKey(ignoredAttributes);
+			if (valuesMinMaxDiff != null && key.equals(valuesMinMaxDiffKey)) {
+				break;		// Restart on the same file
+			}
+			valuesMinMaxDiff = readMinMaxDiffSidecar(key);
+			if (valuesMinMaxDiff == null) {
+				valuesMinMaxDiff = readMinMaxDiffValues(ignoredAttributes);
+				writeMinMaxDiffSidecar(key, valuesMinMaxDiff);
+			}
+			valuesMinMaxDiffKey = key;
+			break;
+			
+		default:
+			valuesMinMaxDiff = readMinMaxDiffValues(ignoredAttributes);
+			valuesMinMaxDiffKey = null;
+		}
+	}
+	
+	private static double[][] newMinMaxDiffValues(int numAttributes) {
+		double[][] values = new double[numAttributes][];
+		for (int i = 0; i < numAttributes; i++) {
+			values[i] = new double[] {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0};
+		}
+		return values;
+	}
+	
+	private static void updateMinMaxDiffValues(double[][] valuesMinMaxDiff, Instance instance) {
+		for (int i = 0; i < valuesMinMaxDiff.length; i++) {
+			double value = instance.value(i);
+			double[] v = valuesMinMaxDiff[i];
+			if (value < v[0]) v[0] = value;
+			if (value > v[1]) v[1] = value;
+			v[2] = v[1] - v[0];
+		}
+	}
+	
+	/**
+	 * The statistics depend on the file content and the removed attributes.
+	 */
+	private String minMaxDiffKey(HashSet<Integer> ignoredAttributes) {
+		File file = arffFileOption.getFile();
+		Integer[] ignored = ignoredAttributes.toArray(new Integer[0]);
+		Arrays.sort(ignored);
+		return file.length() + " " + file.lastModified() + " " + Arrays.toString(ignored);
+	}
+	
+	private File minMaxDiffSidecar() {
+		return new File(arffFileOption.getFile().getPath() + ".minmax");
+	}
+	
+	/**
+	 * @return cached values, or null if there is no sidecar file for this key
+	 */
+	private double[][] readMinMaxDiffSidecar(String key) {
+		File sidecar = minMaxDiffSidecar();
+		if (!sidecar.exists()) {
+			return null;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(sidecar));
+			if (!key.equals(reader.readLine())) {
+				return null;		// Stale
+			}
+			int numAttributes = Integer.parseInt(reader.readLine().trim());
+			double[][] values = new double[numAttributes][3];
+			for (int i = 0; i < numAttributes; i++) {
+				String[] fields = reader.readLine().split(" ");
+				for (int k = 0; k < 3; k++) {
+					values[i][k] = Double.parseDouble(fields[k]);
+				}
+			}
+			if (debug) System.out.println("Normalization values read from " + sidecar.getPath());
+			return values;
+		} catch (Exception e) {		// Unreadable sidecar: scan the file instead
+			if (debug) System.out.println("Ignoring normalization sidecar " + sidecar.getPath() + ": " + e);
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) { }
+			}
+		}
+	}
+	
+	private void writeMinMaxDiffSidecar(String key, double[][] values) {
+		File sidecar = minMaxDiffSidecar();
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new BufferedWriter(new FileWriter(sidecar)));
+			out.println(key);
+			out.println(values.length);
+			for (int i = 0; i < values.length; i++) {
+				out.println(values[i][0] + " " + values[i][1] + " " + values[i][2]);
+			}
+		} catch (IOException e) {		// e.g. read-only directory: just no cache
+			if (debug) System.out.println("Could not write normalization sidecar " + sidecar.getPath() + ": " + e);
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+		}
+	}
+	
 	/**
 	 * @param ignoredAttributes Attributes that will be ignored
 	 * @return A list with min/max and diff=max-min values per attribute of the arff file 
 	 */
-	protected ArrayList<Double[]> readMinMaxDiffValues(HashSet<Integer> ignoredAttributes) {
-		ArrayList<Double[]> valuesMinMaxDiff = null;
+	protected double[][] readMinMaxDiffValues(HashSet<Integer> ignoredAttributes) {
+		double[][] valuesMinMaxDiff = null;
 		
 		if(ignoredAttributes == null)
 			ignoredAttributes = new HashSet<Integer>();
@@ -271,11 +471,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 			Reader fileReader = new BufferedReader(new InputStreamReader(fileProgressMonitor));
 			Instances instances = new Instances(fileReader, 1);
 
-			valuesMinMaxDiff = new ArrayList<Double[]>();
-			for (int i = 0; i < instances.numAttributes()-ignoredAttributes.size(); i++) {
-				Double[] values =  {Double.POSITIVE_INFINITY,Double.NEGATIVE_INFINITY,0.0};
-				valuesMinMaxDiff.add(values);
-			}
+			valuesMinMaxDiff = newMinMaxDiffValues(instances.numAttributes()-ignoredAttributes.size());
 			
 			System.out.print("Reading arff file for normalization...");
 			int counter = 0;
@@ -285,10 +481,10 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 				for (int i = 0; i < instances.numAttributes(); i++) {
 					if(!ignoredAttributes.contains(i)){
 						double value = instance.value(i);
-						if(value < valuesMinMaxDiff.get(a)[0])
-							valuesMinMaxDiff.get(a)[0] = value;
-						if(value > valuesMinMaxDiff.get(a)[1])
-							valuesMinMaxDiff.get(a)[1] = value;
+						if(value < valuesMinMaxDiff[a][0])
+							valuesMinMaxDiff[a][0] = value;
+						if(value > valuesMinMaxDiff[a][1])
+							valuesMinMaxDiff[a][1] = value;
 						a++;
 					}
 				}
@@ -307,8 +503,8 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 			}
 			System.out.println("done!");
 
-			for (int i = 0; i < valuesMinMaxDiff.size(); i++) {
-				valuesMinMaxDiff.get(i)[2]=valuesMinMaxDiff.get(i)[1]-valuesMinMaxDiff.get(i)[0];
+			for (int i = 0; i < valuesMinMaxDiff.length; i++) {
+				valuesMinMaxDiff[i][2]=valuesMinMaxDiff[i][1]-valuesMinMaxDiff[i][0];
 			}
 
 			return valuesMinMaxDiff;
@@ -337,10 +533,13 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	protected SubspaceInstance toSubspaceInstance(Instance instance) {
 		SubspaceInstance subspaceInstance = new SubspaceInstance(instance);
 		
-		double classValue = instance.classValue();		
-		double[] classLabels = new double[instance.numAttributes() - 1];	// w/o class index
-		for (int j = 0; j < classLabels.length; j++) {
-			classLabels[j] = classValue;
+		// All attributes carry the class value, so one label array per class is shared
+		double classValue = instance.classValue();
+		double[] classLabels = classLabelsByValue.get(classValue);
+		if (classLabels == null) {
+			classLabels = new double[instance.numAttributes() - 1];	// w/o class index
+			Arrays.fill(classLabels, classValue);
+			classLabelsByValue.put(classValue, classLabels);
 		}
 		subspaceInstance.setClassLabels(classLabels);
 		subspaceInstance.setDataset(instance.dataset());
@@ -0,0 +1,239 @@
+/**
+ * [SubspaceBinaryStream.java] for Subspace MOA
+ *
+ * Stream from a binary subspace file (see SubspaceBinaryStreamWriter for the
+ * layout, SubspaceBinaryStreamConverter to create one from any subspace stream,
+ * e.g. SubspaceARFFStream).
+ *
+ * The file is read through a memory-mapped FileChannel, one window of records
+ * at a time. Class label arrays that carry the class value in every dimension
+ * are shared between instances of the same class.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.tasks.TaskMonitor;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+public class SubspaceBinaryStream extends SubspaceClusteringStream {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long MAP_WINDOW_BYTES = 64L << 20;		// 64 MB per mapping
+
+	public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+			"Binary subspace file to load.", null, "sbin", false);
+
+	/* File */
+	private transient RandomAccessFile file;
+	private transient FileChannel channel;
+	private transient MappedByteBuffer window;
+	private long dataStart;
+	private int recordSize;
+
+	/* Position */
+	private long numInstances;
+	private long numInstancesRead;
+	private long windowFirst;		// Record index of the first record in the window
+	private int windowRecords;
+
+	private int numAttributes;
+	private int classIndex;
+	private HashMap<Double, double[]> classLabelsByValue = new HashMap<Double, double[]>();	// Interned label arrays
+	private transient int[] labelBuffer;
+
+
+	public SubspaceBinaryStream() {
+		numAttsOption = null;
+	}
+
+	@Override
+	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+		restart();
+	}
+
+	public boolean isRestartable() {
+		return true;
+	}
+
+	public void restart() {
+		try {
+			closeFile();
+			File f = binaryFileOption.getFile();
+			readHeader(f);
+
+			file = new RandomAccessFile(f, "r");
+			channel = file.getChannel();
+			numInstances = (channel.size() - dataStart) / recordSize;
+			numInstancesRead = 0;
+			windowFirst = 0;
+			windowRecords = 0;
+			window = null;
+			labelBuffer = new int[numAttributes - 1];
+			classLabelsByValue.clear();
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream restart failed.", ioe);
+		}
+	}
+
+	private void readHeader(File f) throws IOException {
+		FileInputStream fileStream = new FileInputStream(f);
+		DataInputStream in = new DataInputStream(fileStream);		// Unbuffered: the channel position is the header size
+		try {
+			if (in.readInt() != SubspaceBinaryStreamWriter.MAGIC) {
+				throw new IOException(f + " is not a binary subspace file");
+			}
+			int version = in.readInt();
+			if (version != SubspaceBinaryStreamWriter.VERSION) {
+				throw new IOException("Unsupported binary subspace file version " + version);
+			}
+			String relationName = in.readUTF();
+			numAttributes = in.readInt();
+			classIndex = in.readInt();
+
+			ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+			for (int i = 0; i < numAttributes; i++) {
+				String name = in.readUTF();
+				int numValues = in.readInt();
+				if (numValues > 0) {
+					ArrayList<String> values = new ArrayList<String>();
+					for (int v = 0; v < numValues; v++) {
+						String value = in.readUTF();
+						values.add(value);
+					}
+					attributes.add(new Attribute(name, values));
+				} else {
+					attributes.add(new Attribute(name));
+				}
+			}
+			if (in.readInt() != SubspaceBinaryStreamWriter.MAGIC) {
+				throw new IOException(f + ": corrupted header");
+			}
+
+			Instances instances = new Instances(relationName, attributes, 0);
+			instances.setClassIndex(classIndex);
+			streamHeader = new InstancesHeader(instances);
+			numAttsOption = new IntOption("numAtts", 'a', "", numAttributes - 1);	// Without class label
+
+			dataStart = fileStream.getChannel().position();
+			recordSize = SubspaceBinaryStreamWriter.recordSize(numAttributes);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Map the window starting at the next unread record.
+	 */
+	private void mapWindow() throws IOException {
+		long recordsPerWindow = Math.max(1, MAP_WINDOW_BYTES / recordSize);
+		windowFirst = numInstancesRead;
+		windowRecords = (int) Math.min(recordsPerWindow, numInstances - windowFirst);
+		window = channel.map(FileChannel.MapMode.READ_ONLY,
+				dataStart + windowFirst * recordSize, (long) windowRecords * recordSize);
+	}
+
+	public boolean hasMoreInstances() {
+		return numInstancesRead < numInstances;
+	}
+
+	public long estimatedRemainingInstances() {
+		return numInstances - numInstancesRead;
+	}
+
+	@Override
+	public SubspaceInstance nextInstance() {
+		if (!hasMoreInstances()) {
+			return null;
+		}
+		try {
+			if (window == null || numInstancesRead >= windowFirst + windowRecords) {
+				mapWindow();
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream failed to read instance from stream.", ioe);
+		}
+
+		window.position((int) (numInstancesRead - windowFirst) * recordSize);
+		double[] values = new double[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			values[i] = window.getDouble();
+		}
+		for (int j = 0; j < labelBuffer.length; j++) {
+			labelBuffer[j] = window.getInt();
+		}
+		numInstancesRead++;
+
+		SubspaceInstance inst = new SubspaceInstance(1.0, values, toClassLabels(values[classIndex]));
+		inst.setDataset(streamHeader);
+		return inst;
+	}
+
+	/**
+	 * Class labels from the label buffer. Labels equal to the class value in
+	 * every dimension share one array per class value.
+	 */
+	private double[] toClassLabels(double classValue) {
+		boolean uniform = true;
+		for (int j = 0; j < labelBuffer.length; j++) {
+			if (labelBuffer[j] != classValue) {
+				uniform = false;
+				break;
+			}
+		}
+
+		double[] classLabels;
+		if (uniform) {
+			classLabels = classLabelsByValue.get(classValue);
+			if (classLabels == null) {
+				classLabels = new double[labelBuffer.length];
+				for (int j = 0; j < classLabels.length; j++) {
+					classLabels[j] = classValue;
+				}
+				classLabelsByValue.put(classValue, classLabels);
+			}
+		} else {
+			classLabels = new double[labelBuffer.length];
+			for (int j = 0; j < classLabels.length; j++) {
+				classLabels[j] = labelBuffer[j];
+			}
+		}
+		return classLabels;
+	}
+
+	private void closeFile() throws IOException {
+		window = null;
+		if (file != null) {
+			file.close();		// Also closes the channel
+			file = null;
+			channel = null;
+		}
+	}
+
+	public void getDescription(StringBuilder sb, int indent) {
+
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Emit a data stream from a binary subspace file (*.sbin, see SubspaceBinaryStreamConverter).";
+	}
+}
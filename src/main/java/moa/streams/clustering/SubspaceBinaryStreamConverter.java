@@ -0,0 +1,59 @@
+/**
+ * [SubspaceBinaryStreamConverter.java] for Subspace MOA
+ *
+ * Writes the instances of a subspace clustering stream to a binary subspace file,
+ * so it can be replayed with SubspaceBinaryStream without parsing, e.g.
+ *
+ *   java moa.streams.clustering.SubspaceBinaryStreamConverter
+ *        "SubspaceARFFStream -f data.arff -n" data.sbin
+ *
+ * Attribute removal and normalization of SubspaceARFFStream are applied once here.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.File;
+import java.io.IOException;
+
+import moa.core.SubspaceInstance;
+import moa.options.ClassOption;
+
+public class SubspaceBinaryStreamConverter {
+
+	/**
+	 * Write (at most 'maxInstances', -1 = all) instances of a prepared stream.
+	 *
+	 * @return number of instances written
+	 */
+	public static long convert(SubspaceClusteringStream stream, File output, long maxInstances) throws IOException {
+		SubspaceBinaryStreamWriter writer = new SubspaceBinaryStreamWriter(output, stream.getHeader());
+		try {
+			while (stream.hasMoreInstances() && (maxInstances < 0 || writer.getNumInstances() < maxInstances)) {
+				SubspaceInstance inst = stream.nextInstance();
+				if (inst == null) {
+					break;
+				}
+				writer.write(inst);
+			}
+		} finally {
+			writer.close();
+		}
+		return writer.getNumInstances();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: SubspaceBinaryStreamConverter <stream> <output.sbin> [maxInstances]");
+			return;
+		}
+		SubspaceClusteringStream stream = (SubspaceClusteringStream) ClassOption.cliStringToObject(
+				args[0], SubspaceClusteringStream.class, null);
+		stream.prepareForUse();
+		long maxInstances = args.length > 2 ? Long.parseLong(args[2]) : -1;
+
+		long written = convert(stream, new File(args[1]), maxInstances);
+		System.out.println(written + " instances written to " + args[1]);
+	}
+}
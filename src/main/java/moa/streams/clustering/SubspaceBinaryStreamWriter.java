@@ -0,0 +1,98 @@
+/**
+ * [SubspaceBinaryStreamWriter.java] for Subspace MOA
+ *
+ * Writes subspace instances in the binary format read by SubspaceBinaryStream.
+ *
+ * Layout (big-endian, as java.io.DataOutput):
+ *
+ * header: int MAGIC, int VERSION, UTF relationName,
+ *         int numAttributes, int classIndex,
+ *         per attribute: UTF name, int numValues (0 = numeric), UTF value x numValues
+ *         int headerEnd (= MAGIC)
+ * record: double value x numAttributes, int classLabel x (numAttributes - 1)
+ *
+ * All records have the same size, so the number of instances follows from the
+ * file size and a file cut off during writing is still readable up to its last
+ * complete record. Instance weights are not stored (read instances have weight 1).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import moa.core.SubspaceInstance;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+public class SubspaceBinaryStreamWriter {
+
+	public static final int MAGIC = 0x53534231;		// "SSB1"
+	public static final int VERSION = 1;
+
+	private DataOutputStream out;
+	private int numAttributes;
+	private long numInstances = 0;
+
+	public SubspaceBinaryStreamWriter(File file, Instances header) throws IOException {
+		if (header.classIndex() < 0) {
+			throw new IllegalArgumentException("SubspaceBinaryStreamWriter: header has no class attribute");
+		}
+		numAttributes = header.numAttributes();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(header.relationName());
+		out.writeInt(numAttributes);
+		out.writeInt(header.classIndex());
+		for (int i = 0; i < numAttributes; i++) {
+			Attribute att = header.attribute(i);
+			out.writeUTF(att.name());
+			if (att.isNominal()) {
+				out.writeInt(att.numValues());
+				for (int v = 0; v < att.numValues(); v++) {
+					out.writeUTF(att.value(v));
+				}
+			} else {
+				out.writeInt(0);
+			}
+		}
+		out.writeInt(MAGIC);
+	}
+
+	public static int recordSize(int numAttributes) {
+		return numAttributes * 8 + (numAttributes - 1) * 4;
+	}
+
+	public void write(SubspaceInstance inst) throws IOException {
+		if (inst.numValues() != numAttributes) {
+			throw new IllegalArgumentException("SubspaceBinaryStreamWriter: instance has " + inst.numValues()
+					+ " values, header has " + numAttributes + " attributes");
+		}
+		for (int i = 0; i < numAttributes; i++) {
+			out.writeDouble(inst.value(i));
+		}
+		double[] classLabels = inst.getClassLabels();
+		for (int j = 0; j < numAttributes - 1; j++) {
+			out.writeInt((int) classLabels[j]);
+		}
+		numInstances++;
+	}
+
+	public long getNumInstances() {
+		return numInstances;
+	}
+
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+}
@@ -22,7 +22,7 @@ public abstract class SubspaceClusteringStream extends AbstractOptionHandler imp
 	private static final long serialVersionUID = 1L;
 	
 	public IntOption decayHorizonOption = new IntOption("decayHorizon", 'h',
-            "Decay horizon", 1000, 0, Integer.MAX_VALUE);
+            "Decay horizon", 1000, 1, Integer.MAX_VALUE);
 
 	public FloatOption decayThresholdOption = new FloatOption("decayThreshold", 't',
             "Decay horizon threshold", 0.1, 0, 1);
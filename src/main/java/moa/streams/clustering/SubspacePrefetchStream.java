@@ -0,0 +1,322 @@
+/**
+ * [SubspacePrefetchStream.java] for Subspace MOA
+ *
+ * Decorator that runs another subspace clustering stream on a producer thread.
+ * Instances are handed over through a bounded single-producer/single-consumer
+ * ring buffer (no locks), so generation or parsing overlaps with clustering
+ * and evaluation on the consumer thread.
+ *
+ * - Order and content are exactly those of the wrapped stream (only the
+ *   producer thread touches it).
+ * - Cluster events of a RandomRBFSubspaceGeneratorEvents are recorded with the
+ *   instance they preceded and fired to this stream's listeners when that
+ *   instance is taken, i.e. at the same point of the sequence as without
+ *   prefetching. Events fired after the last instance are fired when the
+ *   consumer finds the end of the stream.
+ * - Decay and evaluation settings are those of the wrapped stream.
+ *
+ * The producer may run up to prefetchSize instances ahead of the consumer;
+ * call stopPrefetching() when the stream is no longer needed.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.options.ClassOption;
+import moa.options.IntOption;
+import moa.tasks.TaskMonitor;
+
+public class SubspacePrefetchStream extends SubspaceClusteringStream implements ClusterEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	public ClassOption streamOption = new ClassOption("stream", 's',
+			"Stream to prefetch from.", SubspaceClusteringStream.class,
+			"RandomRBFSubspaceGeneratorEvents");
+
+	public IntOption prefetchSizeOption = new IntOption("prefetchSize", 'p',
+			"Maximum number of instances produced ahead of the consumer.", 1024, 1, Integer.MAX_VALUE);
+
+	private SubspaceClusteringStream stream;
+
+	/* Ring buffer */
+	private transient Slot[] ring;
+	private transient AtomicLong produced;		// Written by the producer only
+	private transient AtomicLong consumed;		// Written by the consumer only
+
+	/* Producer */
+	private transient Thread producer;
+	private transient volatile boolean producerDone;
+	private transient volatile boolean stopRequested;
+	private transient volatile Throwable producerError;
+	private transient List<ClusterEvent> pendingEvents;	// Producer thread only
+	private transient List<ClusterEvent> trailingEvents;	// Fired after the last instance, published by producerDone
+
+	private transient Vector<ClusterEventListener> listeners;
+
+
+	/** Ring buffer slot: an instance and the events fired before it **/
+	private static final class Slot {
+		SubspaceInstance instance;
+		List<ClusterEvent> events;
+	}
+
+
+	@Override
+	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+		stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);
+		numAttsOption = stream.numAttsOption;
+		if (stream instanceof RandomRBFSubspaceGeneratorEvents) {
+			((RandomRBFSubspaceGeneratorEvents) stream).addClusterChangeListener(this);
+		}
+		resetBuffer();
+	}
+
+	public SubspaceClusteringStream getStream() {
+		return stream;
+	}
+
+	/**
+	 * @return true if the wrapped stream fires cluster events
+	 */
+	public boolean hasClusterEvents() {
+		return stream instanceof RandomRBFSubspaceGeneratorEvents;
+	}
+
+	private void resetBuffer() {
+		int capacity = prefetchSizeOption.getValue();
+		ring = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new Slot();
+		}
+		produced = new AtomicLong(0);
+		consumed = new AtomicLong(0);
+		producerDone = false;
+		stopRequested = false;
+		producerError = null;
+		pendingEvents = null;
+		trailingEvents = null;
+		producer = null;
+	}
+
+
+	/** Producer **/
+
+	private void ensureProducer() {
+		if (producer == null) {
+			producer = new Thread(new Runnable() {
+				public void run() {
+					produce();
+				}
+			}, "SubspacePrefetchStream");
+			producer.setDaemon(true);
+			producer.start();
+		}
+	}
+
+	private void produce() {
+		int capacity = ring.length;
+		long next = produced.get();
+		try {
+			while (!stopRequested && stream.hasMoreInstances()) {
+				SubspaceInstance inst = stream.nextInstance();	// May fire events (changeCluster)
+				if (inst == null) {
+					break;
+				}
+
+				// Wait for a free slot
+				int round = 0;
+				while (next - consumed.get() >= capacity) {
+					if (stopRequested) {
+						return;
+					}
+					idle(round++);
+				}
+
+				Slot slot = ring[(int) (next % capacity)];
+				slot.instance = inst;
+				slot.events = pendingEvents;
+				pendingEvents = null;
+				produced.lazySet(++next);	// Publishes the slot
+			}
+			trailingEvents = pendingEvents;
+			pendingEvents = null;
+		} catch (Throwable t) {
+			producerError = t;
+		} finally {
+			producerDone = true;
+		}
+	}
+
+	/**
+	 * Events of the wrapped generator (producer thread): kept with the next instance.
+	 */
+	public void changeCluster(ClusterEvent e) {
+		if (pendingEvents == null) {
+			pendingEvents = new ArrayList<ClusterEvent>(2);
+		}
+		pendingEvents.add(e);
+	}
+
+	private static void idle(int round) {
+		if (round < 100) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(100000L);
+		}
+	}
+
+	/**
+	 * Stop the producer thread. Already prefetched instances can still be taken.
+	 */
+	public void stopPrefetching() {
+		stopRequested = true;
+		if (producer != null) {
+			try {
+				producer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	/** Consumer **/
+
+	public boolean hasMoreInstances() {
+		ensureProducer();
+		long current = consumed.get();
+		int round = 0;
+		while (produced.get() == current) {
+			if (producerDone) {
+				if (produced.get() != current) {	// Published just before finishing
+					return true;
+				}
+				if (producerError != null) {
+					throw new RuntimeException("SubspacePrefetchStream: wrapped stream failed", producerError);
+				}
+				if (trailingEvents != null) {
+					List<ClusterEvent> events = trailingEvents;
+					trailingEvents = null;
+					fireClusterChanges(events);
+				}
+				return false;
+			}
+			idle(round++);
+		}
+		return true;
+	}
+
+	@Override
+	public SubspaceInstance nextInstance() {
+		if (!hasMoreInstances()) {
+			return null;
+		}
+		long current = consumed.get();
+		Slot slot = ring[(int) (current % ring.length)];
+		SubspaceInstance inst = slot.instance;
+		List<ClusterEvent> events = slot.events;
+		slot.instance = null;
+		slot.events = null;
+		consumed.lazySet(current + 1);		// Frees the slot
+
+		if (events != null) {
+			fireClusterChanges(events);
+		}
+		return inst;
+	}
+
+	public boolean isRestartable() {
+		return stream.isRestartable();
+	}
+
+	public void restart() {
+		stopPrefetching();
+		stream.restart();
+		resetBuffer();
+	}
+
+	public long estimatedRemainingInstances() {
+		long remaining = stream.estimatedRemainingInstances();
+		if (remaining < 0) {
+			return remaining;
+		}
+		return remaining + (produced.get() - consumed.get());
+	}
+
+
+	/** Settings of the wrapped stream **/
+
+	@Override
+	public InstancesHeader getHeader() {
+		return stream.getHeader();
+	}
+
+	@Override
+	public int getDecayHorizon() {
+		return stream.getDecayHorizon();
+	}
+
+	@Override
+	public double getDecayThreshold() {
+		return stream.getDecayThreshold();
+	}
+
+	@Override
+	public int getEvaluationFrequency() {
+		return stream.getEvaluationFrequency();
+	}
+
+	@Override
+	public int getSubEvaluationFrequency() {
+		return stream.getSubEvaluationFrequency();
+	}
+
+
+	/** Event listeners (consumer side) **/
+
+	synchronized public void addClusterChangeListener(ClusterEventListener l) {
+		if (listeners == null)
+			listeners = new Vector<ClusterEventListener>();
+		listeners.addElement(l);
+	}
+
+	synchronized public void removeClusterChangeListener(ClusterEventListener l) {
+		if (listeners != null)
+			listeners.removeElement(l);
+	}
+
+	protected void fireClusterChanges(List<ClusterEvent> events) {
+		List<ClusterEventListener> targets;
+		synchronized (this) {
+			if (listeners == null || listeners.isEmpty()) {
+				return;
+			}
+			targets = new ArrayList<ClusterEventListener>(listeners);
+		}
+		for (ClusterEvent event : events) {
+			for (ClusterEventListener l : targets) {
+				l.changeCluster(event);
+			}
+		}
+	}
+
+	public void getDescription(StringBuilder sb, int indent) {
+
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Prefetches the instances of another subspace clustering stream on a background thread.";
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * [AbstractEvaluateSubspaceClustering.java] for Subspace MOA
+ *
+ * Common part of the evaluation tasks: clusterer, stream and dump file options,
+ * the measures, cluster events and the pass over the stream with the point
+ * window and the ground truth. Subclasses train and evaluate their clusterers.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import moa.cluster.SubspaceGroundTruth;
+import moa.clusterers.Clusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
+import moa.core.SubspaceInstance;
+import moa.evaluation.CE;
+import moa.evaluation.CMM_S;
+import moa.evaluation.EntropySubspace;
+import moa.evaluation.F1Subspace;
+import moa.evaluation.LearningCurve;
+import moa.evaluation.Purity;
+import moa.evaluation.RNIA;
+import moa.evaluation.RandStatistic;
+import moa.evaluation.SubCMM;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+import moa.gui.subspacevisualization.SubspaceDataPointWindow;
+import moa.options.ClassOption;
+import moa.options.ClassOptionWithNames;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import moa.options.RequiredOptionNotSpecifiedException;
+import moa.streams.clustering.ClusterEvent;
+import moa.streams.clustering.ClusterEventListener;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import moa.streams.clustering.SubspaceClusteringStream;
+import moa.streams.clustering.SubspacePrefetchStream;
+
+public abstract class AbstractEvaluateSubspaceClustering extends MainTask implements ClusterEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	/* Clusterer */
+	public ClassOptionWithNames microAlgorithmOption = new ClassOptionWithNames("microAlgorithm", 'a',
+			"Stream clustering algorithm for micro-clustering.", Clusterer.class, null, "",
+			new String[] {"Clustream", "DenStream"});
+
+	public ClassOption macroAlgorithmOption = new ClassOption("macroAlgorithm", 'A',
+			"Subspace clustering algorithm for macro-clustering.", MacroSubspaceClusterer.class, null, "");
+
+	public ClassOption oneStopAlgorithmOption = new ClassOption("oneStopAlgorithm", 'o',
+			"Premade one-stop algorithm which can care both micro- and macro- clustering.", SubspaceClusterer.class, null, "");
+
+	/* Stream */
+	public ClassOption streamOption = new ClassOption("stream", 's',
+			"Stream to learn from.", SubspaceClusteringStream.class,
+			"RandomRBFSubspaceGeneratorEvents", "");
+
+	/* Misc */
+	public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+			"Maximum number of instances to test/train on  (-1 = no limit).",
+			100000, -1, Integer.MAX_VALUE);
+
+	public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
+			"File to append intermediate csv reslts to.", "dumpSubspaceClustering.csv", "csv", true);
+
+	public MultiChoiceOption dumpFormatOption = new MultiChoiceOption("dumpFormat", 'D',
+			"Format of the dump file.", new String[] {"csv", "binary"},
+			new String[] {"Semicolon separated values", "Compact binary blocks (convert with SubspaceEvaluationBinaryReader)"}, 0);
+
+	public IntOption dumpFlushIntervalOption = new IntOption("dumpFlushInterval", 'f',
+			"Number of evaluation rows after which the dump file is flushed.", 10, 1, Integer.MAX_VALUE);
+
+
+	/* Local settings */
+	protected SubspaceClusteringStream stream;
+	protected int totalInstances;
+	protected ArrayList<ClusterEvent> clusterEvents;
+
+	protected int evaluationFrequency;
+	protected int subEvaluationFrequency;
+	protected int decayHorizon;
+	protected double decayRate;
+
+
+	@Override
+	public Class<?> getTaskResultType() {
+		return LearningCurve.class;
+	}
+
+	@Override
+	public void changeCluster(ClusterEvent e) {
+		if (clusterEvents != null) clusterEvents.add(e);
+	}
+
+	protected List<Class> getMeasureClasses() {
+		List<Class> classes = new ArrayList<Class>();
+		classes.add(Purity.class);
+		classes.add(EntropySubspace.class);
+		classes.add(F1Subspace.class);
+		classes.add(RandStatistic.class);
+		classes.add(RNIA.class);
+		classes.add(CE.class);
+		classes.add(CMM_S.class);
+		classes.add(SubCMM.class);
+		return classes;
+	}
+
+	/**
+	 * New measures; they only keep count, sum, min/max and last value, rows go to the dump file.
+	 */
+	protected SubspaceMeasureCollection[] getMeasureInstances() {
+		List<Class> measureClasses = getMeasureClasses();
+		int numMeasureClasses = measureClasses.size();
+		SubspaceMeasureCollection[] instances = new SubspaceMeasureCollection[numMeasureClasses];
+		for (int i = 0; i < numMeasureClasses; i++) {
+			try {
+				instances[i] = (SubspaceMeasureCollection) measureClasses.get(i).newInstance();
+				instances[i].setStoreValues(false);
+			} catch (Exception e) {
+				Logger.getLogger("Couldn't create Instance for " + measureClasses.get(i).getName());
+				e.printStackTrace();
+			}
+		}
+
+		return instances;
+	}
+
+
+	/** Stream **/
+
+	/**
+	 * Create the stream (not yet prepared for use), the instance limit and the
+	 * list of cluster events.
+	 */
+	protected void createStream() {
+		String name = getClass().getSimpleName();
+		if (streamOption.getValueAsCLIString() != "") {
+			stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);
+		} else {
+			throw new RuntimeException(name + ": stream is not specified",
+					new RequiredOptionNotSpecifiedException());
+		}
+
+		totalInstances = instanceLimitOption.getValue();
+		if (totalInstances == -1) {
+			System.out.println(name + ": (WARNING) stream limit is not specified");
+		}
+
+		if (stream instanceof RandomRBFSubspaceGeneratorEvents) {
+			((RandomRBFSubspaceGeneratorEvents) stream).addClusterChangeListener(this);
+			clusterEvents = new ArrayList<ClusterEvent>();
+		} else if (stream instanceof SubspacePrefetchStream && ((SubspacePrefetchStream) stream).hasClusterEvents()) {
+			((SubspacePrefetchStream) stream).addClusterChangeListener(this);
+			clusterEvents = new ArrayList<ClusterEvent>();
+		} else {
+			clusterEvents = null;
+		}
+	}
+
+	/**
+	 * Evaluation and decay settings of the (prepared) stream.
+	 */
+	protected void readStreamSettings() {
+		subEvaluationFrequency = stream.getSubEvaluationFrequency();
+		evaluationFrequency = stream.getEvaluationFrequency();
+		if (subEvaluationFrequency > evaluationFrequency) {
+			throw new RuntimeException(getClass().getSimpleName() + ": subEvaluationFrequency cannot exceed evaluationFrequency");
+		}
+		if (subEvaluationFrequency <= 0) {
+			subEvaluationFrequency = evaluationFrequency;
+		}
+
+		decayHorizon = stream.getDecayHorizon();
+		double decayThreshold = stream.getDecayThreshold();
+		decayRate = (-1 * Math.log(decayThreshold) / decayHorizon);
+	}
+
+	/**
+	 * One pass over the stream: every point goes to the window and the ground truth,
+	 * then to trainOnPoint(); evaluate() follows every subEvaluationFrequency points.
+	 * Stops at the instance limit, the end of the stream or when isStopped().
+	 */
+	protected void runStream() throws InterruptedException {
+		int timestamp = 0;
+		int evaluationPointCounter = 0;
+		SubspaceDataPointWindow pointBuffer = new SubspaceDataPointWindow(decayHorizon, decayRate);
+		SubspaceGroundTruth groundTruth = new SubspaceGroundTruth();
+
+		while (timestamp < totalInstances && stream.hasMoreInstances() && !isStopped()) {
+			timestamp++;
+			evaluationPointCounter++;
+
+			// New instance coming
+			SubspaceInstance next = stream.nextInstance();
+			SubspaceDataPoint point = new SubspaceDataPoint(next, timestamp);
+			SubspaceDataPoint evicted = pointBuffer.addPoint(point);
+			if (evicted != null) {
+				groundTruth.removePoint(evicted);
+			}
+			groundTruth.addPoint(point);
+			if (skipPoint(timestamp)) {
+				evaluationPointCounter = timestamp % subEvaluationFrequency;
+				continue;
+			}
+
+			trainOnPoint(point, timestamp);
+
+			// Evaluation point!
+			if (evaluationPointCounter >= subEvaluationFrequency) {
+				pointBuffer.setTimestamp(timestamp);	// Weights follow from the window time
+				evaluate(timestamp, pointBuffer, groundTruth);
+				evaluationPointCounter = 0;
+			}
+		}
+	}
+
+	/**
+	 * True for a point that was processed before (e.g. by a resumed clusterer);
+	 * it only fills the window and the ground truth.
+	 */
+	protected boolean skipPoint(int timestamp) {
+		return false;
+	}
+
+	protected boolean isStopped() {
+		return false;
+	}
+
+	protected abstract void trainOnPoint(SubspaceDataPoint point, int timestamp);
+
+	/**
+	 * Evaluation point; a dump row is due if timestamp % evaluationFrequency == 0.
+	 * The window is the list of points, its weights follow from the window time.
+	 */
+	protected abstract void evaluate(int timestamp, SubspaceDataPointWindow window,
+			SubspaceGroundTruth groundTruth) throws InterruptedException;
+}
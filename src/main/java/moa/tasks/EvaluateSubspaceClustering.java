@@ -9,50 +9,37 @@
 
 package moa.tasks;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import moa.cluster.Clustering;
+import moa.cluster.MicroClusterSnapshot;
 import moa.cluster.SubspaceClustering;
+import moa.cluster.SubspaceGroundTruth;
 import moa.clusterers.AbstractClusterer;
 import moa.clusterers.AbstractSubspaceClusterer;
-import moa.clusterers.Clusterer;
-import moa.clusterers.SubspaceClusterer;
 import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
 import moa.core.ObjectRepository;
-import moa.core.SubspaceInstance;
-import moa.evaluation.CE;
-import moa.evaluation.CMM_S;
-import moa.evaluation.EntropySubspace;
-import moa.evaluation.F1Subspace;
 import moa.evaluation.LearningCurve;
-import moa.evaluation.Purity;
-import moa.evaluation.RNIA;
-import moa.evaluation.RandStatistic;
-import moa.evaluation.SubCMM;
 import moa.evaluation.SubspaceMeasureCollection;
 import moa.gui.subspacevisualization.SubspaceDataPoint;
-import moa.gui.subspacevisualization.SubspaceRunVisualizer;
-import moa.options.ClassOption;
-import moa.options.ClassOptionWithNames;
+import moa.gui.subspacevisualization.SubspaceDataPointWindow;
 import moa.options.FileOption;
+import moa.options.FlagOption;
 import moa.options.IntOption;
 import moa.options.RequiredOptionNotSpecifiedException;
 import moa.streams.clustering.ClusterEvent;
-import moa.streams.clustering.ClusterEventListener;
-import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
-import moa.streams.clustering.SubspaceClusteringStream;
+import moa.streams.clustering.SubspacePrefetchStream;
 
 
-public class EvaluateSubspaceClustering extends MainTask implements ClusterEventListener {
+public class EvaluateSubspaceClustering extends AbstractEvaluateSubspaceClustering {
 
     @Override
     public String getPurposeString() {
@@ -61,29 +48,22 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
 
     private static final long serialVersionUID = 1L;
 
-    /* Clusterer */
-    public ClassOptionWithNames microAlgorithmOption = new ClassOptionWithNames("microAlgorithm", 'a',
-            "Stream clustering algorithm for micro-clustering.", Clusterer.class, null, "",
-            new String[] {"Clustream", "DenStream"});
-
-    public ClassOption macroAlgorithmOption = new ClassOption("macroAlgorithm", 'A',
-        	"Subspace clustering algorithm for macro-clustering.", MacroSubspaceClusterer.class, null, "");
+    public IntOption pipelineDepthOption = new IntOption("pipelineDepth", 'p',
+    		"Evaluation points that may wait for macro-clustering and for evaluation while training goes on"
+    		+ " (0 = sequential). The offline step of a one-stop clusterer is not pipelined.", 0, 0, Integer.MAX_VALUE);
     
-    public ClassOption oneStopAlgorithmOption = new ClassOption("oneStopAlgorithm", 'o',
-            "Premade one-stop algorithm which can care both micro- and macro- clustering.", SubspaceClusterer.class, null, "");
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'c',
+    		"File to save checkpoints of the one-stop clusterer to (empty = no checkpoints).", "", "ckpt", true);
     
-    /* Stream */
-    public ClassOption streamOption = new ClassOption("stream", 's',
-            "Stream to learn from.", SubspaceClusteringStream.class,
-            "RandomRBFSubspaceGeneratorEvents", "");
-
-    /* Misc */
-    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
-            "Maximum number of instances to test/train on  (-1 = no limit).",
-            100000, -1, Integer.MAX_VALUE);
-
-    public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
-            "File to append intermediate csv reslts to.", "dumpSubspaceClustering.csv", "csv", true);
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'C',
+    		"Number of instances between two checkpoints.", 100000, 1, Integer.MAX_VALUE);
+    
+    public FlagOption resumeFromCheckpointOption = new FlagOption("resumeFromCheckpoint", 'R',
+    		"Continue with the clusterer of the checkpoint file, if it exists, instead of a new one. "
+    		+ "The instances it has processed are skipped: they fill the evaluation window but are "
+    		+ "neither trained nor evaluated, so the stream must be the one of the checkpoint. "
+    		+ "Rows go to a new dump file (name_from<position>.csv), numbered on from the interrupted run. "
+    		+ "With subevaluation, the first row only averages the subevaluations after the checkpoint.");
     
     // TODO: Measure option
     
@@ -94,30 +74,23 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     private AbstractSubspaceClusterer oneStopClusterer;
     private boolean combinationSet;		// Algorithm setting type
     
-	private SubspaceClusteringStream stream;
 	private SubspaceMeasureCollection[] measures;
-	
-	private int totalInstances;
 	private String dumpFilename;
-    
-	private ArrayList<ClusterEvent> clusterEvents;
+	private SubspaceEvaluationDump dump;
+	private int dumpRowCounter;
+	
+	private File checkpointFile;
+	private long resumedInstances;		// Stream instances processed before the checkpoint
+	
+	private BlockingQueue<EvaluationPoint> toMacro;		// Pipelined run only
+	private AtomicReference<Throwable> failure;
 	
-
-    @Override
-    public Class<?> getTaskResultType() {
-        return LearningCurve.class;
-    }
 
     @Override
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
         
     	/* Initial settings */
-    	if (streamOption.getValueAsCLIString() != "") {
-    		stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);    		
-    	} else {
-    		throw new RuntimeException("EvaluateSubspaceClustering: stream is not specified",
-    									new RequiredOptionNotSpecifiedException());
-    	}
+    	createStream();
     	
     	if (microAlgorithmOption.getValueAsCLIString() != "") {
     		microClusterer = (AbstractClusterer) getPreparedClassOption(microAlgorithmOption);
@@ -143,21 +116,19 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     		}
     	}
     	
-        totalInstances = instanceLimitOption.getValue();
-        if (totalInstances == -1) {
-        	System.out.println("EvaluateSubspaceClustering: (WARNING) stream limit is not specified");
-        }
-        
         dumpFilename = dumpFileOption.getValue();
         measures = getMeasureInstances();
         
-        if (stream instanceof RandomRBFSubspaceGeneratorEvents){
-			((RandomRBFSubspaceGeneratorEvents) stream).addClusterChangeListener(this);
-			clusterEvents = new ArrayList<ClusterEvent>();
-		} else {
-			clusterEvents = null;
-		}
         
+        /* Checkpoints */
+        checkpointFile = null;
+        resumedInstances = 0;
+        if (checkpointFileOption.getValue() != null && checkpointFileOption.getValue().length() > 0) {
+        	if (oneStopClusterer == null || !oneStopClusterer.supportsCheckpoints()) {
+        		throw new RuntimeException("EvaluateSubspaceClustering: checkpoints need a one-stop clusterer that supports them");
+        	}
+        	checkpointFile = checkpointFileOption.getFile();
+        }
         
         /* Prepare for use */
 		stream.prepareForUse();
@@ -169,11 +140,25 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
 		}
 		if (oneStopClusterer != null) {
 			oneStopClusterer.prepareForUse();
+			if (checkpointFile != null && resumeFromCheckpointOption.isSet() && checkpointFile.exists()) {
+				try {
+					oneStopClusterer = AbstractSubspaceClusterer.loadCheckpoint(checkpointFile);
+					resumedInstances = oneStopClusterer.getStreamPosition();
+				} catch (IOException ex) {
+					throw new RuntimeException("EvaluateSubspaceClustering: cannot load checkpoint " + checkpointFile, ex);
+				}
+			}
 		}
 		
 		
 		/** Simulate & Evaluate **/
-		run();
+		try {
+			run();
+		} finally {
+			if (stream instanceof SubspacePrefetchStream) {
+				((SubspacePrefetchStream) stream).stopPrefetching();
+			}
+		}
 		
         /* Result */
         LearningCurve learningCurve = new LearningCurve("EvaluateSubspaceClustering does not support custom output file (> [filename]).\n" +
@@ -184,234 +169,310 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     
     
 
-	@Override
-	public void changeCluster(ClusterEvent e) {
-		if (clusterEvents != null) clusterEvents.add(e);
-	}
-    
-    protected List<Class> getMeasureClasses() {
-    	List<Class> classes = new ArrayList<Class>();
-    	classes.add(Purity.class);
-        classes.add(EntropySubspace.class);
-        classes.add(F1Subspace.class);
-        classes.add(RandStatistic.class);
-        classes.add(RNIA.class);
-        classes.add(CE.class);
-        classes.add(CMM_S.class);
-        classes.add(SubCMM.class);
-    	return classes;
-    }
-    
-    protected SubspaceMeasureCollection[] getMeasureInstances() {
-    	List<Class> measureClasses = getMeasureClasses();
-        int numMeasureClasses = measureClasses.size();
-        SubspaceMeasureCollection[] instances = new SubspaceMeasureCollection[numMeasureClasses];
-        for (int i=0; i < numMeasureClasses; i++) {
-        	try {
-        		instances[i] = (SubspaceMeasureCollection) measureClasses.get(i).newInstance();
-        	} catch (Exception e) {
-        		Logger.getLogger("Couldn't create Instance for " + measureClasses.get(i).getName());
-    			e.printStackTrace();
-        	}
-        }	
-        
-        return instances;
-    }
-
 	protected void run() {
+		readStreamSettings();
+		toMacro = null;
+		failure = null;
+		dumpRowCounter = (int) (resumedInstances / evaluationFrequency);
 		
-		// Basic stream settings
-		int subEvaluationFrequency = stream.getSubEvaluationFrequency();
-		int evaluationFrequency = stream.getEvaluationFrequency();
-        if (subEvaluationFrequency > evaluationFrequency) {
-        	throw new RuntimeException("EvaluateSubspaceClustering: subEvaluationFrequency cannot exceed evaluationFrequency");
-        }
-        if (subEvaluationFrequency <= 0) {
-        	subEvaluationFrequency = evaluationFrequency;
-        }
-		
-		int decayHorizon = stream.getDecayHorizon();
-		double decayThreshold = stream.getDecayThreshold();
-		double decayRate = (-1 * Math.log(decayThreshold) / decayHorizon);
+		if (pipelineDepthOption.getValue() > 0) {
+			runPipelined(pipelineDepthOption.getValue());
+			return;
+		}
 
-		// Progress monitors
-		int timestamp = 0;
-		int evaluationPointCounter = 0;
-		LinkedList<SubspaceDataPoint> pointBuffer = new LinkedList<SubspaceDataPoint>();
+		// Results are written as they come
+		openDump(dumpFilename, measures);
+		try {
+			runStream();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("EvaluateSubspaceClustering: interrupted", e);
+		}
 		
-		// Intermediate results
+		/** Finish the dump file **/
+		closeDump(measures);
+	}
+	
+	/**
+	 * Instances processed before the checkpoint are skipped. The cluster event
+	 * that a dump row took in the interrupted run is consumed.
+	 */
+	@Override
+	protected boolean skipPoint(int timestamp) {
+		if (timestamp > resumedInstances) {
+			return false;
+		}
+		if (timestamp % evaluationFrequency == 0) {
+			dump.skipRow(evaluationFrequency, clusterEvents);
+		}
+		return true;
+	}
+	
+	@Override
+	protected void trainOnPoint(SubspaceDataPoint point, int timestamp) {
+		if (combinationSet) {
+			microClusterer.trainOnInstanceImpl(point.getTrainingInstance(microClusterer.keepClassLabel()));
+		} else {
+			oneStopClusterer.trainOnInstanceImpl(point.getTrainingInstance(oneStopClusterer.keepClassLabel()));
+			saveCheckpoint(timestamp);
+		}
+	}
+	
+	@Override
+	protected void evaluate(int timestamp, SubspaceDataPointWindow window, SubspaceGroundTruth groundTruth)
+			throws InterruptedException {
+		if (toMacro != null) {
+			queueEvaluationPoint(timestamp, window, groundTruth);
+			return;
+		}
+		
+		// Get clustering results
 		Clustering microResult;
 		SubspaceClustering macroResult;
-
-		while (timestamp < totalInstances && stream.hasMoreInstances()) {
-			timestamp++;
-			evaluationPointCounter++;
-			
-			// New instance coming
-			SubspaceInstance next = stream.nextInstance();
-			SubspaceDataPoint point = new SubspaceDataPoint(next, timestamp);
-			pointBuffer.add(point);
-            while (pointBuffer.size() > decayHorizon) {
-                pointBuffer.removeFirst();
+		if (combinationSet) {
+			if (microClusterer.implementsMicroClusterer()) {
+        		microResult = microClusterer.getMicroClusteringResult();
+            } else {
+            	throw new RuntimeException("EvaluateSubspaceClustering: given microClusterer does not provide microclustering");
             }
-			
-			// Train clusterers
-            SubspaceInstance trainInst = new SubspaceInstance(point);
-			if (combinationSet) {
-				if (microClusterer.keepClassLabel()) {
-            		trainInst.setDataset(point.dataset());
-            	} else {
-            		trainInst.deleteAttributeAt(point.classIndex());
-            	}
-				microClusterer.trainOnInstanceImpl(trainInst);
-			} else {
-				if (oneStopClusterer.keepClassLabel()) {
-            		trainInst.setDataset(point.dataset());
-            	} else {
-            		trainInst.deleteAttributeAt(point.classIndex());
-            	}
-				oneStopClusterer.trainOnInstanceImpl(trainInst);
-			}
-
-			
-			// Evaluation point!
-			if (evaluationPointCounter >= subEvaluationFrequency) {
-				
-				// Update weights
-				for (SubspaceDataPoint p : pointBuffer) {
-					p.updateWeight(timestamp, decayRate);
-				}
-				
-				// Prepare an array of points
-				List<SubspaceDataPoint> pointArray = new ArrayList<SubspaceDataPoint>(pointBuffer);
-				
-				// Get clustering results
-				if (combinationSet) {
-					if (microClusterer.implementsMicroClusterer()) {
-		        		microResult = microClusterer.getMicroClusteringResult();
-		            } else {
-		            	throw new RuntimeException("EvaluateSubspaceClustering: given microClusterer does not provide microclustering");
-		            }
-		        	macroResult = macroClusterer.getClusteringResult(microResult);
-		        	
-		        } else {
-		        	microResult = oneStopClusterer.getMicroClusteringResult();
-		        	macroResult = oneStopClusterer.getClusteringResult();
-				}
-				
-				SubspaceClustering gtClustering = new SubspaceClustering(pointBuffer);
-				
-				
-				// (Sub)Evaluation
-				for (int i = 0; i < measures.length; i++) {
-					if (macroResult != null) {
-		        		try {
-		                    double msec = measures[i].subEvaluateClusteringPerformance(macroResult, gtClustering, pointArray);
-		                } catch (Exception ex) { ex.printStackTrace(); }
-		            } else {
-		                for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-		                    measures[i].addEmptySubValue(j);
-		                }
-		            }
-				}
-				
-				// Averaging subevaluations
-				if (timestamp % evaluationFrequency == 0) {
-					for (int i = 0; i < measures.length; i++) {
-	    	        	measures[i].averageSubEvaluations();
-	    	        }
-				}
-				
-				// Prepare for the next evaluation point
-				evaluationPointCounter = 0;
-			}
+        	macroResult = macroClusterer.getClusteringResult(microResult);
+        	
+        } else {
+        	microResult = oneStopClusterer.getMicroClusteringResult();
+        	macroResult = oneStopClusterer.getClusteringResult();
 		}
 		
-		/** Write a dump file **/
-		exportCSV(dumpFilename, clusterEvents, measures, evaluationFrequency);
+		SubspaceClustering gtClustering = groundTruth.getClustering();
+		
+		
+		// (Sub)Evaluation
+		subEvaluate(macroResult, gtClustering, window);
+		
+		// Averaging subevaluations
+		if (timestamp % evaluationFrequency == 0) {
+			for (int i = 0; i < measures.length; i++) {
+	        	measures[i].averageSubEvaluations();
+	        }
+			writeDumpRow(dumpRowCounter++, measures, evaluationFrequency);
+		}
 	}
 	
-	protected void exportCSV(String filepath, ArrayList<ClusterEvent> clusterEvents, SubspaceMeasureCollection[] measures, int horizon) {
-		PrintWriter out = null;
-		try {
-			// Prepare an output file			
-			if (!filepath.endsWith(".csv")) {
-				filepath += ".csv";
-			}
-			out = new PrintWriter(new BufferedWriter(new FileWriter(filepath)));
-			
-			
-			String delimiter = ";";
-
-			// Header
-			int numValues = 0;
-			out.write("Nr" + delimiter);
-			out.write("Event" + delimiter);
-			for (int i = 0; i < measures.length; i++) {
-				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-					if (measures[i].isEnabled(j)) {
-						out.write(measures[i].getName(j) + delimiter);
-						numValues = measures[i].getNumberOfValues(j);
-					}
-				}
-			}
-			
-			out.write("\n");
-
-			// Rows
-			Iterator<ClusterEvent> eventIt = null;
-			ClusterEvent event = null;
-			if (clusterEvents != null) {
-				if (clusterEvents.size() > 0) {
-					eventIt = clusterEvents.iterator();
-					event = eventIt.next();
-				}
+	@Override
+	protected boolean isStopped() {
+		return failure != null && failure.get() != null;
+	}
+	
+	/**
+	 * Periodic checkpoint of the one-stop clusterer, if enabled.
+	 */
+	private void saveCheckpoint(int timestamp) {
+		if (checkpointFile != null && timestamp % checkpointFrequencyOption.getValue() == 0) {
+			try {
+				oneStopClusterer.setStreamPosition(timestamp);
+				oneStopClusterer.saveCheckpoint(checkpointFile);
+			} catch (IOException ex) {
+				Logger.getLogger(EvaluateSubspaceClustering.class.getName()).log(Level.SEVERE, null, ex);
 			}
-			
-			for (int v = 0; v < numValues; v++) {
-				// Nr
-				out.write(v + delimiter);
-
-				// Events
-				if (event != null && event.getTimestamp() <= horizon) {
-					out.write(event.getType() + delimiter);
-					if (eventIt != null && eventIt.hasNext()) {
-						event = eventIt.next();
-					} else {
-						event = null;
-					}
-				} else {
-					out.write(delimiter);
-				}
-
-				// Values
-				for (int i = 0; i < measures.length; i++) {
-					for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-						if (measures[i].isEnabled(j)) {
-							out.write(measures[i].getValue(j, v) + delimiter);
+		}
+	}
+	
+	/**
+	 * Add the values of all measures for one evaluation point; the window gives the point weights.
+	 */
+	private void subEvaluate(SubspaceClustering macroResult, SubspaceClustering gtClustering, SubspaceDataPointWindow window) {
+		for (int i = 0; i < measures.length; i++) {
+			if (macroResult != null) {
+        		try {
+                    double msec = measures[i].subEvaluateClusteringPerformance(macroResult, gtClustering, window, window);
+                } catch (Exception ex) { ex.printStackTrace(); }
+            } else {
+                for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+                    measures[i].addEmptySubValue(j);
+                }
+            }
+		}
+	}
+	
+	
+	/** Pipelined run **/
+	
+	/**
+	 * Everything needed to macro-cluster and evaluate one evaluation point,
+	 * copied from the training state when the point was reached.
+	 */
+	private static class EvaluationPoint {
+		int timestamp;
+		Clustering microResult;
+		SubspaceClustering macroResult;
+		SubspaceClustering gtClustering;
+		SubspaceDataPointWindow window;
+		List<ClusterEvent> clusterEvents;	// Only for points with a dump row
+	}
+	
+	private static final EvaluationPoint END = new EvaluationPoint();
+	
+	/**
+	 * Same evaluation as run(), in three stages:
+	 * - task thread: stream, ground truth, micro-clustering and snapshots,
+	 * - macro thread: macro-clustering of the micro-clustering snapshots,
+	 * - evaluation thread: measures and dump rows.
+	 * 
+	 * The task thread only copies micro-cluster statistics (takeSnapshot()) for a
+	 * combination of micro- and macro-clusterer. A one-stop clusterer's offline step
+	 * reads its live model, so it is not pipelined: getClusteringResult() and the
+	 * copy of its result run on the task thread, only the evaluation overlaps.
+	 * 
+	 * Stages are connected by queues of 'depth' evaluation points, so training only
+	 * waits if that many points are pending. The dump file is the same as sequentially.
+	 */
+	protected void runPipelined(int depth) {
+		
+		if (combinationSet && !microClusterer.implementsMicroClusterer()) {
+			throw new RuntimeException("EvaluateSubspaceClustering: given microClusterer does not provide microclustering");
+		}
+		
+		openDump(dumpFilename, measures);
+		
+		final BlockingQueue<EvaluationPoint> toMacro = new ArrayBlockingQueue<EvaluationPoint>(depth);
+		final BlockingQueue<EvaluationPoint> toEvaluation = new ArrayBlockingQueue<EvaluationPoint>(depth);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		this.toMacro = toMacro;
+		this.failure = failure;
+		
+		// Macro-clustering stage
+		Thread macroThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					EvaluationPoint p;
+					while ((p = toMacro.take()) != END) {
+						if (failure.get() != null) {
+							continue;		// Drain, the task thread stops soon
+						}
+						try {
+							if (combinationSet) {
+								p.macroResult = macroClusterer.getClusteringResult(p.microResult);
+								p.microResult = null;
+							}
+							toEvaluation.put(p);
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
 						}
 					}
+					toEvaluation.put(END);
+				} catch (InterruptedException e) {
+					failure.compareAndSet(null, e);
 				}
-				
-				out.write("\n");
 			}
-			
-			// Mean values
-			out.write("mean;;");
-			for (int i = 0; i < measures.length; i++) {
-				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-					if (measures[i].isEnabled(j)) {
-						out.write(measures[i].getMean(j) + delimiter);
+		}, "EvaluateSubspaceClustering-macro");
+		
+		// Evaluation stage
+		Thread evaluationThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					EvaluationPoint p;
+					while ((p = toEvaluation.take()) != END) {
+						if (failure.get() != null) {
+							continue;
+						}
+						try {
+							subEvaluate(p.macroResult, p.gtClustering, p.window);
+							if (p.timestamp % evaluationFrequency == 0) {
+								for (int i = 0; i < measures.length; i++) {
+									measures[i].averageSubEvaluations();
+								}
+								dump.writeRow(dumpRowCounter++, measures, evaluationFrequency, p.clusterEvents);
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						}
 					}
+				} catch (InterruptedException e) {
+					failure.compareAndSet(null, e);
 				}
 			}
-			
-			out.close();
-			
-		} catch (IOException ex) {
-			Logger.getLogger(SubspaceRunVisualizer.class.getName()).log(Level.SEVERE, null, ex);
-		} finally {
-			out.close();
+		}, "EvaluateSubspaceClustering-evaluation");
+		
+		macroThread.setDaemon(true);
+		evaluationThread.setDaemon(true);
+		macroThread.start();
+		evaluationThread.start();
+		
+		// Stream and training stage
+		try {
+			runStream();
+			toMacro.put(END);
+			macroThread.join();
+			evaluationThread.join();
+		} catch (InterruptedException e) {
+			macroThread.interrupt();
+			evaluationThread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("EvaluateSubspaceClustering: interrupted", e);
+		}
+		
+		this.toMacro = null;
+		
+		/** Finish the dump file **/
+		closeDump(measures);
+		
+		if (failure.get() != null) {
+			throw new RuntimeException("EvaluateSubspaceClustering: pipelined evaluation failed", failure.get());
+		}
+	}
+	
+	/**
+	 * Snapshots for the pipeline; the clusterers' live clusters change with further training.
+	 */
+	private void queueEvaluationPoint(int timestamp, SubspaceDataPointWindow window, SubspaceGroundTruth groundTruth)
+			throws InterruptedException {
+		EvaluationPoint p = new EvaluationPoint();
+		p.timestamp = timestamp;
+		if (combinationSet) {
+			p.microResult = MicroClusterSnapshot.copyOf(microClusterer.getMicroClusteringResult(), timestamp);
+		} else {
+			p.macroResult = oneStopClusterer.takeSnapshot(false, true).getClustering();
+		}
+		p.gtClustering = groundTruth.getClustering();
+		p.window = window.snapshot();
+		if (clusterEvents != null && timestamp % evaluationFrequency == 0) {
+			p.clusterEvents = new ArrayList<ClusterEvent>(clusterEvents);
+		}
+		toMacro.put(p);
+	}
+	
+	/**
+	 * Open the dump file and write its header. Rows follow with writeDumpRow().
+	 */
+	protected void openDump(String filepath, SubspaceMeasureCollection[] measures) {
+		if (resumedInstances > 0) {
+			filepath = getResumedFilename(filepath, resumedInstances);
+		}
+		dump = new SubspaceEvaluationDump(filepath, measures, dumpFormatOption.getChosenIndex() == 1,
+				dumpFlushIntervalOption.getValue());
+	}
+	
+	/**
+	 * Dump file of a run resumed at 'position'; the one of the interrupted run is kept.
+	 */
+	static String getResumedFilename(String dumpFilename, long position) {
+		int dot = dumpFilename.lastIndexOf('.');
+		if (dot > dumpFilename.lastIndexOf('/') && dot > 0) {
+			return dumpFilename.substring(0, dot) + "_from" + position + dumpFilename.substring(dot);
 		}
+		return dumpFilename + "_from" + position;
+	}
+	
+	/**
+	 * Append the latest averaged values of all enabled measures.
+	 */
+	protected void writeDumpRow(int nr, SubspaceMeasureCollection[] measures, int horizon) {
+		dump.writeRow(nr, measures, horizon, clusterEvents);
+	}
+	
+	/**
+	 * Write the mean values and close the dump file.
+	 */
+	protected void closeDump(SubspaceMeasureCollection[] measures) {
+		dump.close(measures);
 	}
-}
\ No newline at end of file
+}
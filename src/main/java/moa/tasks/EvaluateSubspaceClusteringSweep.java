@@ -0,0 +1,356 @@
+/**
+ * [EvaluateSubspaceClusteringSweep.java] for Subspace MOA
+ *
+ * Evaluates a grid of clusterer configurations on one pass over a stream.
+ *
+ * The configurations are the base algorithm(s) of the clusterer options,
+ * each combined with one point of the parameter grid, e.g. for HDDStream
+ *   -o (hddstream.HDDStream) -g "-e 0.1,0.5 -m 5,10"
+ * gives 4 configurations. Every instance is fed to all configurations; the point
+ * window and the ground truth are maintained once and shared. Training, clustering
+ * and evaluation of the configurations run on worker threads, one evaluation
+ * interval at a time. Each configuration writes its own dump file
+ * (<dumpFile>_<nr>); the list of configurations goes to <dumpFile>_configurations.txt.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import moa.cluster.Clustering;
+import moa.cluster.SubspaceClustering;
+import moa.cluster.SubspaceGroundTruth;
+import moa.clusterers.AbstractClusterer;
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.Clusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
+import moa.core.ObjectRepository;
+import moa.evaluation.LearningCurve;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+import moa.gui.subspacevisualization.SubspaceDataPointWindow;
+import moa.options.ClassOption;
+import moa.options.IntOption;
+import moa.options.RequiredOptionNotSpecifiedException;
+import moa.options.StringOption;
+import moa.streams.clustering.SubspacePrefetchStream;
+
+public class EvaluateSubspaceClusteringSweep extends AbstractEvaluateSubspaceClustering {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public String getPurposeString() {
+		return "Evaluates a grid of subspace clusterer configurations on one pass over a stream.";
+	}
+
+	public StringOption gridOption = new StringOption("grid", 'g',
+			"Parameter grid of the one-stop or micro algorithm, e.g. \"-e 0.1,0.5 -m 5,10\".", "");
+
+	public StringOption macroGridOption = new StringOption("macroGrid", 'G',
+			"Parameter grid of the macro algorithm.", "");
+
+	public IntOption numThreadsOption = new IntOption("numThreads", 't',
+			"Number of worker threads (0 = number of processors).", 0, 0, Integer.MAX_VALUE);
+
+
+	/* Local settings */
+	private List<Configuration> configurations;
+	private ExecutorService workers;
+	private final ArrayList<SubspaceDataPoint> batch = new ArrayList<SubspaceDataPoint>();	// Points since the last evaluation
+
+
+	/**
+	 * One clusterer configuration with its own measures and dump file.
+	 */
+	private class Configuration {
+
+		String description;
+		AbstractClusterer microClusterer;
+		MacroSubspaceClusterer macroClusterer;
+		AbstractSubspaceClusterer oneStopClusterer;
+		SubspaceMeasureCollection[] measures;
+		SubspaceEvaluationDump dump;
+		int dumpRowCounter = 0;
+
+		/**
+		 * Train on a batch of points, then evaluate if the batch ends at an evaluation point.
+		 */
+		void process(List<SubspaceDataPoint> batch, int timestamp, boolean evaluate,
+				SubspaceClustering gtClustering, SubspaceDataPointWindow window) {
+
+			// Train clusterers
+			for (SubspaceDataPoint point : batch) {
+				if (oneStopClusterer == null) {
+					microClusterer.trainOnInstanceImpl(point.getTrainingInstance(microClusterer.keepClassLabel()));
+				} else {
+					oneStopClusterer.trainOnInstanceImpl(point.getTrainingInstance(oneStopClusterer.keepClassLabel()));
+				}
+			}
+			if (!evaluate) {
+				return;
+			}
+
+			// Get clustering results
+			Clustering microResult;
+			SubspaceClustering macroResult;
+			if (oneStopClusterer == null) {
+				if (microClusterer.implementsMicroClusterer()) {
+					microResult = microClusterer.getMicroClusteringResult();
+				} else {
+					throw new RuntimeException("EvaluateSubspaceClusteringSweep: given microClusterer does not provide microclustering");
+				}
+				macroResult = macroClusterer.getClusteringResult(microResult);
+			} else {
+				microResult = oneStopClusterer.getMicroClusteringResult();
+				macroResult = oneStopClusterer.getClusteringResult();
+			}
+
+			// (Sub)Evaluation
+			for (int i = 0; i < measures.length; i++) {
+				if (macroResult != null) {
+					try {
+						measures[i].subEvaluateClusteringPerformance(macroResult, gtClustering, window, window);
+					} catch (Exception ex) { ex.printStackTrace(); }
+				} else {
+					for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+						measures[i].addEmptySubValue(j);
+					}
+				}
+			}
+
+			// Averaging subevaluations
+			if (timestamp % evaluationFrequency == 0) {
+				for (int i = 0; i < measures.length; i++) {
+					measures[i].averageSubEvaluations();
+				}
+				dump.writeRow(dumpRowCounter++, measures, evaluationFrequency, clusterEvents);
+			}
+		}
+	}
+
+
+	@Override
+	protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+
+		/* Initial settings */
+		createStream();
+		configurations = createConfigurations();
+		writeConfigurationList();
+
+		/* Prepare for use */
+		stream.prepareForUse();
+
+		/** Simulate & Evaluate **/
+		int numThreads = numThreadsOption.getValue();
+		if (numThreads == 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+		workers = Executors.newFixedThreadPool(Math.min(numThreads, configurations.size()));
+		try {
+			sweep();
+		} finally {
+			workers.shutdownNow();
+			if (stream instanceof SubspacePrefetchStream) {
+				((SubspacePrefetchStream) stream).stopPrefetching();
+			}
+		}
+
+		/* Result */
+		LearningCurve learningCurve = new LearningCurve("EvaluateSubspaceClusteringSweep does not support custom output file (> [filename]).\n" +
+				"Check out the dump files to see the results (one per configuration).");
+
+		return learningCurve;
+	}
+
+
+	/** Configurations **/
+
+	private List<Configuration> createConfigurations() {
+		String baseCLI;
+		boolean combination;
+		if (microAlgorithmOption.getValueAsCLIString() != "") {
+			if (macroAlgorithmOption.getValueAsCLIString() == "") {
+				throw new RuntimeException("EvaluateSubspaceClusteringSweep: macro clusterer is not specified,"
+						+ "while micro clusterer is given", new RequiredOptionNotSpecifiedException());
+			}
+			baseCLI = microAlgorithmOption.getValueAsCLIString();
+			combination = true;
+		} else if (oneStopAlgorithmOption.getValueAsCLIString() != "") {
+			baseCLI = oneStopAlgorithmOption.getValueAsCLIString();
+			combination = false;
+		} else {
+			throw new RuntimeException("EvaluateSubspaceClusteringSweep: clusterer is not specified",
+					new RequiredOptionNotSpecifiedException());
+		}
+
+		List<String> clustererCLIs = expandGrid(baseCLI, gridOption.getValue());
+		List<String> macroCLIs = combination
+				? expandGrid(macroAlgorithmOption.getValueAsCLIString(), macroGridOption.getValue())
+				: null;
+
+		String dumpFilename = dumpFileOption.getValue();
+		boolean binary = dumpFormatOption.getChosenIndex() == 1;
+		List<Configuration> result = new ArrayList<Configuration>();
+		for (String clustererCLI : clustererCLIs) {
+			for (int m = 0; m < (combination ? macroCLIs.size() : 1); m++) {
+				Configuration c = new Configuration();
+				try {
+					if (combination) {
+						c.microClusterer = (AbstractClusterer) ClassOption.cliStringToObject(clustererCLI, Clusterer.class, null);
+						c.macroClusterer = (MacroSubspaceClusterer) ClassOption.cliStringToObject(macroCLIs.get(m), MacroSubspaceClusterer.class, null);
+						c.microClusterer.prepareForUse();
+						c.macroClusterer.prepareForUse();
+						c.description = clustererCLI + " + " + macroCLIs.get(m);
+					} else {
+						c.oneStopClusterer = (AbstractSubspaceClusterer) ClassOption.cliStringToObject(clustererCLI, SubspaceClusterer.class, null);
+						c.oneStopClusterer.prepareForUse();
+						c.description = clustererCLI;
+					}
+				} catch (Exception e) {
+					throw new RuntimeException("EvaluateSubspaceClusteringSweep: cannot create configuration " + clustererCLI, e);
+				}
+
+				c.measures = getMeasureInstances();
+				c.dump = new SubspaceEvaluationDump(getConfigurationFilename(dumpFilename, result.size()), c.measures,
+						binary, dumpFlushIntervalOption.getValue());
+				result.add(c);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * All combinations of the grid values, appended to the base CLI string.
+	 *
+	 * @param grid - "-x v1,v2,... -y w1,w2,..."
+	 */
+	static List<String> expandGrid(String baseCLI, String grid) {
+		List<String> result = new ArrayList<String>();
+		result.add(baseCLI);
+		String[] tokens = grid.trim().split("\\s+");
+		if (grid.trim().isEmpty()) {
+			return result;
+		}
+		if (tokens.length % 2 != 0) {
+			throw new IllegalArgumentException("Parameter grid must consist of option/value list pairs: " + grid);
+		}
+		for (int t = 0; t < tokens.length; t += 2) {
+			String[] values = tokens[t + 1].split(",");
+			List<String> expanded = new ArrayList<String>();
+			for (String cli : result) {
+				for (String value : values) {
+					expanded.add(cli + " " + tokens[t] + " " + value);
+				}
+			}
+			result = expanded;
+		}
+		return result;
+	}
+
+	private static String getConfigurationFilename(String dumpFilename, int nr) {
+		int dot = dumpFilename.lastIndexOf('.');
+		if (dot > dumpFilename.lastIndexOf('/') && dot > 0) {
+			return dumpFilename.substring(0, dot) + "_" + nr + dumpFilename.substring(dot);
+		}
+		return dumpFilename + "_" + nr;
+	}
+
+	private void writeConfigurationList() {
+		String filepath = dumpFileOption.getValue();
+		int dot = filepath.lastIndexOf('.');
+		if (dot > filepath.lastIndexOf('/') && dot > 0) {
+			filepath = filepath.substring(0, dot);
+		}
+		filepath += "_configurations.txt";
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(filepath));
+			for (int c = 0; c < configurations.size(); c++) {
+				out.println(c + ";" + configurations.get(c).description);
+			}
+			out.close();
+		} catch (IOException ex) {
+			Logger.getLogger(EvaluateSubspaceClusteringSweep.class.getName()).log(Level.SEVERE, null, ex);
+		}
+		System.out.println("EvaluateSubspaceClusteringSweep: " + configurations.size() + " configurations");
+	}
+
+
+	/** Simulation **/
+
+	private void sweep() {
+		readStreamSettings();
+		batch.clear();
+		try {
+			runStream();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("EvaluateSubspaceClusteringSweep: interrupted", e);
+		}
+
+		// Remaining instances are only trained on
+		if (!batch.isEmpty()) {
+			processBatch(0, false, null, null);
+		}
+
+		/** Finish the dump files **/
+		for (Configuration c : configurations) {
+			c.dump.close(c.measures);
+		}
+	}
+
+	/**
+	 * Points are trained on in batches, by all configurations in parallel.
+	 */
+	@Override
+	protected void trainOnPoint(SubspaceDataPoint point, int timestamp) {
+		batch.add(point);
+	}
+
+	/**
+	 * All configurations catch up and evaluate.
+	 */
+	@Override
+	protected void evaluate(int timestamp, SubspaceDataPointWindow window, SubspaceGroundTruth groundTruth) {
+		processBatch(timestamp, true, groundTruth.getClustering(), window);
+		batch.clear();
+	}
+
+	private void processBatch(final int timestamp, final boolean evaluate,
+			final SubspaceClustering gtClustering, final SubspaceDataPointWindow window) {
+
+		List<Future<Object>> results = new ArrayList<Future<Object>>(configurations.size());
+		for (final Configuration c : configurations) {
+			results.add(workers.submit(new Callable<Object>() {
+				public Object call() {
+					c.process(batch, timestamp, evaluate, gtClustering, window);
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("EvaluateSubspaceClusteringSweep: interrupted", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("EvaluateSubspaceClusteringSweep: configuration failed", e.getCause());
+			}
+		}
+	}
+}
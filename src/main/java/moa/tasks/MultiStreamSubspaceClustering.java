@@ -0,0 +1,274 @@
+/**
+ * [MultiStreamSubspaceClustering.java] for Subspace MOA
+ *
+ * Clusters many independent streams at once, e.g. one per sensor. Every key gets
+ * its own subspace clusterer (created from a CLI string on its first instance).
+ *
+ * - Keys are assigned to a fixed pool of worker threads by hash, so the instances
+ *   of one key are trained in submission order by always the same worker and a
+ *   clusterer is never touched by two threads.
+ * - Each worker has a bounded queue; submit() blocks while it is full.
+ * - Clusterers publish snapshots (AbstractSubspaceClusterer.takeSnapshot()) every
+ *   'snapshotInterval' instances of their key, and all of them on snapshot().
+ *   By default these only copy the micro-cluster statistics; the (macro)
+ *   clustering is computed and copied on the worker only if asked for.
+ *
+ *   MultiStreamSubspaceClustering<String> service =
+ *        new MultiStreamSubspaceClustering<String>("hddstream.HDDStream", 0, 1024, 1000);
+ *   service.submit(sensorId, instance);
+ *   ...
+ *   Map<String, SubspaceClustererSnapshot> snapshots = service.snapshot();
+ *   service.shutdown();
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.clusterers.SubspaceClustererSnapshot;
+import moa.options.ClassOption;
+import weka.core.Instance;
+
+public class MultiStreamSubspaceClustering<K> {
+
+	private final String clustererCLI;
+	private final int snapshotInterval;
+	private final boolean snapshotClustering;
+
+	private final ArrayList<Worker> workers;
+	private final ConcurrentHashMap<K, SubspaceClustererSnapshot> snapshots = new ConcurrentHashMap<K, SubspaceClustererSnapshot>();
+
+	private volatile Throwable failure;
+	private volatile boolean shutdown = false;
+	private final ReentrantReadWriteLock shutdownLock = new ReentrantReadWriteLock();	// Read: queueing, write: shutdown
+
+	private final Item<K> END = new Item<K>(null, null, null);
+
+
+	/**
+	 * Start the workers. Snapshots contain the micro-clustering only.
+	 *
+	 * @param clustererCLI - subspace clusterer for every key, e.g. "hddstream.HDDStream -e 0.5"
+	 * @param numWorkers - worker threads (0 = number of processors)
+	 * @param queueCapacity - pending instances per worker
+	 * @param snapshotInterval - instances of a key between two snapshots (0 = only on snapshot())
+	 */
+	public MultiStreamSubspaceClustering(String clustererCLI, int numWorkers, int queueCapacity, int snapshotInterval) {
+		this(clustererCLI, numWorkers, queueCapacity, snapshotInterval, false);
+	}
+
+	/**
+	 * @param snapshotClustering - also compute the (macro) clustering for snapshots
+	 */
+	public MultiStreamSubspaceClustering(String clustererCLI, int numWorkers, int queueCapacity,
+			int snapshotInterval, boolean snapshotClustering) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("MultiStreamSubspaceClustering: queue capacity must be positive");
+		}
+		this.clustererCLI = clustererCLI;
+		this.snapshotInterval = snapshotInterval;
+		this.snapshotClustering = snapshotClustering;
+		createClusterer();		// Fails here on an invalid CLI string
+
+		if (numWorkers <= 0) {
+			numWorkers = Runtime.getRuntime().availableProcessors();
+		}
+		workers = new ArrayList<Worker>(numWorkers);
+		for (int i = 0; i < numWorkers; i++) {
+			Worker worker = new Worker(queueCapacity);
+			worker.thread = new Thread(worker, "MultiStreamSubspaceClustering-" + i);
+			worker.thread.setDaemon(true);
+			workers.add(worker);
+			worker.thread.start();
+		}
+	}
+
+	private AbstractSubspaceClusterer createClusterer() {
+		try {
+			AbstractSubspaceClusterer clusterer = (AbstractSubspaceClusterer) ClassOption.cliStringToObject(
+					clustererCLI, SubspaceClusterer.class, null);
+			clusterer.prepareForUse();
+			return clusterer;
+		} catch (Exception e) {
+			throw new RuntimeException("MultiStreamSubspaceClustering: cannot create clusterer " + clustererCLI, e);
+		}
+	}
+
+	private Worker workerOf(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return workers.get((h & 0x7fffffff) % workers.size());
+	}
+
+
+	/** Input **/
+
+	/**
+	 * Queue an instance of the stream 'key'; blocks while the worker of the key is busy.
+	 * The instance is trained as it is (see keepClassLabel() of the clusterer).
+	 */
+	public void submit(K key, Instance inst) throws InterruptedException {
+		shutdownLock.readLock().lockInterruptibly();
+		try {
+			checkState();
+			workerOf(key).queue.put(new Item<K>(key, inst, null));
+		} finally {
+			shutdownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Latest snapshot of a key, or null if there is none yet.
+	 */
+	public SubspaceClustererSnapshot getSnapshot(K key) {
+		return snapshots.get(key);
+	}
+
+	/**
+	 * Snapshot every key after all instances submitted so far; blocks until done.
+	 *
+	 * @return snapshots by key
+	 */
+	public Map<K, SubspaceClustererSnapshot> snapshot() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(workers.size());
+		shutdownLock.readLock().lockInterruptibly();
+		try {
+			checkState();
+			for (Worker worker : workers) {
+				worker.queue.put(new Item<K>(null, null, done));
+			}
+		} finally {
+			shutdownLock.readLock().unlock();
+		}
+		done.await();
+		checkState();
+		return new HashMap<K, SubspaceClustererSnapshot>(snapshots);
+	}
+
+	/**
+	 * Train the remaining instances and stop the workers. Waits for submit() and
+	 * snapshot() calls that are queueing, later calls fail.
+	 */
+	public void shutdown() throws InterruptedException {
+		shutdownLock.writeLock().lockInterruptibly();
+		try {
+			if (shutdown) {
+				return;
+			}
+			shutdown = true;
+		} finally {
+			shutdownLock.writeLock().unlock();
+		}
+		for (Worker worker : workers) {
+			worker.queue.put(END);
+		}
+		for (Worker worker : workers) {
+			worker.thread.join();
+		}
+		if (failure != null) {
+			throw new RuntimeException("MultiStreamSubspaceClustering: worker failed", failure);
+		}
+	}
+
+	private void checkState() {
+		if (failure != null) {
+			throw new RuntimeException("MultiStreamSubspaceClustering: worker failed", failure);
+		}
+		if (shutdown) {
+			throw new IllegalStateException("MultiStreamSubspaceClustering: already shut down");
+		}
+	}
+
+
+	/** Workers **/
+
+	/** Queue entry: an instance of a key, or a snapshot request ('done' set) **/
+	private static class Item<K> {
+		final K key;
+		final Instance inst;
+		final CountDownLatch done;
+
+		Item(K key, Instance inst, CountDownLatch done) {
+			this.key = key;
+			this.inst = inst;
+			this.done = done;
+		}
+	}
+
+	private static class Model {
+		AbstractSubspaceClusterer clusterer;
+		int sinceSnapshot = 0;
+	}
+
+	private class Worker implements Runnable {
+
+		final BlockingQueue<Item<K>> queue;
+		final HashMap<K, Model> models = new HashMap<K, Model>();	// Keys of this worker only
+		Thread thread;
+
+		Worker(int queueCapacity) {
+			queue = new ArrayBlockingQueue<Item<K>>(queueCapacity);
+		}
+
+		public void run() {
+			try {
+				Item<K> next;
+				while ((next = queue.take()) != END) {
+					if (failure != null) {
+						if (next.done != null) {
+							next.done.countDown();
+						}
+						continue;		// Drain, so submitters do not block
+					}
+					try {
+						if (next.done != null) {
+							for (Map.Entry<K, Model> e : models.entrySet()) {
+								takeSnapshot(e.getKey(), e.getValue());
+							}
+							next.done.countDown();
+						} else {
+							train(next);
+						}
+					} catch (Throwable t) {
+						failure = t;
+						if (next.done != null) {
+							next.done.countDown();
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				failure = e;
+			}
+		}
+
+		private void train(Item<K> item) {
+			Model model = models.get(item.key);
+			if (model == null) {
+				model = new Model();
+				model.clusterer = createClusterer();
+				models.put(item.key, model);
+			}
+			model.clusterer.trainOnInstance(item.inst);
+			model.sinceSnapshot++;
+			if (snapshotInterval > 0 && model.sinceSnapshot >= snapshotInterval) {
+				takeSnapshot(item.key, model);
+			}
+		}
+
+		private void takeSnapshot(K key, Model model) {
+			snapshots.put(key, model.clusterer.takeSnapshot(true, snapshotClustering));
+			model.sinceSnapshot = 0;
+		}
+	}
+}
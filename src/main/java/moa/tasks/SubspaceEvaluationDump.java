@@ -0,0 +1,145 @@
+/**
+ * [SubspaceEvaluationDump.java] for Subspace MOA
+ *
+ * Dump file of an evaluation run: one row of the latest averaged measure values
+ * per evaluation, then the means. Used by the evaluation tasks.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import moa.evaluation.SubspaceEvaluationBinaryWriter;
+import moa.evaluation.SubspaceEvaluationCSVWriter;
+import moa.evaluation.SubspaceEvaluationWriter;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.streams.clustering.ClusterEvent;
+
+class SubspaceEvaluationDump {
+
+	private SubspaceEvaluationWriter writer;
+	private double[] row;
+	private int eventIndex = 0;
+
+	/**
+	 * Open the dump file and write its header.
+	 *
+	 * @param filepath - extension is adjusted to the format
+	 * @param binary - binary blocks instead of csv
+	 */
+	SubspaceEvaluationDump(String filepath, SubspaceMeasureCollection[] measures, boolean binary, int flushInterval) {
+		ArrayList<String> columns = new ArrayList<String>();
+		for (int i = 0; i < measures.length; i++) {
+			for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+				if (measures[i].isEnabled(j)) {
+					columns.add(measures[i].getName(j));
+				}
+			}
+		}
+		String[] columnNames = columns.toArray(new String[columns.size()]);
+		row = new double[columnNames.length];
+
+		try {
+			if (binary) {
+				if (filepath.endsWith(".csv")) {
+					filepath = filepath.substring(0, filepath.length() - 4);
+				}
+				if (!filepath.endsWith(".bin")) {
+					filepath += ".bin";
+				}
+				writer = new SubspaceEvaluationBinaryWriter(filepath, columnNames, flushInterval);
+			} else {
+				if (!filepath.endsWith(".csv")) {
+					filepath += ".csv";
+				}
+				writer = new SubspaceEvaluationCSVWriter(filepath, columnNames, flushInterval);
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(SubspaceEvaluationDump.class.getName()).log(Level.SEVERE, null, ex);
+			writer = null;
+		}
+	}
+
+	/**
+	 * Append the latest averaged values of all enabled measures.
+	 * The first pending event up to 'horizon' is noted in the row.
+	 *
+	 * @param clusterEvents - events of the stream so far, or null
+	 */
+	void writeRow(int nr, SubspaceMeasureCollection[] measures, int horizon, List<ClusterEvent> clusterEvents) {
+		if (writer == null) {
+			return;
+		}
+
+		// Events
+		String eventType = "";
+		if (clusterEvents != null && eventIndex < clusterEvents.size()) {
+			ClusterEvent event = clusterEvents.get(eventIndex);
+			if (event.getTimestamp() <= horizon) {
+				eventType = event.getType();
+				eventIndex++;
+			}
+		}
+
+		// Values
+		int c = 0;
+		for (int i = 0; i < measures.length; i++) {
+			for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+				if (measures[i].isEnabled(j)) {
+					row[c++] = measures[i].getLastValue(j);
+				}
+			}
+		}
+
+		try {
+			writer.writeRow(nr, eventType, row);
+		} catch (IOException ex) {
+			Logger.getLogger(SubspaceEvaluationDump.class.getName()).log(Level.SEVERE, null, ex);
+		}
+	}
+
+	/**
+	 * Advance past a row written before a resumed run, without writing it.
+	 */
+	void skipRow(int horizon, List<ClusterEvent> clusterEvents) {
+		if (clusterEvents != null && eventIndex < clusterEvents.size()
+				&& clusterEvents.get(eventIndex).getTimestamp() <= horizon) {
+			eventIndex++;
+		}
+	}
+
+	/**
+	 * Write the mean values and close the dump file.
+	 */
+	void close(SubspaceMeasureCollection[] measures) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			int c = 0;
+			for (int i = 0; i < measures.length; i++) {
+				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+					if (measures[i].isEnabled(j)) {
+						row[c++] = measures[i].getMean(j);
+					}
+				}
+			}
+			writer.writeMeans(row);
+		} catch (IOException ex) {
+			Logger.getLogger(SubspaceEvaluationDump.class.getName()).log(Level.SEVERE, null, ex);
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException ex) {
+				Logger.getLogger(SubspaceEvaluationDump.class.getName()).log(Level.SEVERE, null, ex);
+			}
+			writer = null;
+		}
+	}
+}
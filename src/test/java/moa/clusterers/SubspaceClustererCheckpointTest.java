@@ -0,0 +1,91 @@
+package moa.clusterers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import moa.cluster.CFCluster;
+import moa.cluster.Clustering;
+import moa.clusterers.hddstream.HDDStream;
+import moa.clusterers.predeconstream.PreDeConStream;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import org.junit.Test;
+import weka.core.Instance;
+
+import static org.junit.Assert.*;
+
+public class SubspaceClustererCheckpointTest {
+
+	private static Instance[] points(int n) {
+		RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+		stream.numAttsOption.setValue(10);
+		stream.prepareForUse();
+		Instance[] points = new Instance[n];
+		for (int i = 0; i < n; i++) {
+			points[i] = stream.nextInstance();
+		}
+		return points;
+	}
+
+	/**
+	 * Train 'original' on the first points, checkpoint it, continue both it and
+	 * the restored copy on the rest; their micro-clusters must be equal.
+	 */
+	private static void assertRoundTrip(AbstractSubspaceClusterer original, int saveAt, int total) throws Exception {
+		Instance[] points = points(total);
+		original.prepareForUse();
+		for (int i = 0; i < saveAt; i++) {
+			original.trainOnInstance(points[i]);
+		}
+		original.setStreamPosition(saveAt);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		original.saveCheckpoint(bytes);
+		AbstractSubspaceClusterer restored = AbstractSubspaceClusterer.loadCheckpoint(
+				new ByteArrayInputStream(bytes.toByteArray()));
+
+		assertSame(original.getClass(), restored.getClass());
+		assertEquals(saveAt, restored.getStreamPosition());
+		assertEquals(original.trainingWeightSeenByModel(), restored.trainingWeightSeenByModel(), 0.0);
+		assertSameMicroClusters(original.getMicroClusteringResult(), restored.getMicroClusteringResult());
+
+		for (int i = saveAt; i < total; i++) {
+			original.trainOnInstance(points[i]);
+			restored.trainOnInstance(points[i]);
+		}
+		assertTrue(original.getMicroClusteringResult().getClustering().size() > 0);
+		assertSameMicroClusters(original.getMicroClusteringResult(), restored.getMicroClusteringResult());
+		assertEquals(original.getClusteringResult().size(), restored.getClusteringResult().size());
+	}
+
+	private static void assertSameMicroClusters(Clustering expected, Clustering actual) {
+		assertEquals(expected.getClustering().size(), actual.getClustering().size());
+		for (int c = 0; c < expected.getClustering().size(); c++) {
+			CFCluster e = (CFCluster) expected.getClustering().get(c);
+			CFCluster a = (CFCluster) actual.getClustering().get(c);
+			assertEquals(e.getN(), a.getN(), 0.0);
+			assertEquals(e.getWeight(), a.getWeight(), 0.0);
+			assertEquals(e.LS.length, a.LS.length);
+			for (int j = 0; j < e.LS.length; j++) {
+				assertEquals(e.LS[j], a.LS[j], 0.0);
+				assertEquals(e.SS[j], a.SS[j], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void hddStreamShouldContinueFromCheckpoint() throws Exception {
+		HDDStream clusterer = new HDDStream();
+		clusterer.epsilonNOption.setValue(3);
+		assertRoundTrip(clusterer, 3000, 6000);
+	}
+
+	@Test
+	public void preDeConStreamShouldContinueFromCheckpoint() throws Exception {
+		assertRoundTrip(new PreDeConStream(), 3000, 6000);
+	}
+
+	@Test
+	public void checkpointBeforeInitializationShouldKeepTheBuffer() throws Exception {
+		assertRoundTrip(new HDDStream(), 50, 3000);
+	}
+}
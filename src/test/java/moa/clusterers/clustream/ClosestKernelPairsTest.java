@@ -0,0 +1,92 @@
+package moa.clusterers.clustream;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static moa.clusterers.clustream.ClustreamFixtures.*;
+import static org.junit.Assert.*;
+
+public class ClosestKernelPairsTest {
+
+	private static final int DIMENSIONS = 3;
+
+	/** The full search of Clustream; ties to the lower first, then the lower second index **/
+	private static int[] fullSearch(ClustreamKernel[] kernels) {
+		int[] pair = {0, 0};
+		double minDistance = Double.MAX_VALUE;
+		for (int i = 0; i < kernels.length; i++) {
+			for (int j = i + 1; j < kernels.length; j++) {
+				double d = distance(kernels[i].getCenter(), kernels[j].getCenter());
+				if (d < minDistance) {
+					minDistance = d;
+					pair = new int[] {i, j};
+				}
+			}
+		}
+		return pair;
+	}
+
+	@Test
+	public void shouldFollowInsertsReplacementsAndMerges() {
+		for (int m : new int[] {2, 20, 50}) {
+			Random random = new Random(m);
+			ClustreamKernel[] kernels = new ClustreamKernel[m];
+			for (int i = 0; i < m; i++) {
+				kernels[i] = gridKernel(random, DIMENSIONS, i);
+			}
+			ClosestKernelPairs pairs = new ClosestKernelPairs(kernels);
+
+			for (int step = 0; step < 3000; step++) {
+				int i = random.nextInt(m), j = random.nextInt(m);
+				switch (random.nextInt(4)) {
+				case 0:		// Point absorbed
+					kernels[i].insert(gridPoint(random, DIMENSIONS), step);
+					pairs.changed(i);
+					break;
+				case 1:		// Kernel replaced
+					kernels[i] = gridKernel(random, DIMENSIONS, step);
+					pairs.changed(i);
+					break;
+				case 2:		// Two kernels merged, one of them replaced
+					if (i != j) {
+						kernels[i].add(kernels[j]);
+						kernels[j] = gridKernel(random, DIMENSIONS, step);
+						pairs.changed(i);
+						pairs.changed(j);
+					}
+					break;
+				default:	// Many changes at once, beyond the incremental limit
+					for (int c = 0; c < m; c += 2) {
+						kernels[c] = gridKernel(random, DIMENSIONS, step);
+						pairs.changed(c);
+					}
+				}
+				int[] expected = fullSearch(kernels);
+				int[] actual = pairs.closestPair();
+				assertEquals("m = " + m + ", step " + step, expected[0], actual[0]);
+				assertEquals("m = " + m + ", step " + step, expected[1], actual[1]);
+			}
+		}
+	}
+
+	@Test
+	public void shouldBreakTiesByLowerIndices() {
+		ClustreamKernel[] kernels = new ClustreamKernel[4];
+		double[][] centers = {{0, 0, 0}, {5, 0, 0}, {6, 0, 0}, {1, 0, 0}};	// (0,3) and (1,2) both at 1
+		for (int i = 0; i < kernels.length; i++) {
+			kernels[i] = kernelAt(centers[i], i);
+		}
+		int[] pair = new ClosestKernelPairs(kernels).closestPair();
+		assertEquals(0, pair[0]);
+		assertEquals(3, pair[1]);
+	}
+
+	@Test
+	public void shouldReturnTrivialPairForOneKernel() {
+		ClustreamKernel[] kernels = {gridKernel(new Random(4), DIMENSIONS, 0)};
+		int[] pair = new ClosestKernelPairs(kernels).closestPair();
+		assertEquals(0, pair[0]);
+		assertEquals(0, pair[1]);
+	}
+}
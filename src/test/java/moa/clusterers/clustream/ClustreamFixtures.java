@@ -0,0 +1,85 @@
+package moa.clusterers.clustream;
+
+import java.util.Random;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+/**
+ * Kernels and points shared by the CluStream tests. Coordinates lie on a small
+ * integer grid, so that many distances tie.
+ */
+class ClustreamFixtures {
+
+	static final int GRID = 4;
+	static final int M = 3;
+
+	static Instance gridPoint(Random random, int dimensions) {
+		return new DenseInstance(1.0, gridCoordinates(random, dimensions));
+	}
+
+	static double[] gridCoordinates(Random random, int dimensions) {
+		double[] values = new double[dimensions];
+		for (int a = 0; a < dimensions; a++) {
+			values[a] = random.nextInt(GRID);
+		}
+		return values;
+	}
+
+	/** Kernel of one point **/
+	static ClustreamKernel kernelAt(double[] center, long timestamp) {
+		return new ClustreamKernel(new DenseInstance(1.0, center), center.length, timestamp, 2.0, 100);
+	}
+
+	static ClustreamKernel gridKernel(Random random, int dimensions, long timestamp) {
+		return kernelAt(gridCoordinates(random, dimensions), timestamp);
+	}
+
+	/**
+	 * One-dimensional kernel of 'n' points, all at time 'meanTime'. With M = 3,
+	 * kernels of n < 6 points stamp their mean time.
+	 */
+	static ClustreamKernel timedKernel(double n, double meanTime) {
+		return ClustreamKernel.fromStatistics(n, new double[] {n}, new double[] {n},
+				n * meanTime, n * meanTime * meanTime, 2.0, M);
+	}
+
+	/** Kernel whose time variance is negative, so its relevance stamp is NaN **/
+	static ClustreamKernel nanStampKernel() {
+		return ClustreamKernel.fromStatistics(10, new double[] {10}, new double[] {10}, 100, 0, 2.0, M);
+	}
+
+	/**
+	 * @param grid - coordinates on the grid (duplicates and ties), otherwise
+	 * Gaussian blobs around three centers
+	 */
+	static double[][] randomPoints(Random random, int n, int dimensions, boolean grid) {
+		double[][] points = new double[n][];
+		for (int i = 0; i < n; i++) {
+			points[i] = grid ? gridCoordinates(random, dimensions) : new double[dimensions];
+			if (!grid) {
+				for (int a = 0; a < dimensions; a++) {
+					points[i][a] = random.nextGaussian() + 5 * random.nextInt(3);
+				}
+			}
+		}
+		return points;
+	}
+
+	/** Weights 1..3, a fifth of them 0 **/
+	static double[] randomWeights(Random random, int n) {
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = (random.nextInt(5) == 0) ? 0 : 1 + random.nextInt(3);
+		}
+		return weights;
+	}
+
+	static double distance(double[] a, double[] b) {
+		double distance = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			distance += (a[i] - b[i]) * (a[i] - b[i]);
+		}
+		return Math.sqrt(distance);
+	}
+}
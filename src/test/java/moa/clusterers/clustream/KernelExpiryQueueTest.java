@@ -0,0 +1,81 @@
+package moa.clusterers.clustream;
+
+import java.util.Random;
+
+import org.junit.Test;
+import weka.core.DenseInstance;
+
+import static moa.clusterers.clustream.ClustreamFixtures.*;
+import static org.junit.Assert.*;
+
+public class KernelExpiryQueueTest {
+
+	/** Integer mean times, so that stamps tie with each other and the threshold **/
+	private static ClustreamKernel randomKernel(Random random) {
+		switch (random.nextInt(5)) {
+		case 0:
+			return nanStampKernel();
+		case 1:
+			return timedKernel(10, random.nextInt(20));		// Enough points for the quantile
+		default:
+			return timedKernel(1 + random.nextInt(2 * M - 1), random.nextInt(20));
+		}
+	}
+
+	/** The linear scan that Clustream used **/
+	private static int firstBelow(ClustreamKernel[] kernels, long threshold) {
+		for (int i = 0; i < kernels.length; i++) {
+			if (kernels[i].getRelevanceStamp() < threshold) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void shouldFindTheKernelOfTheLinearScan() {
+		for (int m : new int[] {1, 7, 64, 100}) {		// 7 and 100 are not powers of two
+			Random random = new Random(m);
+			ClustreamKernel[] kernels = new ClustreamKernel[m];
+			for (int i = 0; i < m; i++) {
+				kernels[i] = randomKernel(random);
+			}
+			KernelExpiryQueue queue = new KernelExpiryQueue(kernels);
+
+			for (int step = 0; step < 3000; step++) {
+				int i = random.nextInt(m);
+				int op = random.nextInt(10);
+				if (op < 7) {
+					kernels[i] = randomKernel(random);
+					queue.changed(i);
+				} else if (op < 9) {
+					kernels[i].insert(new DenseInstance(1.0, new double[] {0}), random.nextInt(20));
+					queue.changed(i);
+				} else {
+					for (int c = 0; c < m; c++) {
+						kernels[c] = randomKernel(random);
+					}
+					queue.changedAll();
+				}
+				long threshold = random.nextInt(22) - 1;
+				assertEquals("m = " + m + ", step " + step, firstBelow(kernels, threshold), queue.firstExpired(threshold));
+			}
+		}
+	}
+
+	@Test
+	public void shouldNotExpireAStampEqualToTheThreshold() {
+		ClustreamKernel[] kernels = {timedKernel(1, 5), timedKernel(1, 4)};
+		KernelExpiryQueue queue = new KernelExpiryQueue(kernels);
+		assertEquals(1, queue.firstExpired(5));
+		assertEquals(0, queue.firstExpired(6));
+		assertEquals(-1, queue.firstExpired(4));
+	}
+
+	@Test
+	public void shouldNeverExpireNaNStamps() {
+		ClustreamKernel[] kernels = {nanStampKernel(), nanStampKernel()};
+		assertTrue(Double.isNaN(kernels[0].getRelevanceStamp()));
+		assertEquals(-1, new KernelExpiryQueue(kernels).firstExpired(Long.MAX_VALUE));
+	}
+}
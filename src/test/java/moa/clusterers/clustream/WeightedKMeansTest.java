@@ -0,0 +1,134 @@
+package moa.clusterers.clustream;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static moa.clusterers.clustream.ClustreamFixtures.*;
+import static org.junit.Assert.*;
+
+public class WeightedKMeansTest {
+
+	/**
+	 * Lloyd's algorithm: every point assigned by a full scan (ties to the lower
+	 * center), centers moved to the weighted means, same stopping rule.
+	 */
+	private static class Lloyd {
+		final double[][] centers;
+		final int[] assignment;
+		int iterations;
+
+		Lloyd(double[][] points, double[] weights, double[][] initial, int maxIterations) {
+			int k = initial.length, d = initial[0].length;
+			centers = new double[k][];
+			for (int j = 0; j < k; j++) {
+				centers[j] = initial[j].clone();
+			}
+			assignment = new int[points.length];
+			boolean changed = assign(points);
+			while (true) {
+				iterations++;
+				double[][] sums = new double[k][d];
+				double[] weightSums = new double[k];
+				for (int i = 0; i < points.length; i++) {
+					for (int a = 0; a < d; a++) {
+						sums[assignment[i]][a] += weights[i] * points[i][a];
+					}
+					weightSums[assignment[i]] += weights[i];
+				}
+				boolean moved = false;
+				for (int j = 0; j < k; j++) {
+					for (int a = 0; a < d && weightSums[j] > 0; a++) {
+						double c = sums[j][a] / weightSums[j];
+						moved |= (c != centers[j][a]);
+						centers[j][a] = c;
+					}
+				}
+				if (!moved || iterations >= maxIterations) {
+					break;
+				}
+				changed = assign(points);
+				if (!changed) {
+					break;
+				}
+			}
+		}
+
+		private boolean assign(double[][] points) {
+			boolean changed = false;
+			for (int i = 0; i < points.length; i++) {
+				int closest = 0;
+				double min = Double.MAX_VALUE;
+				for (int j = 0; j < centers.length; j++) {
+					double dist = distance(points[i], centers[j]);
+					if (dist < min) {
+						min = dist;
+						closest = j;
+					}
+				}
+				changed |= (closest != assignment[i]);
+				assignment[i] = closest;
+			}
+			return changed;
+		}
+	}
+
+	private static void assertSameAsLloyd(double[][] points, double[] weights, int k, int maxIterations, Random random) {
+		double[][] centers = new double[k][];
+		WeightedKMeans.seed(points, weights, centers, 0, random);
+		Lloyd expected = new Lloyd(points, weights, centers, maxIterations);
+
+		int[] assignment = new int[points.length];
+		assertEquals(expected.iterations, WeightedKMeans.cluster(points, weights, centers, assignment, maxIterations));
+		for (int i = 0; i < points.length; i++) {
+			assertEquals("point " + i, expected.assignment[i], assignment[i]);
+		}
+		for (int j = 0; j < k; j++) {
+			for (int a = 0; a < centers[j].length; a++) {
+				assertEquals(expected.centers[j][a], centers[j][a], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void shouldGiveTheResultOfLloyd() {
+		Random random = new Random(1);
+		for (int run = 0; run < 30; run++) {
+			int k = 2 + run % 9, d = 1 + run % 5;
+			assertSameAsLloyd(randomPoints(random, 300, d, false), randomWeights(random, 300), k,
+					WeightedKMeans.DEFAULT_MAX_ITERATIONS, random);
+		}
+	}
+
+	@Test
+	public void shouldAssignTiedPointsLikeAFullScan() {
+		Random random = new Random(2);
+		for (int run = 0; run < 30; run++) {
+			int k = 2 + run % 9, d = 1 + run % 3;
+			assertSameAsLloyd(randomPoints(random, 200, d, true), randomWeights(random, 200), k,
+					WeightedKMeans.DEFAULT_MAX_ITERATIONS, random);
+		}
+	}
+
+	@Test
+	public void shouldStopAfterMaxIterations() {
+		Random random = new Random(3);
+		for (int run = 0; run < 10; run++) {
+			assertSameAsLloyd(randomPoints(random, 300, 2, false), randomWeights(random, 300), 8, 2, random);
+		}
+	}
+
+	@Test
+	public void shouldKeepGivenCentersWhenSeeding() {
+		double[][] points = {{0}, {1}, {2}, {3}};
+		double[] weights = {1, 1, 1, 1};
+		double[][] centers = {{1.5}, null, null, null};
+		WeightedKMeans.seed(points, weights, centers, 1, new Random(5));
+		assertEquals(1.5, centers[0][0], 0.0);
+		for (int j = 1; j < centers.length; j++) {
+			for (int j2 = 0; j2 < j; j2++) {
+				assertFalse(centers[j][0] == centers[j2][0]);
+			}
+		}
+	}
+}
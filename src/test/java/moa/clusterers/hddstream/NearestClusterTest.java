@@ -0,0 +1,51 @@
+package moa.clusterers.hddstream;
+
+import moa.cluster.Clustering;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import org.junit.Test;
+
+import static moa.clusterers.hddstream.ProjectedDistanceBenchmark.*;
+import static org.junit.Assert.*;
+
+public class NearestClusterTest {
+
+	private static void assertSameAsFullScan(int numDims) {
+		RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+		stream.numAttsOption.setValue(numDims);
+		stream.prepareForUse();
+		HDDStream clusterer = train(stream, 3000);
+
+		Clustering[] clusterings = {clusterer.potential_microclusters, clusterer.outlier_microclusters,
+									clusterer.getMicroClusteringResult()};
+		assertTrue(clusterer.getMicroClusteringResult().size() > 1);
+		for (int i = 0; i < 300; i++) {
+			DenPoint p = new DenPoint(stream.nextInstance(), clusterer.currentTimestamp);
+			for (Clustering cl : clusterings) {
+				assertSame(nearestByFullScan(clusterer, p, cl), clusterer.nearestCluster(p, cl));
+			}
+		}
+	}
+
+	@Test
+	public void shouldPickTheClusterOfTheFullScan() {
+		assertSameAsFullScan(10);
+		assertSameAsFullScan(50);
+	}
+
+	@Test
+	public void shouldUseTheProjectedDistanceOfAllDimensions() {
+		RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+		stream.numAttsOption.setValue(20);
+		stream.prepareForUse();
+		Clustering microclusters = train(stream, 3000).getMicroClusteringResult();
+		for (int i = 0; i < 100; i++) {
+			double[] p = stream.nextInstance().toDoubleArray();
+			for (int c = 0; c < microclusters.size(); c++) {
+				ProjectedMicroCluster x = (ProjectedMicroCluster) microclusters.get(c);
+				double full = fullProjectedDistance(x, p);
+				assertEquals(full, x.projectedDistanceTo(p, Double.POSITIVE_INFINITY), 1e-9 * full);
+				assertTrue(x.projectedDistanceTo(p, full / 2) >= full / 2);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * [ProjectedDistanceBenchmark.java] for Subspace MOA
+ *
+ * Benchmark of HDDStream.nearestCluster(), which starts with the microcluster
+ * closest in the first dimensions and stops each distance as soon as it exceeds
+ * the best so far, against a full scan of all projected distances.
+ *
+ * Usage: ProjectedDistanceBenchmark [#dimensions] [#training points] [#queries]
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.hddstream;
+
+import moa.cluster.Clustering;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+
+public class ProjectedDistanceBenchmark {
+
+	public static void main(String[] args) {
+		int numDims = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		int numTrain = (args.length > 1) ? Integer.parseInt(args[1]) : 4000;
+		int numQueries = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+
+		RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+		stream.numAttsOption.setValue(numDims);
+		stream.prepareForUse();
+
+		HDDStream clusterer = train(stream, numTrain);
+		Clustering microclusters = clusterer.getMicroClusteringResult();
+
+		DenPoint[] queries = new DenPoint[numQueries];
+		for (int i = 0; i < numQueries; i++) {
+			queries[i] = new DenPoint(stream.nextInstance(), clusterer.currentTimestamp);
+		}
+
+		System.out.println(numDims + " dimensions, " + microclusters.size() + " microclusters, " + numQueries + " queries");
+		for (int round = 0; round < 3; round++) {		// The first rounds warm up the JIT
+			int different = 0;
+			ProjectedMicroCluster[] fullResults = new ProjectedMicroCluster[numQueries];
+
+			long start = System.nanoTime();
+			for (int i = 0; i < numQueries; i++) {
+				fullResults[i] = nearestByFullScan(clusterer, queries[i], microclusters);
+			}
+			long full = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < numQueries; i++) {
+				if (clusterer.nearestCluster(queries[i], microclusters) != fullResults[i]) {
+					different++;
+				}
+			}
+			long bounded = System.nanoTime() - start;
+
+			System.out.println("round " + round
+							 + ": full " + (full / numQueries) + " ns/query"
+							 + ", nearestCluster() " + (bounded / numQueries) + " ns/query"
+							 + (different == 0 ? "" : " (" + different + " DIFFERENT RESULTS)"));
+		}
+	}
+
+	/**
+	 * HDDStream with epsilon 3, trained on the next points of the stream.
+	 */
+	static HDDStream train(RandomRBFSubspaceGeneratorEvents stream, int numPoints) {
+		HDDStream clusterer = new HDDStream();
+		clusterer.epsilonNOption.setValue(3);
+		clusterer.prepareForUse();
+		for (int i = 0; i < numPoints; i++) {
+			clusterer.trainOnInstance(stream.nextInstance());
+		}
+		return clusterer;
+	}
+
+	/**
+	 * Projected distance sqrt(sum_j (p_j - c_j)^2 / w_j) over all dimensions,
+	 * with the preference weights w_j of the microcluster.
+	 */
+	static double fullProjectedDistance(ProjectedMicroCluster x, double[] p) {
+		x.partialSquaredDistanceTo(p, 0);		// Preference weights are computed on use
+		double[] center = x.getCenter();
+		double sum = 0;
+		for (int j = 0; j < center.length; j++) {
+			double d = p[j] - center[j];
+			sum += d * d / x.dimPrefVector[j];
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Nearest microcluster that p can be inserted into, from the full distances
+	 * to all of them; ties go to the lower index.
+	 */
+	static ProjectedMicroCluster nearestByFullScan(HDDStream clusterer, DenPoint p, Clustering cl) {
+		double[] point = p.toDoubleArray();
+		ProjectedMicroCluster nearest = null;
+		double nearestDist = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < cl.size(); c++) {
+			ProjectedMicroCluster x = (ProjectedMicroCluster) cl.get(c);
+			double dist = fullProjectedDistance(x, point);
+			if ((nearest == null || dist < nearestDist) && clusterer.canInsert(x, p)) {
+				nearest = x;
+				nearestDist = dist;
+			}
+		}
+		return nearest;
+	}
+}
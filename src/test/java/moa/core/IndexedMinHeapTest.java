@@ -0,0 +1,109 @@
+package moa.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IndexedMinHeapTest {
+
+	/** Distinct objects that may have equal keys **/
+	private static class Item {
+		final int id;
+
+		Item(int id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Random puts, key changes, removes and polls; the keys are also kept in a
+	 * map. Few distinct keys, so there are many ties.
+	 */
+	@Test
+	public void shouldAlwaysKeepTheSmallestKeyOnTop() {
+		Random random = new Random(7);
+		IndexedMinHeap<Item> heap = new IndexedMinHeap<Item>();
+		IdentityHashMap<Item, Double> expected = new IdentityHashMap<Item, Double>();
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < 200; i++) {
+			items.add(new Item(i));
+		}
+
+		for (int step = 0; step < 20000; step++) {
+			Item item = items.get(random.nextInt(items.size()));
+			int op = random.nextInt(4);
+			if (op <= 1) {
+				double key = random.nextInt(20) - 10;
+				heap.put(item, key);
+				expected.put(item, key);
+			} else if (op == 2) {
+				assertEquals(expected.remove(item) != null, heap.remove(item));
+			} else {
+				Item min = heap.poll();
+				if (expected.isEmpty()) {
+					assertNull(min);
+				} else {
+					assertNotNull(min);
+					assertEquals(minKey(expected), expected.remove(min), 0.0);
+				}
+			}
+
+			assertEquals(expected.size(), heap.size());
+			assertEquals(expected.containsKey(item), heap.contains(item));
+			if (expected.isEmpty()) {
+				assertNull(heap.peek());
+				assertTrue(Double.isNaN(heap.peekKey()));
+			} else {
+				assertEquals(minKey(expected), heap.peekKey(), 0.0);
+				assertEquals(minKey(expected), expected.get(heap.peek()), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void shouldPollInKeyOrderAfterKeyChanges() {
+		IndexedMinHeap<Item> heap = new IndexedMinHeap<Item>();
+		Item[] items = new Item[100];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = new Item(i);
+			heap.put(items[i], i);
+		}
+		for (int i = 0; i < items.length; i += 2) {
+			heap.put(items[i], 1000 - i);		// Even ids move behind all odd ones, descending
+		}
+		for (int i = 1; i < items.length; i += 2) {
+			assertEquals(i, heap.poll().id);
+		}
+		for (int i = items.length - 2; i >= 0; i -= 2) {
+			assertEquals(i, heap.poll().id);
+		}
+		assertEquals(0, heap.size());
+	}
+
+	@Test
+	public void shouldForgetEverythingOnClear() {
+		IndexedMinHeap<Item> heap = new IndexedMinHeap<Item>();
+		Item a = new Item(0);
+		heap.put(a, 1.0);
+		heap.put(new Item(1), 2.0);
+		heap.clear();
+		assertEquals(0, heap.size());
+		assertFalse(heap.contains(a));
+		assertFalse(heap.remove(a));
+		heap.put(a, 3.0);
+		assertSame(a, heap.poll());
+	}
+
+	private static double minKey(IdentityHashMap<Item, Double> keys) {
+		double min = Double.POSITIVE_INFINITY;
+		for (double key : keys.values()) {
+			min = Math.min(min, key);
+		}
+		return min;
+	}
+}
@@ -0,0 +1,74 @@
+package moa.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EvaluateSubspaceClusteringSweepTest {
+
+	private static final String STREAM = "RandomRBFSubspaceGeneratorEvents -u -E 2000 -k 2 -M -C";
+	private static final int LIMIT = 3500;
+
+	private static String tempBase() throws IOException {
+		File file = File.createTempFile("sweep", "");
+		file.delete();
+		return file.getPath();
+	}
+
+	private static List<String> lines(File file) throws IOException {
+		file.deleteOnExit();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static List<String> evaluateAlone(String clustererCLI) throws IOException {
+		File dump = new File(tempBase() + ".csv");
+		EvaluateSubspaceClustering task = new EvaluateSubspaceClustering();
+		task.oneStopAlgorithmOption.setValueViaCLIString(clustererCLI);
+		task.streamOption.setValueViaCLIString(STREAM);
+		task.instanceLimitOption.setValue(LIMIT);
+		task.dumpFileOption.setValue(dump.getPath());
+		task.prepareForUse();
+		task.doTask();
+		return lines(dump);
+	}
+
+	@Test
+	public void shouldWriteTheDumpsOfSeparateRuns() throws IOException {
+		String base = tempBase();
+		EvaluateSubspaceClusteringSweep sweep = new EvaluateSubspaceClusteringSweep();
+		sweep.oneStopAlgorithmOption.setValueViaCLIString("hddstream.HDDStream");
+		sweep.gridOption.setValue("-e 2,3");
+		sweep.streamOption.setValueViaCLIString(STREAM);
+		sweep.instanceLimitOption.setValue(LIMIT);
+		sweep.dumpFileOption.setValue(base + ".csv");
+		sweep.numThreadsOption.setValue(2);
+		sweep.prepareForUse();
+		sweep.doTask();
+		new File(base + "_configurations.txt").deleteOnExit();
+
+		List<String> configurations = EvaluateSubspaceClusteringSweep.expandGrid("hddstream.HDDStream", "-e 2,3");
+		assertEquals(2, configurations.size());
+		for (int c = 0; c < configurations.size(); c++) {
+			List<String> swept = lines(new File(base + "_" + c + ".csv"));
+			assertTrue(swept.size() > 2);
+			assertEquals(configurations.get(c), evaluateAlone(configurations.get(c)), swept);
+		}
+	}
+}
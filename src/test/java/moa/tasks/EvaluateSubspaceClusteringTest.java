@@ -0,0 +1,94 @@
+package moa.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EvaluateSubspaceClusteringTest {
+
+	private static final String STREAM = "RandomRBFSubspaceGeneratorEvents -E 2000 -k 2 -M -C";
+
+	private static File tempFile(String suffix) throws IOException {
+		File file = File.createTempFile("evaluate", suffix);
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void evaluate(File dump, int limit, File checkpoint, int checkpointFrequency,
+			boolean resume, int pipelineDepth) {
+		EvaluateSubspaceClustering task = new EvaluateSubspaceClustering();
+		task.oneStopAlgorithmOption.setValueViaCLIString("hddstream.HDDStream -e 3");
+		task.streamOption.setValueViaCLIString(STREAM);
+		task.instanceLimitOption.setValue(limit);
+		task.dumpFileOption.setValue(dump.getPath());
+		task.pipelineDepthOption.setValue(pipelineDepth);
+		if (checkpoint != null) {
+			task.checkpointFileOption.setValue(checkpoint.getPath());
+			task.checkpointFrequencyOption.setValue(checkpointFrequency);
+		}
+		if (resume) {
+			task.resumeFromCheckpointOption.set();
+		}
+		task.prepareForUse();
+		task.doTask();
+	}
+
+	/** Rows of a csv dump, without header and means **/
+	private static List<String> rows(File dump) throws IOException {
+		List<String> rows = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(dump));
+		try {
+			reader.readLine();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("mean;")) {
+					rows.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Checkpoint every 1500 instances, stop at 2000 and resume up to 6000;
+	 * with evaluations every 1000 instances the resumed rows must be those
+	 * of an uninterrupted run.
+	 */
+	private static void assertResumedRowsLikeFullRun(int pipelineDepth) throws IOException {
+		File full = tempFile(".csv");
+		File first = tempFile(".csv");
+		File checkpoint = tempFile(".ckpt");
+		evaluate(full, 6000, null, 0, false, pipelineDepth);
+		evaluate(first, 2000, checkpoint, 1500, false, pipelineDepth);
+		List<String> firstRows = rows(first);
+
+		evaluate(first, 6000, checkpoint, 1500, true, pipelineDepth);
+		File resumed = new File(EvaluateSubspaceClustering.getResumedFilename(first.getPath(), 1500));
+		resumed.deleteOnExit();
+
+		List<String> fullRows = rows(full);
+		assertEquals(6, fullRows.size());
+		assertEquals(firstRows, rows(first));		// The interrupted run's dump is kept
+		assertEquals(fullRows.subList(1, 6), rows(resumed));
+	}
+
+	@Test
+	public void shouldContinueTheDumpAfterAnUnalignedCheckpoint() throws IOException {
+		assertResumedRowsLikeFullRun(0);
+	}
+
+	@Test
+	public void shouldContinueThePipelinedDumpAfterAnUnalignedCheckpoint() throws IOException {
+		assertResumedRowsLikeFullRun(2);
+	}
+}
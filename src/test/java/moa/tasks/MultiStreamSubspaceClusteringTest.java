@@ -0,0 +1,218 @@
+package moa.tasks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import moa.cluster.SubspaceClustering;
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.SubspaceClustererSnapshot;
+import moa.core.Measurement;
+import org.junit.Test;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+import static org.junit.Assert.*;
+
+public class MultiStreamSubspaceClusteringTest {
+
+	/** Records the instances it is trained with: value 0 = key, value 1 = sequence number **/
+	public static class RecordingClusterer extends AbstractSubspaceClusterer {
+
+		private static final long serialVersionUID = 1L;
+
+		static final Map<Integer, List<Integer>> sequences = new HashMap<Integer, List<Integer>>();
+		static final Map<Integer, String> threads = new HashMap<Integer, String>();
+		static volatile CountDownLatch started;		// Counted down when training starts, if set
+		static volatile CountDownLatch gate;		// Training waits for it if set
+
+		@Override
+		public void resetLearningImpl() {
+		}
+
+		@Override
+		public void trainOnInstanceImpl(Instance inst) {
+			if (started != null) {
+				started.countDown();
+			}
+			CountDownLatch g = gate;
+			if (g != null) {
+				try {
+					g.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			int key = (int) inst.value(0);
+			synchronized (sequences) {
+				if (!sequences.containsKey(key)) {
+					sequences.put(key, new ArrayList<Integer>());
+					threads.put(key, Thread.currentThread().getName());
+				}
+				sequences.get(key).add((int) inst.value(1));
+				assertEquals(threads.get(key), Thread.currentThread().getName());
+			}
+		}
+
+		@Override
+		protected Measurement[] getModelMeasurementsImpl() {
+			return null;
+		}
+
+		@Override
+		public void getModelDescription(StringBuilder out, int indent) {
+		}
+
+		@Override
+		public boolean isRandomizable() {
+			return false;
+		}
+
+		@Override
+		public double[] getVotesForInstance(Instance inst) {
+			return null;
+		}
+
+		@Override
+		public SubspaceClustering getClusteringResult() {
+			return null;
+		}
+	}
+
+	private static Instance instance(int key, int sequence) {
+		return new DenseInstance(1.0, new double[] {key, sequence});
+	}
+
+	private static void reset() {
+		synchronized (RecordingClusterer.sequences) {
+			RecordingClusterer.sequences.clear();
+			RecordingClusterer.threads.clear();
+		}
+		RecordingClusterer.started = null;
+		RecordingClusterer.gate = null;
+	}
+
+	@Test
+	public void shouldTrainEveryKeyInSubmissionOrderOnOneThread() throws Exception {
+		reset();
+		MultiStreamSubspaceClustering<Integer> service = new MultiStreamSubspaceClustering<Integer>(
+				RecordingClusterer.class.getName(), 4, 8, 100);
+		int numKeys = 37, numInstances = 500;
+		for (int i = 0; i < numInstances; i++) {
+			for (int key = 0; key < numKeys; key++) {
+				service.submit(key, instance(key, i));
+			}
+		}
+		Map<Integer, SubspaceClustererSnapshot> snapshots = service.snapshot();
+		service.shutdown();
+
+		assertEquals(numKeys, snapshots.size());
+		for (int key = 0; key < numKeys; key++) {
+			List<Integer> sequence = RecordingClusterer.sequences.get(key);
+			assertEquals(numInstances, sequence.size());
+			for (int i = 0; i < numInstances; i++) {
+				assertEquals(i, (int) sequence.get(i));
+			}
+			assertEquals(numInstances, snapshots.get(key).getTrainingWeight(), 0.0);
+		}
+	}
+
+	@Test
+	public void shouldBlockSubmitWhileTheQueueIsFull() throws Exception {
+		reset();
+		RecordingClusterer.gate = new CountDownLatch(1);
+		final MultiStreamSubspaceClustering<Integer> service = new MultiStreamSubspaceClustering<Integer>(
+				RecordingClusterer.class.getName(), 1, 2, 0);
+
+		RecordingClusterer.started = new CountDownLatch(1);
+		service.submit(0, instance(0, 0));
+		assertTrue(RecordingClusterer.started.await(5, TimeUnit.SECONDS));	// Worker waits at the gate
+		service.submit(0, instance(0, 1));
+		service.submit(0, instance(0, 2));		// Queue full now
+
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread submitter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					service.submit(0, instance(0, 3));
+					submitted.countDown();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		submitter.start();
+		assertFalse("submit() must block while the queue is full", submitted.await(200, TimeUnit.MILLISECONDS));
+
+		RecordingClusterer.gate.countDown();
+		assertTrue("submit() must return once the worker catches up", submitted.await(5, TimeUnit.SECONDS));
+		service.snapshot();
+		service.shutdown();
+
+		List<Integer> sequence = RecordingClusterer.sequences.get(0);
+		assertEquals(4, sequence.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, (int) sequence.get(i));
+		}
+	}
+
+	/**
+	 * Submitters and snapshots race with shutdown(): every call either fails or
+	 * its instance is trained and its snapshot returns.
+	 */
+	@Test
+	public void shouldTrainEverySubmitThatDidNotFailOnShutdown() throws Exception {
+		for (int round = 0; round < 50; round++) {
+			reset();
+			final MultiStreamSubspaceClustering<Integer> service = new MultiStreamSubspaceClustering<Integer>(
+					RecordingClusterer.class.getName(), 2, 4, 0);
+			final int numSubmitters = 4;
+			final int[] accepted = new int[numSubmitters];
+			Thread[] submitters = new Thread[numSubmitters + 1];
+			for (int t = 0; t < numSubmitters; t++) {
+				final int key = t;
+				submitters[t] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							for (int i = 0; ; i++) {
+								service.submit(key, instance(key, i));
+								accepted[key]++;
+							}
+						} catch (IllegalStateException e) {
+							// Shut down
+						} catch (InterruptedException e) {
+						}
+					}
+				});
+			}
+			submitters[numSubmitters] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (true) {
+							service.snapshot();
+						}
+					} catch (IllegalStateException e) {
+						// Shut down
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+			for (Thread submitter : submitters) {
+				submitter.start();
+			}
+			Thread.sleep(round % 5);
+			service.shutdown();
+			for (Thread submitter : submitters) {
+				submitter.join(5000);
+				assertFalse("submit() and snapshot() must not hang after shutdown()", submitter.isAlive());
+			}
+
+			for (int key = 0; key < numSubmitters; key++) {
+				List<Integer> sequence = RecordingClusterer.sequences.get(key);
+				assertEquals(accepted[key], sequence == null ? 0 : sequence.size());
+			}
+		}
+	}
+}